@@ -27,7 +27,8 @@ async function checkForUpdate(deploymentKey = null, handleBinaryVersionMismatchC
    * deployments (e.g. an early access deployment for insiders).
    */
   const config = deploymentKey ? { ...nativeConfig, ...{ deploymentKey } } : nativeConfig;
-  const sdk = getPromisifiedSdk(requestFetchAdapter, config);
+  let downloadMirrors = null;
+  const sdk = getPromisifiedSdk(captureDownloadMirrors(requestFetchAdapter, (mirrors) => { downloadMirrors = mirrors; }), config);
 
   // Use dynamically overridden getCurrentPackage() during tests.
   const localPackage = await module.exports.getCurrentPackage();
@@ -39,13 +40,16 @@ async function checkForUpdate(deploymentKey = null, handleBinaryVersionMismatchC
    * release has been made on the server. Otherwise, we only need
    * to send the app version to the server, since we are interested
    * in any updates for current binary version, regardless of hash.
+   * The hash of the binary's bundled resources is sent along so that
+   * the server can offer a diff update against the binary. Android only
+   * sends it if binary diff updates are enabled in CodePushBuilder.
    */
   let queryPackage;
   if (localPackage) {
     queryPackage = localPackage;
   } else {
     queryPackage = { appVersion: config.appVersion };
-    if (Platform.OS === "ios" && config.packageHash) {
+    if (config.packageHash && (Platform.OS === "ios" || config.binaryDiffUpdatesEnabled)) {
       queryPackage.packageHash = config.packageHash;
     }
   }
@@ -85,10 +89,46 @@ async function checkForUpdate(deploymentKey = null, handleBinaryVersionMismatchC
     const remotePackage = { ...update, ...PackageMixins.remote(sdk.reportStatusDownload) };
     remotePackage.failedInstall = await NativeCodePush.isFailedUpdate(remotePackage.packageHash);
     remotePackage.deploymentKey = deploymentKey || nativeConfig.deploymentKey;
+    if (downloadMirrors) {
+      remotePackage.downloadMirrors = downloadMirrors;
+    }
+
     return remotePackage;
   }
 }
 
+// The acquisition SDK only passes on the update fields it knows about, so the mirrors that
+// the server lists for an update are read from the update check response itself.
+function captureDownloadMirrors(requestFetchAdapter, onDownloadMirrors) {
+  return {
+    request(verb, url, requestBody, callback) {
+      if (typeof requestBody === "function") {
+        callback = requestBody;
+        requestBody = null;
+      }
+
+      requestFetchAdapter.request(verb, url, requestBody, (err, response) => {
+        if (!err && response && url.split("?")[0].endsWith("/update_check")) {
+          onDownloadMirrors(getDownloadMirrors(response.body));
+        }
+
+        callback(err, response);
+      });
+    }
+  };
+}
+
+function getDownloadMirrors(responseBody) {
+  try {
+    const response = JSON.parse(responseBody);
+    const updateInfo = response.update_info || response.updateInfo;
+    const downloadMirrors = updateInfo && (updateInfo.download_mirrors || updateInfo.downloadMirrors);
+    return Array.isArray(downloadMirrors) ? downloadMirrors : null;
+  } catch (err) {
+    return null;
+  }
+}
+
 const getConfiguration = (() => {
   let config;
   return async function getConfiguration() {
@@ -117,6 +157,51 @@ async function getUpdateMetadata(updateState) {
   return updateMetadata;
 }
 
+async function importUpdate(packageInfo, pathOrUri) {
+  // Importing updates is only supported by the Android native module.
+  if (!NativeCodePush.importUpdate) {
+    throw new Error("Importing updates from a file is not supported on this platform.");
+  }
+
+  if (!packageInfo || !packageInfo.packageHash) {
+    throw new Error("Cannot import an update without a package hash");
+  }
+
+  const packageInfoCopy = Object.assign({}, packageInfo);
+  Object.keys(packageInfoCopy).forEach((key) => (typeof packageInfoCopy[key] === 'function') && delete packageInfoCopy[key]);
+
+  const importedPackage = await NativeCodePush.importUpdate(packageInfoCopy, pathOrUri);
+  return { ...importedPackage, ...PackageMixins.local };
+}
+
+// Asset packs belong to the running update, the JS bundle of the binary has none.
+async function getAssetPackStatuses() {
+  // Asset packs are only supported by the Android native module.
+  if (!NativeCodePush.getAssetPackStatuses) {
+    throw new Error("Asset packs are not supported on this platform.");
+  }
+
+  const runningPackage = await NativeCodePush.getUpdateMetadata(CodePush.UpdateState.RUNNING);
+  if (!runningPackage) {
+    return {};
+  }
+
+  return await NativeCodePush.getAssetPackStatuses(runningPackage.packageHash);
+}
+
+async function prioritizeAssetPacks(packNames) {
+  if (!NativeCodePush.prioritizeAssetPacks) {
+    throw new Error("Asset packs are not supported on this platform.");
+  }
+
+  const runningPackage = await NativeCodePush.getUpdateMetadata(CodePush.UpdateState.RUNNING);
+  if (!runningPackage) {
+    throw new Error("Cannot prioritize asset packs while the app is not running a CodePush update");
+  }
+
+  await NativeCodePush.prioritizeAssetPacks(runningPackage.packageHash, packNames);
+}
+
 function getPromisifiedSdk(requestFetchAdapter, config) {
   // Use dynamically overridden AcquisitionSdk during tests.
   const sdk = new module.exports.AcquisitionSdk(requestFetchAdapter, config);
@@ -177,9 +262,24 @@ async function notifyApplicationReadyInternal() {
   const statusReport = await NativeCodePush.getNewStatusReport();
   statusReport && tryReportStatus(statusReport); // Don't wait for this to complete.
 
+  // Updates downloaded by the native sync engine (Android only) are reported here, since it has no SDK to report them.
+  const downloadReport = NativeCodePush.getDownloadReport && await NativeCodePush.getDownloadReport();
+  downloadReport && tryReportDownload(downloadReport); // Don't wait for this to complete.
+
   return statusReport;
 }
 
+async function tryReportDownload(downloadReport) {
+  const nativeConfig = await getConfiguration();
+  const config = { ...nativeConfig, ...{ deploymentKey: downloadReport.package.deploymentKey } };
+  try {
+    const sdk = getPromisifiedSdk(requestFetchAdapter, config);
+    await sdk.reportStatusDownload(downloadReport.package);
+  } catch (e) {
+    log(`Report download status failed: ${e}`);
+  }
+}
+
 async function tryReportStatus(statusReport, retryOnAppResume) {
   const config = await getConfiguration();
   const previousLabelOrAppVersion = statusReport.previousLabelOrAppVersion;
@@ -604,12 +704,15 @@ if (NativeCodePush) {
   Object.assign(CodePush, {
     AcquisitionSdk: Sdk,
     checkForUpdate,
+    getAssetPackStatuses,
     getConfiguration,
     getCurrentPackage,
     getUpdateMetadata,
+    importUpdate,
     log,
     notifyAppReady: notifyApplicationReady,
     notifyApplicationReady,
+    prioritizeAssetPacks,
     restartApp,
     setUpTestDependencies,
     sync,
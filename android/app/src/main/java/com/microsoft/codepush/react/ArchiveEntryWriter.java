@@ -0,0 +1,15 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Writes the files of an archive as the built-in codecs extract them, which lets a diff update
+// rebuild files from its patches without storing the patches first.
+interface ArchiveEntryWriter {
+    /**
+     * Writes the contents of the archive entry at relativePath, whose validated location in the
+     * destination folder is file. The contents stream ends with the entry, and is closed by the caller.
+     */
+    void write(String relativePath, InputStream contents, File file) throws IOException;
+}
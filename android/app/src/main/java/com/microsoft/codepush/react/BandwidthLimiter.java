@@ -0,0 +1,81 @@
+package com.microsoft.codepush.react;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+// Token bucket shared by all downloads, so that parallel segments and concurrent downloads stay
+// under one combined cap. The cap only applies while the app is in the foreground, where the
+// download competes with the app's own network requests.
+class BandwidthLimiter {
+
+    // Bytes that may be read at once after the bucket had time to fill up.
+    private static final double BURST_SECONDS = 0.25;
+    private static final long MIN_BURST_BYTES = 1024 * 8;
+
+    private long mBytesPerSecond = 0;
+    // Only set once an activity of the app resumes, so that syncs run from Application.onCreate,
+    // a background job or a headless task are not throttled before any UI is shown.
+    private boolean mIsAppInForeground = false;
+    private double mTokens = 0;
+    private long mLastRefillTime = System.nanoTime();
+
+    // A limit of 0 disables throttling.
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = Math.max(0, bytesPerSecond);
+        refill();
+        notifyAll();
+    }
+
+    public synchronized void setIsAppInForeground(boolean isAppInForeground) {
+        refill();
+        mIsAppInForeground = isAppInForeground;
+        notifyAll();
+    }
+
+    public synchronized int getMaxReadLength() {
+        return isLimited() ? (int) Math.min(Integer.MAX_VALUE, getBurstBytes()) : Integer.MAX_VALUE;
+    }
+
+    // Takes bytes out of the bucket, waiting while it is in debt. Waiting ends early when the app
+    // goes to the background or the limit is lifted.
+    public synchronized void acquire(long bytes) throws InterruptedIOException {
+        refill();
+        if (!isLimited()) {
+            return;
+        }
+
+        mTokens -= bytes;
+        while (isLimited() && mTokens < 0) {
+            long waitMillis = Math.max(1, (long) Math.ceil(-mTokens * 1000 / mBytesPerSecond));
+            try {
+                wait(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for download bandwidth.");
+            }
+
+            refill();
+        }
+    }
+
+    private boolean isLimited() {
+        return mBytesPerSecond > 0 && mIsAppInForeground;
+    }
+
+    private long getBurstBytes() {
+        return Math.max(MIN_BURST_BYTES, (long) (mBytesPerSecond * BURST_SECONDS));
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (isLimited()) {
+            double elapsedSeconds = (double) (now - mLastRefillTime) / TimeUnit.SECONDS.toNanos(1);
+            mTokens = Math.min(getBurstBytes(), mTokens + elapsedSeconds * mBytesPerSecond);
+        } else {
+            // Throttling that starts later begins with a full bucket and no debt.
+            mTokens = getBurstBytes();
+        }
+
+        mLastRefillTime = now;
+    }
+}
@@ -0,0 +1,7 @@
+package com.microsoft.codepush.react;
+
+// Supplies the hash of the resources bundled in the binary. Reading it opens an APK asset, so it
+// is only asked for once a diff update turns out to be made against the binary.
+interface BinaryContentsHashProvider {
+    String getBinaryContentsHash();
+}
@@ -0,0 +1,298 @@
+package com.microsoft.codepush.react;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Applies patches made by bsdiff, in either of its two formats. Both describe the new file as
+// blocks of three control values (diff length, extra length, old file seek), where the diff bytes
+// are added to the bytes of the old file and the extra bytes are copied as is.
+//
+// BSDIFF40, written by the original bsdiff 4.x, stores the control values, the diff bytes and
+// the extra bytes in three bzip2 streams one after the other. The patch is still read once from
+// start to end: the diffed bytes are written to their place in the new file first, and the extra
+// bytes are filled in between them afterwards.
+//
+// ENDSLEY/BSDIFF43, written by the bsdiff library and bsdiff 4.3 ports, interleaves all three
+// in a single bzip2 stream, so the new file is written in order.
+//
+// Only the old file needs random access, so a patch can be applied as it is extracted from an
+// update archive.
+class BinaryPatcher {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] BSDIFF40_MAGIC = "BSDIFF40".getBytes(US_ASCII);
+    private static final byte[] BSDIFF43_MAGIC = "ENDSLEY/BSDIFF43".getBytes(US_ASCII);
+    private static final int BUFFER_SIZE = 1024 * 64;
+
+    // Returns the SHA-256 of the new file in lowercase hex.
+    public static String apply(File oldFile, File patchFile, File newFile) throws IOException {
+        FileInputStream patch = null;
+        try {
+            patch = new FileInputStream(patchFile);
+            return apply(oldFile, patch, newFile, patchFile.getName());
+        } finally {
+            try {
+                if (patch != null) patch.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    // Reads the patch from the stream, without closing it. patchName is used in error messages.
+    public static String apply(File oldFile, InputStream patchStream, File newFile, String patchName) throws IOException {
+        RandomAccessFile oldData = null;
+        try {
+            oldData = new RandomAccessFile(oldFile, "r");
+            DataInputStream patch = new DataInputStream(new BufferedInputStream(patchStream, BUFFER_SIZE));
+            byte[] magic = new byte[BSDIFF43_MAGIC.length];
+            patch.readFully(magic, 0, BSDIFF40_MAGIC.length);
+            if (Arrays.equals(Arrays.copyOf(magic, BSDIFF40_MAGIC.length), BSDIFF40_MAGIC)) {
+                return applyBsdiff40(oldData, patch, newFile, patchName);
+            }
+
+            patch.readFully(magic, BSDIFF40_MAGIC.length, magic.length - BSDIFF40_MAGIC.length);
+            if (Arrays.equals(magic, BSDIFF43_MAGIC)) {
+                return applyBsdiff43(oldData, patch, newFile, patchName);
+            }
+
+            throw new CodePushInvalidUpdateException("Update is invalid - " + patchName + " is not a supported binary patch.");
+        } catch (EOFException e) {
+            throw new CodePushInvalidUpdateException("Update is invalid - " + patchName + " is truncated.");
+        } finally {
+            try {
+                if (oldData != null) oldData.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    private static String applyBsdiff43(RandomAccessFile oldData, DataInputStream patch, File newFile, String patchName) throws IOException {
+        long newSize = readOffset(patch);
+        if (newSize < 0) {
+            throw corrupted(patchName);
+        }
+
+        DataInputStream data = new DataInputStream(new Bzip2InputStream(patch));
+        DigestOutputStream out = null;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(newFile), BUFFER_SIZE), messageDigest);
+            long oldSize = oldData.length();
+            long newPosition = 0;
+            long oldPosition = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] oldBytes = new byte[BUFFER_SIZE];
+            while (newPosition < newSize) {
+                long diffLength = readOffset(data);
+                long extraLength = readOffset(data);
+                long oldSeek = readOffset(data);
+                if (diffLength < 0 || extraLength < 0 || diffLength + extraLength > newSize - newPosition) {
+                    throw corrupted(patchName);
+                }
+
+                for (long remaining = diffLength; remaining > 0; ) {
+                    int length = (int) Math.min(remaining, BUFFER_SIZE);
+                    data.readFully(buffer, 0, length);
+                    addOldBytes(oldData, oldSize, oldPosition, buffer, oldBytes, length);
+                    out.write(buffer, 0, length);
+                    oldPosition += length;
+                    remaining -= length;
+                }
+
+                for (long remaining = extraLength; remaining > 0; ) {
+                    int length = (int) Math.min(remaining, BUFFER_SIZE);
+                    data.readFully(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                    remaining -= length;
+                }
+
+                newPosition += diffLength + extraLength;
+                oldPosition += oldSeek;
+            }
+
+            readToEnd(data);
+            out.flush();
+            return toHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Should not happen.
+            throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+        } finally {
+            try {
+                if (out != null) out.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    private static String applyBsdiff40(RandomAccessFile oldData, DataInputStream patch, File newFile, String patchName) throws IOException {
+        long controlLength = readOffset(patch);
+        long diffLength = readOffset(patch);
+        long newSize = readOffset(patch);
+        if (controlLength < 0 || diffLength < 0 || newSize < 0) {
+            throw corrupted(patchName);
+        }
+
+        // The control values take 24 bytes per block, a small part of the patch.
+        long[] control = new long[3 * 64];
+        int controlCount = 0;
+        BoundedInputStream controlSection = new BoundedInputStream(patch, controlLength);
+        DataInputStream controlStream = new DataInputStream(new Bzip2InputStream(controlSection));
+        for (long newPosition = 0; newPosition < newSize; ) {
+            if (controlCount == control.length) {
+                control = Arrays.copyOf(control, control.length * 2);
+            }
+
+            long blockDiffLength = readOffset(controlStream);
+            long blockExtraLength = readOffset(controlStream);
+            if (blockDiffLength < 0 || blockExtraLength < 0 || blockDiffLength + blockExtraLength > newSize - newPosition) {
+                throw corrupted(patchName);
+            }
+
+            control[controlCount++] = blockDiffLength;
+            control[controlCount++] = blockExtraLength;
+            control[controlCount++] = readOffset(controlStream);
+            newPosition += blockDiffLength + blockExtraLength;
+        }
+
+        readToEnd(controlStream);
+        readToEnd(controlSection);
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(newFile, "rw");
+            out.setLength(newSize);
+            long oldSize = oldData.length();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] oldBytes = new byte[BUFFER_SIZE];
+
+            BoundedInputStream diffSection = new BoundedInputStream(patch, diffLength);
+            DataInputStream diffStream = new DataInputStream(new Bzip2InputStream(diffSection));
+            long newPosition = 0;
+            long oldPosition = 0;
+            for (int i = 0; i < controlCount; i += 3) {
+                out.seek(newPosition);
+                for (long remaining = control[i]; remaining > 0; ) {
+                    int length = (int) Math.min(remaining, BUFFER_SIZE);
+                    diffStream.readFully(buffer, 0, length);
+                    addOldBytes(oldData, oldSize, oldPosition, buffer, oldBytes, length);
+                    out.write(buffer, 0, length);
+                    oldPosition += length;
+                    remaining -= length;
+                }
+
+                newPosition += control[i] + control[i + 1];
+                oldPosition += control[i + 2];
+            }
+
+            readToEnd(diffStream);
+            readToEnd(diffSection);
+            DataInputStream extraStream = new DataInputStream(new Bzip2InputStream(patch));
+            newPosition = 0;
+            for (int i = 0; i < controlCount; i += 3) {
+                out.seek(newPosition + control[i]);
+                for (long remaining = control[i + 1]; remaining > 0; ) {
+                    int length = (int) Math.min(remaining, BUFFER_SIZE);
+                    extraStream.readFully(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                    remaining -= length;
+                }
+
+                newPosition += control[i] + control[i + 1];
+            }
+
+            readToEnd(extraStream);
+        } finally {
+            try {
+                if (out != null) out.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+
+        return hashFile(newFile);
+    }
+
+    // Like bspatch, bytes before the start or past the end of the old file count as zero.
+    private static void addOldBytes(RandomAccessFile oldData, long oldSize, long oldPosition, byte[] buffer, byte[] oldBytes, int length) throws IOException {
+        long start = Math.max(oldPosition, 0);
+        long end = Math.min(oldPosition + length, oldSize);
+        if (start >= end) {
+            return;
+        }
+
+        int offset = (int) (start - oldPosition);
+        int count = (int) (end - start);
+        oldData.seek(start);
+        oldData.readFully(oldBytes, 0, count);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] += oldBytes[i];
+        }
+    }
+
+    // Reading a bzip2 stream to its end verifies its checksums, even where a patch writer left
+    // unused bytes. A section may also hold padding after the end of its bzip2 stream.
+    private static void readToEnd(InputStream stream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (stream.read(buffer) >= 0) ;
+    }
+
+    private static String hashFile(File file) throws IOException {
+        FileInputStream in = null;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            in = new FileInputStream(file);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int numBytesRead;
+            while ((numBytesRead = in.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, numBytesRead);
+            }
+
+            return toHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Should not happen.
+            throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
+    private static CodePushInvalidUpdateException corrupted(String patchName) {
+        return new CodePushInvalidUpdateException("Update is invalid - " + patchName + " has a corrupt control block.");
+    }
+
+    // Reads a bsdiff offset: 63 bits of magnitude in little-endian order and a sign bit on top.
+    private static long readOffset(DataInputStream patch) throws IOException {
+        byte[] bytes = new byte[8];
+        patch.readFully(bytes);
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+
+        return value < 0 ? -(value & Long.MAX_VALUE) : value;
+    }
+}
@@ -0,0 +1,69 @@
+package com.microsoft.codepush.react;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reads a section of a stream, e.g. a tar entry or one of the compressed streams in a patch, and
+// leaves the rest of the stream to be read once the section is. Closing it leaves the stream open.
+class BoundedInputStream extends FilterInputStream {
+    private long mRemaining;
+
+    public BoundedInputStream(InputStream in, long length) {
+        super(in);
+        mRemaining = length;
+    }
+
+    public long getRemaining() {
+        return mRemaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (mRemaining <= 0) {
+            return -1;
+        }
+
+        int result = super.read();
+        if (result >= 0) {
+            mRemaining--;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (mRemaining <= 0) {
+            return -1;
+        }
+
+        int result = super.read(buffer, offset, (int) Math.min(length, mRemaining));
+        if (result > 0) {
+            mRemaining -= result;
+        }
+
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(Math.min(n, mRemaining));
+        mRemaining -= result;
+        return result;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(super.available(), mRemaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,435 @@
+package com.microsoft.codepush.react;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Pure Java decoder for a single bzip2 stream, which is how bsdiff compresses its patches. Each
+// block is Huffman decoded and its Burrows-Wheeler transform undone as a whole, which takes four
+// bytes per byte of the block size the stream was compressed with (3.6 MB at most), while the
+// final run-length decoding happens as the output is read. Block and stream checksums are verified.
+// The stream ends at the end of stream marker, without reading past it, so that whatever follows
+// in the underlying stream can still be read.
+class Bzip2InputStream extends InputStream {
+    private static final int BLOCK_MAGIC_HIGH = 0x314159;
+    private static final int BLOCK_MAGIC_LOW = 0x265359;
+    private static final int END_MAGIC_HIGH = 0x177245;
+    private static final int END_MAGIC_LOW = 0x385090;
+
+    private static final int BASE_BLOCK_SIZE = 100000;
+    private static final int MAX_GROUPS = 6;
+    private static final int MIN_GROUPS = 2;
+    private static final int GROUP_SIZE = 50;
+    private static final int MAX_SELECTORS = 18002;
+    private static final int MAX_CODE_LENGTH = 20;
+    private static final int RUN_A = 0;
+    private static final int RUN_B = 1;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private final InputStream mIn;
+    private long mBitBuffer;
+    private int mBitCount;
+
+    private int mBlockSizeLimit;
+    private int[] mTt;
+    private boolean mIsStreamFinished;
+    private boolean mIsClosed;
+    private int mStreamCrc;
+
+    // State of the block being read out.
+    private int mBlockLength;
+    private int mBlockIndex;
+    private int mTPos;
+    private int mExpectedBlockCrc;
+    private int mBlockCrc;
+    private int mLastByte = -1;
+    private int mRunLength;
+    private int mRepeatRemaining;
+
+    public Bzip2InputStream(InputStream in) {
+        mIn = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] data = new byte[1];
+        return read(data, 0, 1) < 0 ? -1 : data[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (mIsClosed) {
+            throw new IOException("Stream closed");
+        } else if (length == 0) {
+            return 0;
+        } else if (mIsStreamFinished) {
+            return -1;
+        } else if (mTt == null) {
+            readStreamHeader();
+        }
+
+        int count = 0;
+        int crc = mBlockCrc;
+        while (count < length) {
+            int b;
+            if (mRepeatRemaining > 0) {
+                mRepeatRemaining--;
+                b = mLastByte;
+            } else if (mBlockIndex < mBlockLength) {
+                mTPos = mTt[mTPos];
+                b = mTPos & 0xFF;
+                mTPos >>>= 8;
+                mBlockIndex++;
+                if (mRunLength == 4) {
+                    // After four equal bytes the next one is how many more of them follow.
+                    mRepeatRemaining = b;
+                    mRunLength = 0;
+                    continue;
+                } else if (b == mLastByte) {
+                    mRunLength++;
+                } else {
+                    mLastByte = b;
+                    mRunLength = 1;
+                }
+            } else {
+                mBlockCrc = crc;
+                if (!finishBlock()) {
+                    break;
+                }
+
+                crc = mBlockCrc;
+                continue;
+            }
+
+            buffer[offset + count++] = (byte) b;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+        }
+
+        mBlockCrc = crc;
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIsClosed = true;
+        mTt = null;
+        mIn.close();
+    }
+
+    private void readStreamHeader() throws IOException {
+        if (readBits(8) != 'B' || readBits(8) != 'Z' || readBits(8) != 'h') {
+            throw corrupted("not a bzip2 stream");
+        }
+
+        int level = readBits(8) - '0';
+        if (level < 1 || level > 9) {
+            throw corrupted("invalid block size");
+        }
+
+        mBlockSizeLimit = level * BASE_BLOCK_SIZE;
+        mTt = new int[mBlockSizeLimit];
+        mBlockCrc = 0xFFFFFFFF;
+        mExpectedBlockCrc = ~mBlockCrc;
+    }
+
+    // Checks the block that was read out and reads the next one. Returns false at the end of the stream.
+    private boolean finishBlock() throws IOException {
+        int blockCrc = ~mBlockCrc;
+        if (blockCrc != mExpectedBlockCrc) {
+            throw corrupted("block checksum mismatch");
+        }
+
+        if (mBlockLength > 0) {
+            mStreamCrc = ((mStreamCrc << 1) | (mStreamCrc >>> 31)) ^ blockCrc;
+        }
+
+        int magicHigh = readBits(24);
+        int magicLow = readBits(24);
+        if (magicHigh == END_MAGIC_HIGH && magicLow == END_MAGIC_LOW) {
+            if (readBits(32) != mStreamCrc) {
+                throw corrupted("stream checksum mismatch");
+            }
+
+            // The stream is padded to a whole byte, which has been read already.
+            mIsStreamFinished = true;
+            mTt = null;
+            return false;
+        } else if (magicHigh != BLOCK_MAGIC_HIGH || magicLow != BLOCK_MAGIC_LOW) {
+            throw corrupted("invalid block header");
+        }
+
+        mExpectedBlockCrc = readBits(32);
+        if (readBits(1) != 0) {
+            throw new IOException("Randomized bzip2 blocks are not supported.");
+        }
+
+        int originPointer = readBits(24);
+        readBlock(originPointer);
+        mBlockCrc = 0xFFFFFFFF;
+        mLastByte = -1;
+        mRunLength = 0;
+        return true;
+    }
+
+    // Decodes a block into mTt and prepares the inverse Burrows-Wheeler transform.
+    private void readBlock(int originPointer) throws IOException {
+        // Which of the 256 byte values appear in the block.
+        int[] seqToUnseq = new int[256];
+        int inUseCount = 0;
+        int inUse16 = readBits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int inUse = readBits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((inUse & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[inUseCount++] = i * 16 + j;
+                    }
+                }
+            }
+        }
+
+        if (inUseCount == 0) {
+            throw corrupted("block uses no symbols");
+        }
+
+        int alphaSize = inUseCount + 2;
+        int groupCount = readBits(3);
+        int selectorCount = readBits(15);
+        if (groupCount < MIN_GROUPS || groupCount > MAX_GROUPS || selectorCount < 1) {
+            throw corrupted("invalid Huffman table count");
+        }
+
+        // Selectors pick the Huffman table for each group of symbols, and are move-to-front coded.
+        byte[] selectors = new byte[Math.min(selectorCount, MAX_SELECTORS)];
+        byte[] selectorMtf = new byte[MAX_GROUPS];
+        for (int i = 0; i < groupCount; i++) {
+            selectorMtf[i] = (byte) i;
+        }
+
+        for (int i = 0; i < selectorCount; i++) {
+            int index = 0;
+            while (readBits(1) != 0) {
+                if (++index >= groupCount) {
+                    throw corrupted("invalid selector");
+                }
+            }
+
+            byte selector = selectorMtf[index];
+            System.arraycopy(selectorMtf, 0, selectorMtf, 1, index);
+            selectorMtf[0] = selector;
+            // Newer encoders may write more selectors than can be used, which are ignored.
+            if (i < selectors.length) {
+                selectors[i] = selector;
+            }
+        }
+
+        // Code lengths are delta coded from a starting length for each table.
+        int[][] limits = new int[groupCount][MAX_CODE_LENGTH + 2];
+        int[][] bases = new int[groupCount][MAX_CODE_LENGTH + 2];
+        int[][] permutes = new int[groupCount][alphaSize];
+        int[] minLengths = new int[groupCount];
+        int[] lengths = new int[alphaSize];
+        for (int t = 0; t < groupCount; t++) {
+            int length = readBits(5);
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (length < 1 || length > MAX_CODE_LENGTH) {
+                        throw corrupted("invalid Huffman code length");
+                    } else if (readBits(1) == 0) {
+                        break;
+                    }
+
+                    length += readBits(1) == 0 ? 1 : -1;
+                }
+
+                lengths[i] = length;
+            }
+
+            minLengths[t] = createDecodeTable(lengths, alphaSize, limits[t], bases[t], permutes[t]);
+        }
+
+        // Decodes the move-to-front and zero run coded symbols into byte values.
+        int endOfBlock = inUseCount + 1;
+        int[] byteCounts = new int[256];
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            mtf[i] = (byte) i;
+        }
+
+        int length = 0;
+        int groupIndex = -1;
+        int groupRemaining = 0;
+        int runLength = 0;
+        int runWeight = 1;
+        int[] limit = null;
+        int[] base = null;
+        int[] permute = null;
+        int minLength = 0;
+        int[] tt = mTt;
+        while (true) {
+            if (groupRemaining == 0) {
+                if (++groupIndex >= selectors.length) {
+                    throw corrupted("too few selectors");
+                }
+
+                int t = selectors[groupIndex];
+                limit = limits[t];
+                base = bases[t];
+                permute = permutes[t];
+                minLength = minLengths[t];
+                groupRemaining = GROUP_SIZE;
+            }
+
+            groupRemaining--;
+            int codeLength = minLength;
+            int code = readBits(codeLength);
+            while (code > limit[codeLength]) {
+                if (++codeLength > MAX_CODE_LENGTH) {
+                    throw corrupted("invalid Huffman code");
+                }
+
+                code = (code << 1) | readBits(1);
+            }
+
+            int index = code - base[codeLength];
+            if (index < 0 || index >= alphaSize) {
+                throw corrupted("invalid Huffman code");
+            }
+
+            int symbol = permute[index];
+            if (symbol == RUN_A || symbol == RUN_B) {
+                // Runs of the front byte are written as a bijective base 2 number.
+                runLength += (symbol == RUN_A ? 1 : 2) * runWeight;
+                runWeight <<= 1;
+                if (runLength > mBlockSizeLimit) {
+                    throw corrupted("block is too long");
+                }
+
+                continue;
+            }
+
+            if (runLength > 0) {
+                if (length + runLength > mBlockSizeLimit) {
+                    throw corrupted("block is too long");
+                }
+
+                int value = seqToUnseq[mtf[0] & 0xFF];
+                byteCounts[value] += runLength;
+                while (runLength-- > 0) {
+                    tt[length++] = value;
+                }
+
+                runLength = 0;
+                runWeight = 1;
+            }
+
+            if (symbol == endOfBlock) {
+                break;
+            } else if (length >= mBlockSizeLimit) {
+                throw corrupted("block is too long");
+            }
+
+            int mtfIndex = symbol - 1;
+            byte front = mtf[mtfIndex];
+            System.arraycopy(mtf, 0, mtf, 1, mtfIndex);
+            mtf[0] = front;
+            int value = seqToUnseq[front & 0xFF];
+            byteCounts[value]++;
+            tt[length++] = value;
+        }
+
+        if (originPointer >= length) {
+            throw corrupted("invalid origin pointer");
+        }
+
+        // Links each byte to the one that follows it in the original data.
+        int[] starts = new int[256];
+        for (int i = 1; i < 256; i++) {
+            starts[i] = starts[i - 1] + byteCounts[i - 1];
+        }
+
+        for (int i = 0; i < length; i++) {
+            int value = tt[i] & 0xFF;
+            tt[starts[value]++] |= i << 8;
+        }
+
+        mTPos = tt[originPointer] >>> 8;
+        mBlockIndex = 0;
+        mBlockLength = length;
+    }
+
+    // Builds the canonical Huffman decoding tables for one set of code lengths, and returns the
+    // shortest code length.
+    private static int createDecodeTable(int[] lengths, int alphaSize, int[] limit, int[] base, int[] permute) {
+        int minLength = MAX_CODE_LENGTH;
+        int maxLength = 0;
+        for (int i = 0; i < alphaSize; i++) {
+            minLength = Math.min(minLength, lengths[i]);
+            maxLength = Math.max(maxLength, lengths[i]);
+        }
+
+        int position = 0;
+        for (int length = minLength; length <= maxLength; length++) {
+            for (int symbol = 0; symbol < alphaSize; symbol++) {
+                if (lengths[symbol] == length) {
+                    permute[position++] = symbol;
+                }
+            }
+        }
+
+        int[] counts = new int[MAX_CODE_LENGTH + 2];
+        for (int i = 0; i < alphaSize; i++) {
+            counts[lengths[i]]++;
+        }
+
+        // limit holds the largest code of each length, and base what to subtract from a code of
+        // that length to get its index into permute. Lengths without codes never match.
+        int code = 0;
+        int index = 0;
+        for (int length = 0; length <= MAX_CODE_LENGTH + 1; length++) {
+            if (length < minLength || length > maxLength) {
+                limit[length] = -1;
+                continue;
+            }
+
+            base[length] = code - index;
+            code += counts[length];
+            index += counts[length];
+            limit[length] = code - 1;
+            code <<= 1;
+        }
+
+        return minLength;
+    }
+
+    private int readBits(int count) throws IOException {
+        while (mBitCount < count) {
+            int b = mIn.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of bzip2 stream.");
+            }
+
+            mBitBuffer = (mBitBuffer << 8) | b;
+            mBitCount += 8;
+        }
+
+        mBitCount -= count;
+        return (int) ((mBitBuffer >>> mBitCount) & ((1L << count) - 1));
+    }
+
+    private static IOException corrupted(String reason) {
+        return new IOException("Corrupted bzip2 stream: " + reason + ".");
+    }
+}
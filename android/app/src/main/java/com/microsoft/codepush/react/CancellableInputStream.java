@@ -0,0 +1,34 @@
+package com.microsoft.codepush.react;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Fails reads once the download it belongs to is cancelled, which stops network transfers and
+// archive extraction, including extraction by custom archive codecs.
+class CancellableInputStream extends FilterInputStream {
+    private final InFlightDownload mDownload;
+
+    public CancellableInputStream(InputStream in, InFlightDownload download) {
+        super(in);
+        mDownload = download;
+    }
+
+    @Override
+    public int read() throws IOException {
+        mDownload.throwIfCancelled();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        mDownload.throwIfCancelled();
+        return super.read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        mDownload.throwIfCancelled();
+        return super.skip(n);
+    }
+}
@@ -37,6 +37,10 @@ public class CodePush implements ReactPackage {
     private CodePushUpdateManager mUpdateManager;
     private CodePushTelemetryManager mTelemetryManager;
     private SettingsManager mSettingsManager;
+    private CodePushUpdateCheckClient mUpdateCheckClient;
+    private CodePushAssetPackManager mAssetPackManager;
+    private boolean mIsJSBundleSegmentsEnabled = false;
+    private boolean mIsBinaryDiffUpdatesEnabled = false;
 
     // Config properties.
     private String mDeploymentKey;
@@ -60,12 +64,20 @@ public class CodePush implements ReactPackage {
 
     public CodePush(String deploymentKey, Context context, boolean isDebugMode) {
         mContext = context.getApplicationContext();
+        IoBufferPolicy.init(mContext);
 
         mUpdateManager = new CodePushUpdateManager(context.getFilesDir().getAbsolutePath());
         mTelemetryManager = new CodePushTelemetryManager(mContext);
         mDeploymentKey = deploymentKey;
         mIsDebugMode = isDebugMode;
         mSettingsManager = new SettingsManager(mContext);
+        mAssetPackManager = new CodePushAssetPackManager(mUpdateManager);
+        mUpdateManager.setBinaryContents(mContext.getApplicationInfo().sourceDir, new BinaryContentsHashProvider() {
+            @Override
+            public String getBinaryContentsHash() {
+                return CodePushUpdateUtils.getHashForBinaryContents(mContext, mIsDebugMode);
+            }
+        });
 
         if (sAppVersion == null) {
             try {
@@ -76,6 +88,7 @@ public class CodePush implements ReactPackage {
             }
         }
 
+        mUpdateCheckClient = new CodePushUpdateCheckClient(mSettingsManager, getBinaryVersion());
         mCurrentInstance = this;
 
         String publicKeyFromStrings = getCustomPropertyFromStringsIfExist("PublicKey");
@@ -208,6 +221,16 @@ public class CodePush implements ReactPackage {
         }
     }
 
+    // Identifies the installed binary by its version name and build time, where the build time is
+    // recorded.
+    private String getBinaryVersion() {
+        try {
+            return sAppVersion + "-" + getBinaryResourcesModifiedTime();
+        } catch (CodePushUnknownException e) {
+            return sAppVersion;
+        }
+    }
+
     public String getPackageFolder() {
         JSONObject codePushLocalPackage = mUpdateManager.getCurrentPackage();
         if (codePushLocalPackage == null) {
@@ -384,6 +407,96 @@ public class CodePush implements ReactPackage {
         mSettingsManager.removePendingUpdate();
     }
 
+    void setDownloadSegmentCount(int downloadSegmentCount) {
+        mUpdateManager.setDownloadSegmentCount(downloadSegmentCount);
+    }
+
+    void setHttpTransport(CodePushHttpTransport httpTransport) {
+        mUpdateManager.setHttpTransport(httpTransport);
+        mUpdateCheckClient.setHttpTransport(httpTransport);
+    }
+
+    void setRetryPolicy(CodePushRetryPolicy retryPolicy) {
+        mUpdateManager.setRetryPolicy(retryPolicy);
+    }
+
+    void addArchiveCodec(CodePushArchiveCodec archiveCodec) {
+        mUpdateManager.addArchiveCodec(archiveCodec);
+    }
+
+    void addDownloadMirror(String mirrorUrl) {
+        mUpdateManager.addDownloadMirror(mirrorUrl);
+    }
+
+    void setDeleteStalePackagesOnLowStorage(boolean deleteStalePackagesOnLowStorage) {
+        mUpdateManager.setDeleteStalePackagesOnLowStorage(deleteStalePackagesOnLowStorage);
+    }
+
+    void setStreamingExtractionEnabled(boolean streamingExtractionEnabled) {
+        mUpdateManager.setStreamingExtractionEnabled(streamingExtractionEnabled);
+    }
+
+    void setForegroundDownloadBandwidthLimit(long bytesPerSecond) {
+        mUpdateManager.setForegroundDownloadBandwidthLimit(bytesPerSecond);
+    }
+
+    void setContentServerUrl(String contentServerUrl) {
+        mUpdateManager.setContentServerUrl(contentServerUrl);
+    }
+
+    void setMaxConcurrentBlobFetches(int maxConcurrentBlobFetches) {
+        mUpdateManager.setMaxConcurrentBlobFetches(maxConcurrentBlobFetches);
+    }
+
+    void setUpdateCheckCacheTtl(long cacheTtlMillis) {
+        mUpdateCheckClient.setCacheTtl(cacheTtlMillis);
+    }
+
+    CodePushUpdateManager getUpdateManager() {
+        return mUpdateManager;
+    }
+
+    SettingsManager getSettingsManager() {
+        return mSettingsManager;
+    }
+
+    CodePushUpdateCheckClient getUpdateCheckClient() {
+        return mUpdateCheckClient;
+    }
+
+    CodePushTelemetryManager getTelemetryManager() {
+        return mTelemetryManager;
+    }
+
+    CodePushAssetPackManager getAssetPackManager() {
+        return mAssetPackManager;
+    }
+
+    void setJSBundleSegmentsEnabled(boolean isJSBundleSegmentsEnabled) {
+        mIsJSBundleSegmentsEnabled = isJSBundleSegmentsEnabled;
+    }
+
+    void setBinaryDiffUpdatesEnabled(boolean isBinaryDiffUpdatesEnabled) {
+        mIsBinaryDiffUpdatesEnabled = isBinaryDiffUpdatesEnabled;
+    }
+
+    // Whether update checks made while no update is installed send the hash of the binary, so
+    // that the server can offer a diff update against it.
+    boolean isBinaryDiffUpdatesEnabled() {
+        return mIsBinaryDiffUpdatesEnabled;
+    }
+
+    // The package whose JS bundle is running, which is the previous package while the current
+    // one is pending, or null while the JS bundle of the binary is running.
+    String getRunningPackageHash() {
+        if (isRunningBinaryVersion()) {
+            return null;
+        }
+
+        String currentPackageHash = mUpdateManager.getCurrentPackageHash();
+        return mSettingsManager.isPendingUpdate(currentPackageHash) ? mUpdateManager.getPreviousPackageHash() : currentPackageHash;
+    }
+
     public void setNeedToReportRollback(boolean needToReportRollback) {
         CodePush.sNeedToReportRollback = needToReportRollback;
     }
@@ -405,6 +518,7 @@ public class CodePush implements ReactPackage {
         mUpdateManager.clearUpdates();
         mSettingsManager.removePendingUpdate();
         mSettingsManager.removeFailedUpdates();
+        mUpdateCheckClient.clearCache();
     }
 
     public static void setReactInstanceHolder(ReactInstanceHolder reactInstanceHolder) {
@@ -426,6 +540,14 @@ public class CodePush implements ReactPackage {
         List<NativeModule> nativeModules = new ArrayList<>();
         nativeModules.add(codePushModule);
         nativeModules.add(dialogModule);
+        if (mIsJSBundleSegmentsEnabled) {
+            nativeModules.add(new CodePushSegmentFetcher(reactApplicationContext, this));
+        }
+
+        // Picks up the asset packs of the running package that were not fetched before the app was
+        // last closed. This waits until the modules are created, so that the builder settings apply
+        // to the downloads and a package that failed to load has already been rolled back.
+        mAssetPackManager.fetchAssetPacks(getRunningPackageHash());
         return nativeModules;
     }
 
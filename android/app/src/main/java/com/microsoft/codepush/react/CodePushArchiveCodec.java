@@ -0,0 +1,30 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Extracts one kind of update package archive. CodePush picks the codec by looking at the
+ * first bytes of a downloaded package, and advertises the names of all registered codecs to
+ * the server so that it can choose an archive format this client understands. Register
+ * additional codecs through {@link CodePushBuilder#addArchiveCodec}.
+ */
+public interface CodePushArchiveCodec {
+    /**
+     * Name of the archive format as advertised to the server, e.g. "zip" or "tar.zst".
+     */
+    String getName();
+
+    /**
+     * Returns whether this codec can read an archive starting with the given bytes. The
+     * header holds the first {@link CodePushConstants#ARCHIVE_HEADER_SIZE} bytes of the
+     * package, zero-filled if the package is shorter.
+     */
+    boolean canExtract(byte[] header);
+
+    /**
+     * Extracts the archive into an existing, empty destination folder. The caller closes the stream.
+     */
+    void extract(InputStream archiveStream, File destinationFolder) throws IOException;
+}
@@ -0,0 +1,232 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Fetches the asset packs of installed packages in the background, one at a time, so that an
+// update can be installed before all of its assets have arrived. Packs are fetched in the order
+// their packages were installed, except for the packs the app asks for, which move to the front.
+class CodePushAssetPackManager {
+
+    public static final String STATUS_READY = "ready";
+    public static final String STATUS_DOWNLOADING = "downloading";
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_FAILED = "failed";
+
+    public interface AssetPacksCallback {
+        void onAssetPacksReady(Exception error);
+    }
+
+    private static class PendingAssetPack {
+        final String packageHash;
+        final String packName;
+
+        PendingAssetPack(String packageHash, String packName) {
+            this.packageHash = packageHash;
+            this.packName = packName;
+        }
+
+        String getKey() {
+            return packageHash + "/" + packName;
+        }
+    }
+
+    private static class Waiter {
+        final String packageHash;
+        final Set<String> remainingPackNames;
+        final AssetPacksCallback callback;
+
+        Waiter(String packageHash, Set<String> remainingPackNames, AssetPacksCallback callback) {
+            this.packageHash = packageHash;
+            this.remainingPackNames = remainingPackNames;
+            this.callback = callback;
+        }
+    }
+
+    private final CodePushUpdateManager mUpdateManager;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final LinkedList<PendingAssetPack> mQueue = new LinkedList<>();
+    private final List<Waiter> mWaiters = new ArrayList<>();
+    private final Map<String, Exception> mFailures = new HashMap<>();
+    private PendingAssetPack mCurrentPack;
+
+    public CodePushAssetPackManager(CodePushUpdateManager updateManager) {
+        mUpdateManager = updateManager;
+    }
+
+    // Queues the packs of the package that are not ready yet. Returns right away, the package
+    // contents are read in the background as well.
+    public void fetchAssetPacks(final String packageHash) {
+        if (packageHash == null) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Iterator<String> packNames = mUpdateManager.getAssetPacks(packageHash).keys();
+                    while (packNames.hasNext()) {
+                        String packName = packNames.next();
+                        if (!mUpdateManager.isAssetPackReady(packageHash, packName)) {
+                            enqueue(new PendingAssetPack(packageHash, packName), false);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    CodePushUtils.log("Unable to read the asset packs of package " + packageHash + ": " + e.getMessage());
+                    return;
+                }
+
+                fetchQueuedAssetPacks();
+            }
+        });
+    }
+
+    // Moves the packs to the front of the queue, in the given order, and calls back once all of
+    // them are ready or as soon as one of them fails. A pack that failed before is tried again.
+    public void prioritizeAssetPacks(String packageHash, List<String> packNames, AssetPacksCallback callback) {
+        Set<String> remainingPackNames = new HashSet<>();
+        try {
+            JSONObject assetPacks = mUpdateManager.getAssetPacks(packageHash);
+            for (String packName : packNames) {
+                if (!assetPacks.has(packName)) {
+                    throw new CodePushUnknownException("Package " + packageHash + " has no asset pack named " + packName + ".");
+                } else if (!mUpdateManager.isAssetPackReady(packageHash, packName)) {
+                    remainingPackNames.add(packName);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            callback.onAssetPacksReady(e);
+            return;
+        }
+
+        if (remainingPackNames.isEmpty()) {
+            callback.onAssetPacksReady(null);
+            return;
+        }
+
+        synchronized (this) {
+            mWaiters.add(new Waiter(packageHash, remainingPackNames, callback));
+            for (int i = packNames.size() - 1; i >= 0; i--) {
+                String packName = packNames.get(i);
+                if (remainingPackNames.contains(packName)) {
+                    enqueue(new PendingAssetPack(packageHash, packName), true);
+                }
+            }
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetchQueuedAssetPacks();
+            }
+        });
+    }
+
+    // Returns the status of every pack of the package by name, one of the STATUS_ constants.
+    public Map<String, String> getAssetPackStatuses(String packageHash) throws IOException {
+        Map<String, String> statuses = new LinkedHashMap<>();
+        Iterator<String> packNames = mUpdateManager.getAssetPacks(packageHash).keys();
+        while (packNames.hasNext()) {
+            String packName = packNames.next();
+            String key = new PendingAssetPack(packageHash, packName).getKey();
+            String status;
+            if (mUpdateManager.isAssetPackReady(packageHash, packName)) {
+                status = STATUS_READY;
+            } else {
+                synchronized (this) {
+                    if (mCurrentPack != null && mCurrentPack.getKey().equals(key)) {
+                        status = STATUS_DOWNLOADING;
+                    } else if (mFailures.containsKey(key)) {
+                        status = STATUS_FAILED;
+                    } else {
+                        status = STATUS_PENDING;
+                    }
+                }
+            }
+
+            statuses.put(packName, status);
+        }
+
+        return statuses;
+    }
+
+    private synchronized void enqueue(PendingAssetPack pack, boolean isPriority) {
+        Iterator<PendingAssetPack> queuedPacks = mQueue.iterator();
+        while (queuedPacks.hasNext()) {
+            if (queuedPacks.next().getKey().equals(pack.getKey())) {
+                queuedPacks.remove();
+            }
+        }
+
+        mFailures.remove(pack.getKey());
+        if (isPriority) {
+            mQueue.addFirst(pack);
+        } else {
+            mQueue.addLast(pack);
+        }
+    }
+
+    // Runs on the executor thread only, so packs are never fetched concurrently.
+    private void fetchQueuedAssetPacks() {
+        while (true) {
+            PendingAssetPack pack;
+            synchronized (this) {
+                pack = mQueue.poll();
+                if (pack == null) {
+                    return;
+                }
+
+                mCurrentPack = pack;
+            }
+
+            Exception error = null;
+            try {
+                if (!mUpdateManager.isAssetPackReady(pack.packageHash, pack.packName)) {
+                    mUpdateManager.downloadAssetPack(pack.packageHash, pack.packName);
+                }
+            } catch (IOException | RuntimeException e) {
+                CodePushUtils.log("Unable to fetch asset pack " + pack.packName + " of package " + pack.packageHash + ": " + e.getMessage());
+                error = e;
+            }
+
+            List<Waiter> finishedWaiters = new ArrayList<>();
+            synchronized (this) {
+                mCurrentPack = null;
+                if (error != null) {
+                    mFailures.put(pack.getKey(), error);
+                }
+
+                Iterator<Waiter> waiters = mWaiters.iterator();
+                while (waiters.hasNext()) {
+                    Waiter waiter = waiters.next();
+                    if (!waiter.packageHash.equals(pack.packageHash) || !waiter.remainingPackNames.contains(pack.packName)) {
+                        continue;
+                    }
+
+                    waiter.remainingPackNames.remove(pack.packName);
+                    if (error != null || waiter.remainingPackNames.isEmpty()) {
+                        waiters.remove();
+                        finishedWaiters.add(waiter);
+                    }
+                }
+            }
+
+            for (Waiter waiter : finishedWaiters) {
+                waiter.callback.onAssetPacksReady(error);
+            }
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.microsoft.codepush.react;
 
 import android.content.Context;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CodePushBuilder {
     private String mDeploymentKey;
     private Context mContext;
@@ -9,6 +12,19 @@ public class CodePushBuilder {
     private boolean mIsDebugMode;
     private String mServerUrl;
     private Integer mPublicKeyResourceDescriptor;
+    private int mDownloadSegmentCount = 1;
+    private CodePushHttpTransport mHttpTransport;
+    private CodePushRetryPolicy mRetryPolicy;
+    private List<CodePushArchiveCodec> mArchiveCodecs = new ArrayList<>();
+    private List<String> mDownloadMirrors = new ArrayList<>();
+    private boolean mDeleteStalePackagesOnLowStorage = false;
+    private long mForegroundDownloadBandwidthLimit = 0;
+    private long mUpdateCheckCacheTtl = 0;
+    private String mContentServerUrl;
+    private int mMaxConcurrentBlobFetches = 4;
+    private boolean mIsJSBundleSegmentsEnabled = false;
+    private boolean mStreamingExtractionEnabled = false;
+    private boolean mIsBinaryDiffUpdatesEnabled = false;
 
     public CodePushBuilder(String deploymentKey, Context context) {
         this.mDeploymentKey = deploymentKey;
@@ -31,7 +47,112 @@ public class CodePushBuilder {
         return this;
     }
 
+    public CodePushBuilder setDownloadSegmentCount(int downloadSegmentCount) {
+        if (downloadSegmentCount < 1) {
+            throw new IllegalArgumentException("The download segment count must be at least 1.");
+        }
+
+        this.mDownloadSegmentCount = downloadSegmentCount;
+        return this;
+    }
+
+    public CodePushBuilder setHttpTransport(CodePushHttpTransport httpTransport) {
+        this.mHttpTransport = httpTransport;
+        return this;
+    }
+
+    public CodePushBuilder setRetryPolicy(CodePushRetryPolicy retryPolicy) {
+        this.mRetryPolicy = retryPolicy;
+        return this;
+    }
+
+    public CodePushBuilder addArchiveCodec(CodePushArchiveCodec archiveCodec) {
+        this.mArchiveCodecs.add(archiveCodec);
+        return this;
+    }
+
+    public CodePushBuilder addDownloadMirror(String mirrorUrl) {
+        this.mDownloadMirrors.add(mirrorUrl);
+        return this;
+    }
+
+    public CodePushBuilder setDeleteStalePackagesOnLowStorage(boolean deleteStalePackagesOnLowStorage) {
+        this.mDeleteStalePackagesOnLowStorage = deleteStalePackagesOnLowStorage;
+        return this;
+    }
+
+    public CodePushBuilder setForegroundDownloadBandwidthLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("The download bandwidth limit must not be negative.");
+        }
+
+        this.mForegroundDownloadBandwidthLimit = bytesPerSecond;
+        return this;
+    }
+
+    public CodePushBuilder setUpdateCheckCacheTtl(long cacheTtlMillis) {
+        if (cacheTtlMillis < 0) {
+            throw new IllegalArgumentException("The update check cache TTL must not be negative.");
+        }
+
+        this.mUpdateCheckCacheTtl = cacheTtlMillis;
+        return this;
+    }
+
+    public CodePushBuilder setContentServerUrl(String contentServerUrl) {
+        this.mContentServerUrl = contentServerUrl;
+        return this;
+    }
+
+    public CodePushBuilder setMaxConcurrentBlobFetches(int maxConcurrentBlobFetches) {
+        if (maxConcurrentBlobFetches < 1) {
+            throw new IllegalArgumentException("The number of concurrent blob fetches must be at least 1.");
+        }
+
+        this.mMaxConcurrentBlobFetches = maxConcurrentBlobFetches;
+        return this;
+    }
+
+    public CodePushBuilder setJSBundleSegmentsEnabled(boolean isJSBundleSegmentsEnabled) {
+        this.mIsJSBundleSegmentsEnabled = isJSBundleSegmentsEnabled;
+        return this;
+    }
+
+    public CodePushBuilder setBinaryDiffUpdatesEnabled(boolean isBinaryDiffUpdatesEnabled) {
+        this.mIsBinaryDiffUpdatesEnabled = isBinaryDiffUpdatesEnabled;
+        return this;
+    }
+
+    public CodePushBuilder setStreamingExtractionEnabled(boolean streamingExtractionEnabled) {
+        this.mStreamingExtractionEnabled = streamingExtractionEnabled;
+        return this;
+    }
+
     public CodePush build() {
-        return new CodePush(this.mDeploymentKey, this.mContext, this.mIsDebugMode, this.mServerUrl, this.mPublicKeyResourceDescriptor);
+        CodePush codePush = new CodePush(this.mDeploymentKey, this.mContext, this.mIsDebugMode, this.mServerUrl, this.mPublicKeyResourceDescriptor);
+        codePush.setDownloadSegmentCount(this.mDownloadSegmentCount);
+        codePush.setDeleteStalePackagesOnLowStorage(this.mDeleteStalePackagesOnLowStorage);
+        codePush.setForegroundDownloadBandwidthLimit(this.mForegroundDownloadBandwidthLimit);
+        codePush.setUpdateCheckCacheTtl(this.mUpdateCheckCacheTtl);
+        codePush.setMaxConcurrentBlobFetches(this.mMaxConcurrentBlobFetches);
+        codePush.setJSBundleSegmentsEnabled(this.mIsJSBundleSegmentsEnabled);
+        codePush.setStreamingExtractionEnabled(this.mStreamingExtractionEnabled);
+        codePush.setBinaryDiffUpdatesEnabled(this.mIsBinaryDiffUpdatesEnabled);
+        if (this.mContentServerUrl != null) {
+            codePush.setContentServerUrl(this.mContentServerUrl);
+        }
+        if (this.mHttpTransport != null) {
+            codePush.setHttpTransport(this.mHttpTransport);
+        }
+        if (this.mRetryPolicy != null) {
+            codePush.setRetryPolicy(this.mRetryPolicy);
+        }
+        for (CodePushArchiveCodec archiveCodec : this.mArchiveCodecs) {
+            codePush.addArchiveCodec(archiveCodec);
+        }
+        for (String mirrorUrl : this.mDownloadMirrors) {
+            codePush.addDownloadMirror(mirrorUrl);
+        }
+        return codePush;
     }
 }
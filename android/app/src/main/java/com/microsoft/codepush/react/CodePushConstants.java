@@ -1,7 +1,12 @@
 package com.microsoft.codepush.react;
 
 public class CodePushConstants {
+    public static final int ARCHIVE_HEADER_SIZE = 4;
     public static final String ASSETS_BUNDLE_PREFIX = "assets://";
+    public static final String ASSET_PACK_FILES_KEY = "files";
+    public static final String ASSET_PACKS_FILE_NAME = "codepushassetpacks.json";
+    public static final String ASSET_PACKS_READY_FOLDER_NAME = ".codepushassetpacks";
+    public static final String BINARY_BASE_FOLDER_NAME = "binary";
     public static final String BINARY_MODIFIED_TIME_KEY = "binaryModifiedTime";
     public static final String CODE_PUSH_FOLDER_PREFIX = "CodePush";
     public static final String CODE_PUSH_HASH_FILE_NAME = "CodePushHash";
@@ -10,13 +15,19 @@ public class CodePushConstants {
     public static final String CURRENT_PACKAGE_KEY = "currentPackage";
     public static final String DEFAULT_JS_BUNDLE_NAME = "index.android.bundle";
     public static final String DIFF_MANIFEST_FILE_NAME = "hotcodepush.json";
+    public static final String DOWNLOAD_ATTEMPTS_KEY = "downloadAttempts";
     public static final int DOWNLOAD_BUFFER_SIZE = 1024 * 256;
+    public static final String DOWNLOAD_CANCELLED_ERROR_CODE = "CodePushDownloadCancelled";
     public static final String DOWNLOAD_FILE_NAME = "download.zip";
+    public static final String DOWNLOAD_RESUME_INFO_FILE_NAME = "download.json";
+    public static final String DOWNLOAD_MIRRORS_KEY = "downloadMirrors";
     public static final String DOWNLOAD_PROGRESS_EVENT_NAME = "CodePushDownloadProgress";
+    public static final String DOWNLOAD_STAGING_FOLDER_NAME = "downloads";
     public static final String DOWNLOAD_URL_KEY = "downloadUrl";
     public static final String FAILED_UPDATES_KEY = "CODE_PUSH_FAILED_UPDATES";
     public static final String PACKAGE_FILE_NAME = "app.json";
     public static final String PACKAGE_HASH_KEY = "packageHash";
+    public static final String PACKAGE_SIZE_KEY = "packageSize";
     public static final String PENDING_UPDATE_HASH_KEY = "hash";
     public static final String PENDING_UPDATE_IS_LOADING_KEY = "isLoading";
     public static final String PENDING_UPDATE_KEY = "CODE_PUSH_PENDING_UPDATE";
@@ -24,9 +35,11 @@ public class CodePushConstants {
     public static final String REACT_NATIVE_LOG_TAG = "ReactNative";
     public static final String RELATIVE_BUNDLE_PATH_KEY = "bundlePath";
     public static final String STATUS_FILE = "codepush.json";
-    public static final String UNZIPPED_FOLDER_NAME = "unzipped";
+    public static final String UPDATE_CHECK_CACHE_KEY = "CODE_PUSH_UPDATE_CHECK_CACHE";
     public static final String CODE_PUSH_APK_BUILD_TIME_KEY = "CODE_PUSH_APK_BUILD_TIME";
     public static final String BUNDLE_JWT_FILE = ".codepushrelease";
+    public static final String IS_SIGNATURE_VERIFIED_KEY = "isSignatureVerified";
+    public static final String VERIFIED_MARKER_FILE_NAME = ".codepushverified";
     public static final String LATEST_ROLLBACK_INFO_KEY = "LATEST_ROLLBACK_INFO";
     public static final String LATEST_ROLLBACK_PACKAGE_HASH_KEY = "packageHash";
     public static final String LATEST_ROLLBACK_TIME_KEY = "time";
@@ -0,0 +1,9 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+
+public class CodePushDownloadCancelledException extends IOException {
+    public CodePushDownloadCancelledException() {
+        super("The download was cancelled.");
+    }
+}
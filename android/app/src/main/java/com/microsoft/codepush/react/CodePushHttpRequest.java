@@ -0,0 +1,38 @@
+package com.microsoft.codepush.react;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CodePushHttpRequest {
+    private final URL mUrl;
+    private String mMethod = "GET";
+    private final Map<String, String> mHeaders = new LinkedHashMap<>();
+
+    public CodePushHttpRequest(URL url) {
+        mUrl = url;
+    }
+
+    public URL getUrl() {
+        return mUrl;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(mHeaders);
+    }
+
+    public CodePushHttpRequest setMethod(String method) {
+        mMethod = method;
+        return this;
+    }
+
+    public CodePushHttpRequest setHeader(String name, String value) {
+        mHeaders.put(name, value);
+        return this;
+    }
+}
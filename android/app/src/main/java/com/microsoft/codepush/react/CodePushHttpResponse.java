@@ -0,0 +1,19 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface CodePushHttpResponse {
+    int getStatusCode();
+
+    // Returns null if the header is not present.
+    String getHeader(String name);
+
+    // Returns -1 if the length of the body is unknown.
+    long getContentLength();
+
+    InputStream getBody() throws IOException;
+
+    // Releases the connection, returning it to the pool if the transport supports reuse.
+    void close();
+}
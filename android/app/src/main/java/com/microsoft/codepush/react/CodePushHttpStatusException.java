@@ -0,0 +1,36 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+
+class CodePushHttpStatusException extends IOException {
+    private final int mStatusCode;
+    private final long mRetryAfterMillis;
+
+    public CodePushHttpStatusException(int statusCode, String url, String retryAfter) {
+        super("Received HTTP status " + statusCode + " for " + url);
+        mStatusCode = statusCode;
+        mRetryAfterMillis = parseRetryAfter(retryAfter);
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    // Returns -1 if the server did not ask for a delay in seconds.
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    private static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            // HTTP dates are not worth parsing here, the backoff delay is used instead.
+            return -1;
+        }
+    }
+}
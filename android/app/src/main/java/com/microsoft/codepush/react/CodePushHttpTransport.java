@@ -0,0 +1,17 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+
+/**
+ * Executes the HTTP requests CodePush makes from native code, e.g. package downloads.
+ * Supply your own implementation through {@link CodePushBuilder#setHttpTransport} to route
+ * CodePush traffic through an HTTP client your app already uses (for example an OkHttp
+ * instance), so that it shares that client's connection pool, TLS sessions and DNS cache.
+ */
+public interface CodePushHttpTransport {
+    /**
+     * Sends the request and returns once the response status and headers are available.
+     * The caller reads the body from the returned response and always closes it.
+     */
+    CodePushHttpResponse execute(CodePushHttpRequest request) throws IOException;
+}
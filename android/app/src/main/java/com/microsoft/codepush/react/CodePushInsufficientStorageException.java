@@ -0,0 +1,23 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+
+public class CodePushInsufficientStorageException extends IOException {
+    private final long mRequiredBytes;
+    private final long mAvailableBytes;
+
+    public CodePushInsufficientStorageException(long requiredBytes, long availableBytes) {
+        super("Not enough storage to download and install the update: " + requiredBytes +
+                " bytes are needed, but only " + availableBytes + " bytes are available.");
+        mRequiredBytes = requiredBytes;
+        mAvailableBytes = availableBytes;
+    }
+
+    public long getRequiredBytes() {
+        return mRequiredBytes;
+    }
+
+    public long getAvailableBytes() {
+        return mAvailableBytes;
+    }
+}
@@ -1,7 +1,6 @@
 package com.microsoft.codepush.react;
 
 import android.app.Activity;
-import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
@@ -18,7 +17,9 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.ChoreographerCompat;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
@@ -35,7 +36,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 public class CodePushNativeModule extends ReactContextBaseJavaModule {
     private String mBinaryContentsHash = null;
@@ -63,12 +63,25 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
         // Initialize module state while we have a reference to the current context.
         mBinaryContentsHash = CodePushUpdateUtils.getHashForBinaryContents(reactContext, mCodePush.isDebugMode());
 
-        SharedPreferences preferences = codePush.getContext().getSharedPreferences(CodePushConstants.CODE_PUSH_PREFERENCES, 0);
-        mClientUniqueId = preferences.getString(CodePushConstants.CLIENT_UNIQUE_ID_KEY, null);
-        if (mClientUniqueId == null) {
-            mClientUniqueId = UUID.randomUUID().toString();
-            preferences.edit().putString(CodePushConstants.CLIENT_UNIQUE_ID_KEY, mClientUniqueId).apply();
-        }
+        mClientUniqueId = mSettingsManager.getClientUniqueId();
+
+        // Downloads are only throttled while they compete with the app's own requests.
+        reactContext.addLifecycleEventListener(new LifecycleEventListener() {
+            @Override
+            public void onHostResume() {
+                mUpdateManager.setIsAppInForeground(true);
+            }
+
+            @Override
+            public void onHostPause() {
+                mUpdateManager.setIsAppInForeground(false);
+            }
+
+            @Override
+            public void onHostDestroy() {
+                mUpdateManager.setIsAppInForeground(false);
+            }
+        });
     }
 
     @Override
@@ -84,6 +97,8 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
         constants.put("codePushUpdateStatePending", CodePushUpdateState.PENDING.getValue());
         constants.put("codePushUpdateStateLatest", CodePushUpdateState.LATEST.getValue());
 
+        constants.put("codePushSupportedArchiveFormats", mUpdateManager.getSupportedArchiveFormats());
+
         return constants;
     }
 
@@ -347,6 +362,45 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
                     CodePushUtils.log(e);
                     mSettingsManager.saveFailedUpdate(CodePushUtils.convertReadableToJsonObject(updatePackage));
                     promise.reject(e);
+                } catch (CodePushDownloadCancelledException e) {
+                    promise.reject(CodePushConstants.DOWNLOAD_CANCELLED_ERROR_CODE, e);
+                } catch (IOException | CodePushUnknownException e) {
+                    CodePushUtils.log(e);
+                    promise.reject(e);
+                }
+
+                return null;
+            }
+        };
+
+        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @ReactMethod
+    public void importUpdate(final ReadableMap updatePackage, final String pathOrUri, final Promise promise) {
+        AsyncTask<Void, Void, Void> asyncTask = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                String packageHash = CodePushUtils.tryGetString(updatePackage, CodePushConstants.PACKAGE_HASH_KEY);
+                if (packageHash == null) {
+                    promise.reject(new CodePushInvalidUpdateException("Update is invalid - A package hash is required to import an update."));
+                    return null;
+                }
+
+                try {
+                    JSONObject mutableUpdatePackage = CodePushUtils.convertReadableToJsonObject(updatePackage);
+                    CodePushUtils.setJSONValueForKey(mutableUpdatePackage, CodePushConstants.BINARY_MODIFIED_TIME_KEY, "" + mCodePush.getBinaryResourcesModifiedTime());
+                    mUpdateManager.importPackage(mutableUpdatePackage, mCodePush.getAssetsBundleFileName(),
+                            new LocalPackageSource(getReactApplicationContext(), pathOrUri), mCodePush.getPublicKey());
+
+                    JSONObject newPackage = mUpdateManager.getPackage(packageHash);
+                    promise.resolve(CodePushUtils.convertJsonObjectToWritable(newPackage));
+                } catch (CodePushInvalidUpdateException e) {
+                    CodePushUtils.log(e);
+                    mSettingsManager.saveFailedUpdate(CodePushUtils.convertReadableToJsonObject(updatePackage));
+                    promise.reject(e);
+                } catch (CodePushDownloadCancelledException e) {
+                    promise.reject(CodePushConstants.DOWNLOAD_CANCELLED_ERROR_CODE, e);
                 } catch (IOException | CodePushUnknownException e) {
                     CodePushUtils.log(e);
                     promise.reject(e);
@@ -359,6 +413,93 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
         asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
+    @ReactMethod
+    public void cancelDownload(String packageHash, Promise promise) {
+        promise.resolve(mUpdateManager.cancelDownload(packageHash));
+    }
+
+    @ReactMethod
+    public void requestUpdateCheck(final String url, final ReadableMap headers, final Promise promise) {
+        AsyncTask<Void, Void, Void> asyncTask = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                try {
+                    Map<String, String> requestHeaders = new HashMap<>();
+                    ReadableMapKeySetIterator iterator = headers.keySetIterator();
+                    while (iterator.hasNextKey()) {
+                        String name = iterator.nextKey();
+                        requestHeaders.put(name, headers.getString(name));
+                    }
+
+                    CodePushUpdateCheckClient.Response response = mCodePush.getUpdateCheckClient().checkForUpdate(url, requestHeaders);
+                    WritableMap responseMap = Arguments.createMap();
+                    responseMap.putInt("statusCode", response.statusCode);
+                    responseMap.putString("body", response.body);
+                    promise.resolve(responseMap);
+                } catch (IOException | CodePushUnknownException e) {
+                    CodePushUtils.log(e);
+                    promise.reject(e);
+                }
+
+                return null;
+            }
+        };
+
+        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @ReactMethod
+    public void getAssetPackStatuses(final String packageHash, final Promise promise) {
+        AsyncTask<Void, Void, Void> asyncTask = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                try {
+                    WritableMap statusMap = Arguments.createMap();
+                    for (Map.Entry<String, String> status : mCodePush.getAssetPackManager().getAssetPackStatuses(packageHash).entrySet()) {
+                        statusMap.putString(status.getKey(), status.getValue());
+                    }
+
+                    promise.resolve(statusMap);
+                } catch (IOException | CodePushUnknownException | CodePushMalformedDataException e) {
+                    CodePushUtils.log(e);
+                    promise.reject(e);
+                }
+
+                return null;
+            }
+        };
+
+        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @ReactMethod
+    public void prioritizeAssetPacks(final String packageHash, final ReadableArray packNames, final Promise promise) {
+        AsyncTask<Void, Void, Void> asyncTask = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                List<String> packNameList = new ArrayList<>();
+                for (int i = 0; i < packNames.size(); i++) {
+                    packNameList.add(packNames.getString(i));
+                }
+
+                mCodePush.getAssetPackManager().prioritizeAssetPacks(packageHash, packNameList, new CodePushAssetPackManager.AssetPacksCallback() {
+                    @Override
+                    public void onAssetPacksReady(Exception error) {
+                        if (error != null) {
+                            promise.reject(error);
+                        } else {
+                            promise.resolve(null);
+                        }
+                    }
+                });
+
+                return null;
+            }
+        };
+
+        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
     @ReactMethod
     public void getConfiguration(Promise promise) {
         try {
@@ -373,6 +514,8 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
                 configMap.putString(CodePushConstants.PACKAGE_HASH_KEY, mBinaryContentsHash);
             }
 
+            configMap.putBoolean("binaryDiffUpdatesEnabled", mCodePush.isBinaryDiffUpdatesEnabled());
+
             promise.resolve(configMap);
         } catch(CodePushUnknownException e) {
             CodePushUtils.log(e);
@@ -511,15 +654,20 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
             @Override
             protected Void doInBackground(Void... params) {
                 try {
-                    mUpdateManager.installPackage(CodePushUtils.convertReadableToJsonObject(updatePackage), mSettingsManager.isPendingUpdate(null));
-
-                    String pendingHash = CodePushUtils.tryGetString(updatePackage, CodePushConstants.PACKAGE_HASH_KEY);
-                    if (pendingHash == null) {
-                        throw new CodePushUnknownException("Update package to be installed has no hash.");
-                    } else {
-                        mSettingsManager.savePendingUpdate(pendingHash, /* isLoading */false);
+                    String pendingHash;
+                    synchronized (mUpdateManager.getInstallLock()) {
+                        mUpdateManager.installPackage(CodePushUtils.convertReadableToJsonObject(updatePackage), mSettingsManager.isPendingUpdate(null));
+
+                        pendingHash = CodePushUtils.tryGetString(updatePackage, CodePushConstants.PACKAGE_HASH_KEY);
+                        if (pendingHash == null) {
+                            throw new CodePushUnknownException("Update package to be installed has no hash.");
+                        } else {
+                            mSettingsManager.savePendingUpdate(pendingHash, /* isLoading */false);
+                        }
                     }
 
+                    mCodePush.getAssetPackManager().fetchAssetPacks(pendingHash);
+
                     if (installMode == CodePushInstallMode.ON_NEXT_RESUME.getValue() ||
                         // We also add the resume listener if the installMode is IMMEDIATE, because
                         // if the current activity is backgrounded, we want to reload the bundle when
@@ -654,6 +802,21 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
         }
     }
 
+    @ReactMethod
+    public void getDownloadReport(Promise promise) {
+        try {
+            WritableMap downloadReport = mTelemetryManager.getDownloadReport();
+            if (downloadReport != null) {
+                promise.resolve(downloadReport);
+            } else {
+                promise.resolve("");
+            }
+        } catch(CodePushUnknownException e) {
+            CodePushUtils.log(e);
+            promise.reject(e);
+        }
+    }
+
     @ReactMethod
     public void recordStatusReported(ReadableMap statusReport) {
         try {
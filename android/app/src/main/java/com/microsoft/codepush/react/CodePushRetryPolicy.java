@@ -0,0 +1,118 @@
+package com.microsoft.codepush.react;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Decides whether a failed package download is retried natively and how long to wait first.
+ * Delays grow exponentially from the initial backoff up to the maximum backoff, and each delay
+ * is drawn at random below that bound ("full jitter") so that devices which failed together
+ * do not retry together. Retries resume the partially downloaded package where possible.
+ * Pass an instance to {@link CodePushBuilder#setRetryPolicy}.
+ */
+public class CodePushRetryPolicy {
+    private int mMaxAttempts = 3;
+    private long mInitialBackoffMillis = 1000;
+    private long mMaxBackoffMillis = 30 * 1000;
+    private final Set<Integer> mRetryableStatusCodes = new HashSet<>(Arrays.asList(408, 429, 500, 502, 503, 504));
+    private final List<Class<? extends IOException>> mRetryableExceptions = new ArrayList<>();
+    private final Random mRandom = new Random();
+
+    public CodePushRetryPolicy() {
+        mRetryableExceptions.add(SocketTimeoutException.class);
+        mRetryableExceptions.add(SocketException.class);
+        mRetryableExceptions.add(UnknownHostException.class);
+        mRetryableExceptions.add(EOFException.class);
+    }
+
+    /**
+     * Total number of download attempts, including the first one. 1 disables retries. With
+     * download mirrors, an attempt tries each mirror once before the next one waits.
+     */
+    public CodePushRetryPolicy setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The maximum number of attempts must be at least 1.");
+        }
+
+        mMaxAttempts = maxAttempts;
+        return this;
+    }
+
+    public CodePushRetryPolicy setBackoff(long initialBackoffMillis, long maxBackoffMillis) {
+        if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("The backoff must be non-negative and the maximum must not be below the initial backoff.");
+        }
+
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Replaces the HTTP status codes that are retried. Defaults to 408, 429, 500, 502, 503 and 504.
+     */
+    public CodePushRetryPolicy setRetryableStatusCodes(int... statusCodes) {
+        mRetryableStatusCodes.clear();
+        for (int statusCode : statusCodes) {
+            mRetryableStatusCodes.add(statusCode);
+        }
+
+        return this;
+    }
+
+    /**
+     * Also retries downloads that fail with the given exception or one of its subclasses. By
+     * default timeouts, socket errors, DNS failures and truncated responses are retried.
+     */
+    public CodePushRetryPolicy addRetryableException(Class<? extends IOException> exceptionClass) {
+        mRetryableExceptions.add(exceptionClass);
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    boolean isRetryable(IOException exception) {
+        if (exception instanceof CodePushHttpStatusException) {
+            return mRetryableStatusCodes.contains(((CodePushHttpStatusException) exception).getStatusCode());
+        }
+
+        for (Class<? extends IOException> exceptionClass : mRetryableExceptions) {
+            if (exceptionClass.isInstance(exception)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // A Retry-After given by the server overrides the jittered delay, within the maximum backoff.
+    long getRetryDelayMillis(int failedAttempt, IOException exception) {
+        if (exception instanceof CodePushHttpStatusException) {
+            long retryAfterMillis = ((CodePushHttpStatusException) exception).getRetryAfterMillis();
+            if (retryAfterMillis >= 0) {
+                return Math.min(retryAfterMillis, mMaxBackoffMillis);
+            }
+        }
+
+        long bound = mInitialBackoffMillis;
+        for (int i = 1; i < failedAttempt && bound < mMaxBackoffMillis; i++) {
+            bound *= 2;
+        }
+
+        bound = Math.min(bound, mMaxBackoffMillis);
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * (bound + 1));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.microsoft.codepush.react;
+
+import android.os.AsyncTask;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+// Serves the segments of a split JS bundle to React Native's asynchronous require, which calls
+// the native module named SegmentFetcher when code of a segment that has not been loaded yet is
+// imported. The segments of the running update are asset packs of single files, so a segment
+// that has not been fetched in the background yet is fetched before any other pack. While the JS
+// bundle of the binary runs, its segments are read from the APK assets instead.
+public class CodePushSegmentFetcher extends ReactContextBaseJavaModule {
+
+    private static final String SEGMENT_NOT_FOUND_ERROR_CODE = "CodePushSegmentNotFound";
+    private static final String SEGMENT_FETCH_ERROR_CODE = "CodePushSegmentFetchFailed";
+    // Where the binary ships the segments of its own split JS bundle, e.g. segments/1.bundle.
+    private static final String BINARY_SEGMENTS_ASSET_FOLDER = "segments";
+    private static final String BINARY_SEGMENTS_CACHE_FOLDER = "CodePushSegments";
+    private static final String SEGMENT_FILE_EXTENSION = ".bundle";
+
+    private final CodePush mCodePush;
+
+    public CodePushSegmentFetcher(ReactApplicationContext reactContext, CodePush codePush) {
+        super(reactContext);
+        mCodePush = codePush;
+    }
+
+    @Override
+    public String getName() {
+        return "SegmentFetcher";
+    }
+
+    // Used by React Native versions that load the segment from the path they are given.
+    @ReactMethod
+    public void getSegment(final int segmentId, ReadableMap options, final Callback callback) {
+        fetchSegmentFile(segmentId, new SegmentCallback() {
+            @Override
+            public void onSegmentReady(String segmentPath) {
+                callback.invoke(null, segmentPath);
+            }
+
+            @Override
+            public void onSegmentFailed(WritableMap error) {
+                callback.invoke(error);
+            }
+        });
+    }
+
+    // Used by React Native versions that expect the segment to be registered with the bridge.
+    @ReactMethod
+    public void fetchSegment(final int segmentId, ReadableMap options, final Callback callback) {
+        fetchSegmentFile(segmentId, new SegmentCallback() {
+            @Override
+            public void onSegmentReady(String segmentPath) {
+                getReactApplicationContext().getCatalystInstance().registerSegment(segmentId, segmentPath);
+                callback.invoke();
+            }
+
+            @Override
+            public void onSegmentFailed(WritableMap error) {
+                callback.invoke(error);
+            }
+        });
+    }
+
+    private interface SegmentCallback {
+        void onSegmentReady(String segmentPath);
+
+        void onSegmentFailed(WritableMap error);
+    }
+
+    private void fetchSegmentFile(final int segmentId, final SegmentCallback callback) {
+        final String packageHash = mCodePush.getRunningPackageHash();
+        if (packageHash == null) {
+            fetchBinarySegmentFile(segmentId, callback);
+            return;
+        }
+
+        final CodePushUpdateManager updateManager = mCodePush.getUpdateManager();
+        final String packName;
+        try {
+            packName = updateManager.findSegmentAssetPack(packageHash, segmentId);
+        } catch (IOException | CodePushMalformedDataException e) {
+            CodePushUtils.log(e);
+            callback.onSegmentFailed(createError(SEGMENT_FETCH_ERROR_CODE, e.getMessage()));
+            return;
+        }
+
+        if (packName == null) {
+            callback.onSegmentFailed(createError(SEGMENT_NOT_FOUND_ERROR_CODE, "The running update has no JS bundle segment " + segmentId + "."));
+            return;
+        }
+
+        mCodePush.getAssetPackManager().prioritizeAssetPacks(packageHash, Collections.singletonList(packName), new CodePushAssetPackManager.AssetPacksCallback() {
+            @Override
+            public void onAssetPacksReady(Exception error) {
+                if (error != null) {
+                    callback.onSegmentFailed(createError(SEGMENT_FETCH_ERROR_CODE, error.getMessage()));
+                    return;
+                }
+
+                try {
+                    callback.onSegmentReady(updateManager.getAssetPackFilePath(packageHash, packName));
+                } catch (IOException e) {
+                    CodePushUtils.log(e);
+                    callback.onSegmentFailed(createError(SEGMENT_FETCH_ERROR_CODE, e.getMessage()));
+                }
+            }
+        });
+    }
+
+    private void fetchBinarySegmentFile(final int segmentId, final SegmentCallback callback) {
+        AsyncTask<Void, Void, Void> asyncTask = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                String segmentPath;
+                try {
+                    segmentPath = getBinarySegmentFile(segmentId);
+                } catch (IOException | CodePushUnknownException e) {
+                    CodePushUtils.log(e);
+                    callback.onSegmentFailed(createError(SEGMENT_FETCH_ERROR_CODE, e.getMessage()));
+                    return null;
+                }
+
+                if (segmentPath == null) {
+                    callback.onSegmentFailed(createError(SEGMENT_NOT_FOUND_ERROR_CODE, "The binary has no JS bundle segment " + segmentId + "."));
+                } else {
+                    callback.onSegmentReady(segmentPath);
+                }
+
+                return null;
+            }
+        };
+
+        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // React Native loads a segment from a file, so a segment of the binary is copied out of the
+    // APK the first time it is needed, into a cache folder of the binary it came with. Returns
+    // null if the binary has no such segment.
+    private synchronized String getBinarySegmentFile(int segmentId) throws IOException {
+        File cacheFolder = new File(getReactApplicationContext().getCacheDir(), BINARY_SEGMENTS_CACHE_FOLDER);
+        File binaryFolder = new File(cacheFolder, String.valueOf(mCodePush.getBinaryResourcesModifiedTime()));
+        File segmentFile = new File(binaryFolder, segmentId + SEGMENT_FILE_EXTENSION);
+        if (segmentFile.exists()) {
+            return segmentFile.getAbsolutePath();
+        }
+
+        InputStream assetStream;
+        try {
+            assetStream = getReactApplicationContext().getAssets().open(BINARY_SEGMENTS_ASSET_FOLDER + "/" + segmentId + SEGMENT_FILE_EXTENSION);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            // Segments copied from an earlier binary are not needed anymore.
+            File[] cachedBinaryFolders = cacheFolder.listFiles();
+            if (cachedBinaryFolders != null) {
+                for (File cachedBinaryFolder : cachedBinaryFolders) {
+                    if (!cachedBinaryFolder.equals(binaryFolder)) {
+                        FileUtils.deleteFileOrFolderSilently(cachedBinaryFolder);
+                    }
+                }
+            }
+
+            binaryFolder.mkdirs();
+            File tempFile = new File(binaryFolder, segmentId + SEGMENT_FILE_EXTENSION + ".tmp");
+            FileUtils.writeStreamToFile(assetStream, tempFile);
+            FileUtils.moveFile(tempFile, binaryFolder.getAbsolutePath(), segmentFile.getName());
+        } finally {
+            try {
+                assetStream.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+
+        return segmentFile.getAbsolutePath();
+    }
+
+    private static WritableMap createError(String code, String message) {
+        WritableMap error = Arguments.createMap();
+        error.putString("code", code);
+        error.putString("message", message);
+        return error;
+    }
+}
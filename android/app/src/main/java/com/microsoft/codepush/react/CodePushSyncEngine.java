@@ -0,0 +1,197 @@
+package com.microsoft.codepush.react;
+
+import android.os.AsyncTask;
+import android.os.Looper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks for, downloads and installs an update without the JS runtime, e.g. from
+ * {@code Application.onCreate} or a background job, so that an update can be applied on the
+ * very next cold start. It follows the defaults of the JS {@code sync}: updates that were
+ * rolled back before are ignored and a new update is installed {@code ON_NEXT_RESTART}. The
+ * download and deployment status of the update are reported by the JS layer once it runs.
+ */
+public class CodePushSyncEngine {
+
+    public interface SyncCallback {
+        void onSyncFinished(CodePushSyncStatus syncStatus, Exception error);
+    }
+
+    private static final String PLUGIN_NAME = "react-native-code-push";
+
+    private final CodePush mCodePush;
+    private final CodePushUpdateManager mUpdateManager;
+    private final SettingsManager mSettingsManager;
+    private final CodePushTelemetryManager mTelemetryManager;
+    private final CodePushUpdateCheckClient mUpdateCheckClient;
+
+    public CodePushSyncEngine(CodePush codePush) {
+        mCodePush = codePush;
+        mUpdateManager = codePush.getUpdateManager();
+        mSettingsManager = codePush.getSettingsManager();
+        mTelemetryManager = codePush.getTelemetryManager();
+        mUpdateCheckClient = codePush.getUpdateCheckClient();
+    }
+
+    // Runs sync on a background thread and reports the outcome to the callback, which may be null.
+    public void syncInBackground(final SyncCallback callback) {
+        AsyncTask<Void, Void, Void> asyncTask = new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                CodePushSyncStatus syncStatus = null;
+                Exception error = null;
+                try {
+                    syncStatus = sync();
+                } catch (IOException | RuntimeException e) {
+                    CodePushUtils.log(e);
+                    error = e;
+                }
+
+                if (callback != null) {
+                    callback.onSyncFinished(syncStatus, error);
+                }
+
+                return null;
+            }
+        };
+
+        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // Blocks until the update is installed or found not to be needed, so it must not be called
+    // on the main thread.
+    public synchronized CodePushSyncStatus sync() throws IOException {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("CodePushSyncEngine.sync must not be called on the main thread.");
+        }
+
+        CodePushUtils.log("Checking for update natively.");
+        JSONObject localPackage = getLatestPackage();
+        JSONObject updatePackage = queryUpdate(localPackage);
+        if (updatePackage == null) {
+            CodePushUtils.log("App is up to date.");
+            return CodePushSyncStatus.UP_TO_DATE;
+        }
+
+        String packageHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        if (mSettingsManager.isFailedHash(packageHash)) {
+            CodePushUtils.log("An update is available, but it is being ignored due to having been previously rolled back.");
+            return CodePushSyncStatus.UPDATE_IGNORED;
+        }
+
+        CodePushUtils.log("Downloading update package natively.");
+        CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.BINARY_MODIFIED_TIME_KEY, "" + mCodePush.getBinaryResourcesModifiedTime());
+        try {
+            mUpdateManager.downloadPackage(updatePackage, mCodePush.getAssetsBundleFileName(), null, mCodePush.getPublicKey());
+        } catch (CodePushInvalidUpdateException e) {
+            mSettingsManager.saveFailedUpdate(updatePackage);
+            throw e;
+        }
+
+        mTelemetryManager.saveDownloadReport(updatePackage);
+
+        // Same as an ON_NEXT_RESTART install from JS: the update is loaded on the next cold start.
+        // The JS layer may have installed an update while this one was downloading, in which case
+        // that install is kept.
+        synchronized (mUpdateManager.getInstallLock()) {
+            String currentPackageHash = mUpdateManager.getCurrentPackageHash();
+            String localPackageHash = localPackage == null ? null : localPackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+            if (packageHash.equals(currentPackageHash)) {
+                CodePushUtils.log("Update has already been installed by the JS layer.");
+                return CodePushSyncStatus.UPDATE_INSTALLED;
+            } else if (currentPackageHash == null ? localPackageHash != null : !currentPackageHash.equals(localPackageHash)) {
+                CodePushUtils.log("Another update was installed while this one was downloading, skipping its install.");
+                return CodePushSyncStatus.SYNC_IN_PROGRESS;
+            }
+
+            JSONObject newPackage = mUpdateManager.getPackage(packageHash);
+            mUpdateManager.installPackage(newPackage, mSettingsManager.isPendingUpdate(null));
+            mSettingsManager.savePendingUpdate(packageHash, /* isLoading */false);
+        }
+
+        mCodePush.getAssetPackManager().fetchAssetPacks(packageHash);
+        CodePushUtils.log("Update is installed and will be run on the next app restart.");
+        return CodePushSyncStatus.UPDATE_INSTALLED;
+    }
+
+    // The installed update, pending or not, which is what the JS checkForUpdate queries with.
+    private JSONObject getLatestPackage() {
+        try {
+            return mUpdateManager.getCurrentPackage();
+        } catch (CodePushMalformedDataException e) {
+            CodePushUtils.log(e.getMessage());
+            return null;
+        }
+    }
+
+    // Returns the update the server offers for this app, or null if it is not newer than what
+    // the app runs, following the rules of the JS checkForUpdate.
+    private JSONObject queryUpdate(JSONObject localPackage) throws IOException {
+        String deploymentKey = mCodePush.getDeploymentKey();
+        String localPackageHash = localPackage == null ? null : localPackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        String binaryContentsHash = CodePushUpdateUtils.getHashForBinaryContents(mCodePush.getContext(), mCodePush.isDebugMode());
+
+        String url = CodePushUpdateCheckClient.buildUpdateCheckUrl(
+                mCodePush.getServerUrl(),
+                deploymentKey,
+                localPackage == null ? mCodePush.getAppVersion() : localPackage.optString("appVersion", null),
+                localPackage == null ? (mCodePush.isBinaryDiffUpdatesEnabled() ? binaryContentsHash : null) : localPackageHash,
+                localPackage == null ? null : localPackage.optString("label", null),
+                mSettingsManager.getClientUniqueId());
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("X-CodePush-Plugin-Name", PLUGIN_NAME);
+        headers.put("X-CodePush-Archive-Formats", mUpdateManager.getSupportedArchiveFormats());
+
+        CodePushUpdateCheckClient.Response response = mUpdateCheckClient.checkForUpdate(url, headers);
+        if (response.statusCode != HttpURLConnection.HTTP_OK) {
+            throw new CodePushHttpStatusException(response.statusCode, url, null);
+        }
+
+        JSONObject updateInfo;
+        try {
+            updateInfo = new JSONObject(response.body).optJSONObject("update_info");
+        } catch (JSONException e) {
+            throw new CodePushUnknownException("Unable to parse update check response.", e);
+        }
+
+        if (updateInfo == null || !updateInfo.optBoolean("is_available", false)) {
+            return null;
+        } else if (updateInfo.optBoolean("update_app_version", false)) {
+            CodePushUtils.log("An update is available but it is not targeting the binary version of your app.");
+            return null;
+        }
+
+        String packageHash = updateInfo.optString("package_hash", null);
+        boolean isRunningBinary = localPackage == null || mCodePush.isRunningBinaryVersion();
+        if (packageHash == null || packageHash.equals(localPackageHash) ||
+                (isRunningBinary && packageHash.equals(binaryContentsHash))) {
+            return null;
+        }
+
+        JSONObject updatePackage = new JSONObject();
+        try {
+            updatePackage.put("deploymentKey", deploymentKey);
+            updatePackage.put("description", updateInfo.optString("description", ""));
+            updatePackage.put("label", updateInfo.optString("label", null));
+            updatePackage.put("appVersion", updateInfo.optString("target_binary_range", null));
+            updatePackage.put("isMandatory", updateInfo.optBoolean("is_mandatory", false));
+            updatePackage.put(CodePushConstants.PACKAGE_HASH_KEY, packageHash);
+            updatePackage.put(CodePushConstants.PACKAGE_SIZE_KEY, updateInfo.optLong("package_size", 0));
+            updatePackage.put(CodePushConstants.DOWNLOAD_URL_KEY, updateInfo.optString("download_url", null));
+            updatePackage.putOpt(CodePushConstants.DOWNLOAD_MIRRORS_KEY, updateInfo.optJSONArray("download_mirrors"));
+            updatePackage.put("failedInstall", false);
+        } catch (JSONException e) {
+            throw new CodePushUnknownException("Unable to create update package metadata.", e);
+        }
+
+        return updatePackage;
+    }
+}
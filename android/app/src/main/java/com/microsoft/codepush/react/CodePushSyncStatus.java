@@ -0,0 +1,17 @@
+package com.microsoft.codepush.react;
+
+// Mirrors the values of the codePush.SyncStatus enum the JS sync reports.
+public enum CodePushSyncStatus {
+    UP_TO_DATE(0),
+    UPDATE_INSTALLED(1),
+    UPDATE_IGNORED(2),
+    SYNC_IN_PROGRESS(4);
+
+    private final int value;
+    CodePushSyncStatus(int value) {
+        this.value = value;
+    }
+    public int getValue() {
+        return this.value;
+    }
+}
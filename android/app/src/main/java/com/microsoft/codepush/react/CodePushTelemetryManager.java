@@ -19,6 +19,7 @@ public class CodePushTelemetryManager {
     private final String LABEL_KEY = "label";
     private final String LAST_DEPLOYMENT_REPORT_KEY = "CODE_PUSH_LAST_DEPLOYMENT_REPORT";
     private final String PACKAGE_KEY = "package";
+    private final String PENDING_DOWNLOAD_REPORT_KEY = "CODE_PUSH_PENDING_DOWNLOAD_REPORT";
     private final String PREVIOUS_DEPLOYMENT_KEY_KEY = "previousDeploymentKey";
     private final String PREVIOUS_LABEL_OR_APP_VERSION_KEY = "previousLabelOrAppVersion";
     private final String RETRY_DEPLOYMENT_REPORT_KEY = "CODE_PUSH_RETRY_DEPLOYMENT_REPORT";
@@ -54,6 +55,24 @@ public class CodePushTelemetryManager {
         return reportMap;
     }
 
+    // Returns the download report saved by a native sync, if any, only once.
+    public WritableMap getDownloadReport() {
+        String downloadedPackageString = mSettings.getString(PENDING_DOWNLOAD_REPORT_KEY, null);
+        if (downloadedPackageString != null) {
+            mSettings.edit().remove(PENDING_DOWNLOAD_REPORT_KEY).commit();
+            try {
+                JSONObject downloadedPackage = new JSONObject(downloadedPackageString);
+                WritableMap reportMap = Arguments.createMap();
+                reportMap.putMap(PACKAGE_KEY, CodePushUtils.convertJsonObjectToWritable(downloadedPackage));
+                return reportMap;
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return null;
+    }
+
     public WritableMap getRetryStatusReport() {
         String retryStatusReportString = mSettings.getString(RETRY_DEPLOYMENT_REPORT_KEY, null);
         if (retryStatusReportString != null) {
@@ -122,6 +141,12 @@ public class CodePushTelemetryManager {
         }
     }
 
+    // Updates that are downloaded without the JS runtime are reported by the JS layer the next
+    // time it runs, like their deployment status. Only the latest download is kept.
+    public void saveDownloadReport(JSONObject downloadedPackage) {
+        mSettings.edit().putString(PENDING_DOWNLOAD_REPORT_KEY, downloadedPackage.toString()).commit();
+    }
+
     public void saveStatusReportForRetry(ReadableMap statusReport) {
         JSONObject statusReportJSON = CodePushUtils.convertReadableToJsonObject(statusReport);
         mSettings.edit().putString(RETRY_DEPLOYMENT_REPORT_KEY, statusReportJSON.toString()).commit();
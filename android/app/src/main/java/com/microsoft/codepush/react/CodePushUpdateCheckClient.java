@@ -0,0 +1,244 @@
+package com.microsoft.codepush.react;
+
+import io.github.pixee.security.HostValidator;
+import io.github.pixee.security.Urls;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Sends update check requests on behalf of the JS layer and remembers the last successful
+// responses. A response is answered from the cache while it is fresh, and revalidated with
+// If-None-Match once it is stale, so the server only sends the update information again when
+// it has changed. The query string of an update check holds the deployment key, app version
+// and package hash, so a cached response is only reused for the exact same request URL. A few
+// URLs are cached side by side, as the JS and native update checks and deployment key switches
+// would otherwise keep replacing each other's response, and the whole cache is dropped when
+// the binary changes.
+class CodePushUpdateCheckClient {
+
+    interface CacheStore {
+        JSONObject getUpdateCheckCache();
+
+        void saveUpdateCheckCache(JSONObject updateCheckCache);
+
+        void removeUpdateCheckCache();
+    }
+
+    private static final String UPDATE_CHECK_PATH = "v0.1/public/codepush/update_check";
+    private static final int MAX_CACHED_RESPONSES = 4;
+    private static final String BINARY_VERSION_KEY = "binaryVersion";
+    private static final String RESPONSES_KEY = "responses";
+    private static final String URL_KEY = "url";
+    private static final String BODY_KEY = "body";
+    private static final String ETAG_KEY = "etag";
+    private static final String EXPIRES_AT_KEY = "expiresAt";
+
+    static class Response {
+        final int statusCode;
+        final String body;
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+
+    private final CacheStore mCacheStore;
+    private final String mBinaryVersion;
+    private CodePushHttpTransport mHttpTransport = new HttpURLConnectionTransport();
+    private long mCacheTtlMillis = 0;
+
+    // binaryVersion identifies the installed binary. Responses cached by another binary are not
+    // reused.
+    public CodePushUpdateCheckClient(CacheStore cacheStore, String binaryVersion) {
+        mCacheStore = cacheStore;
+        mBinaryVersion = binaryVersion;
+    }
+
+    // Builds the update check URL with its parameters in the order the JS acquisition SDK uses,
+    // so that native and JS update checks for the same package share the cached response.
+    // Parameters that are null are left out.
+    static String buildUpdateCheckUrl(String serverUrl, String deploymentKey, String appVersion,
+                                      String packageHash, String label, String clientUniqueId) {
+        StringBuilder url = new StringBuilder(serverUrl);
+        if (url.charAt(url.length() - 1) != '/') {
+            url.append('/');
+        }
+
+        url.append(UPDATE_CHECK_PATH).append('?');
+        appendQueryParameter(url, "deployment_key", deploymentKey);
+        appendQueryParameter(url, "app_version", appVersion);
+        appendQueryParameter(url, "package_hash", packageHash);
+        appendQueryParameter(url, "is_companion", "false");
+        appendQueryParameter(url, "label", label);
+        appendQueryParameter(url, "client_unique_id", clientUniqueId);
+        return url.substring(0, url.length() - 1);
+    }
+
+    public void setHttpTransport(CodePushHttpTransport httpTransport) {
+        mHttpTransport = httpTransport;
+    }
+
+    // Used when the server does not send a Cache-Control max-age with the response.
+    public void setCacheTtl(long cacheTtlMillis) {
+        mCacheTtlMillis = cacheTtlMillis;
+    }
+
+    public Response checkForUpdate(String url, Map<String, String> headers) throws IOException {
+        JSONObject cachedResponse = getCachedResponse(url);
+        if (cachedResponse != null && cachedResponse.optLong(EXPIRES_AT_KEY) > System.currentTimeMillis()) {
+            return new Response(HttpURLConnection.HTTP_OK, cachedResponse.optString(BODY_KEY));
+        }
+
+        CodePushHttpRequest request = new CodePushHttpRequest(Urls.create(url, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.setHeader(header.getKey(), header.getValue());
+        }
+
+        String cachedETag = cachedResponse == null ? null : cachedResponse.optString(ETAG_KEY, null);
+        if (cachedETag != null) {
+            request.setHeader("If-None-Match", cachedETag);
+        }
+
+        CodePushHttpResponse response = mHttpTransport.execute(request);
+        try {
+            int statusCode = response.getStatusCode();
+            String cacheControl = response.getHeader("Cache-Control");
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedResponse != null) {
+                String body = cachedResponse.optString(BODY_KEY);
+                // A 304 may carry a new ETag, and restarts the freshness lifetime either way.
+                String eTag = response.getHeader("ETag");
+                saveResponse(url, body, eTag != null ? eTag : cachedETag, cacheControl);
+                return new Response(HttpURLConnection.HTTP_OK, body);
+            }
+
+            String body = CodePushUtils.getStringFromInputStream(response.getBody());
+            if (statusCode == HttpURLConnection.HTTP_OK) {
+                saveResponse(url, body, response.getHeader("ETag"), cacheControl);
+            }
+
+            return new Response(statusCode, body);
+        } finally {
+            response.close();
+        }
+    }
+
+    public synchronized void clearCache() {
+        mCacheStore.removeUpdateCheckCache();
+    }
+
+    private synchronized JSONObject getCachedResponse(String url) {
+        JSONArray cachedResponses = getCachedResponses();
+        for (int i = 0; i < cachedResponses.length(); i++) {
+            JSONObject cachedResponse = cachedResponses.optJSONObject(i);
+            if (cachedResponse != null && url.equals(cachedResponse.optString(URL_KEY))) {
+                return cachedResponse;
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized void saveResponse(String url, String body, String eTag, String cacheControl) {
+        // The most recently saved response is last, and the oldest ones make room for it.
+        List<JSONObject> otherResponses = new ArrayList<>();
+        JSONArray cachedResponses = getCachedResponses();
+        for (int i = 0; i < cachedResponses.length(); i++) {
+            JSONObject cachedResponse = cachedResponses.optJSONObject(i);
+            if (cachedResponse != null && !url.equals(cachedResponse.optString(URL_KEY))) {
+                otherResponses.add(cachedResponse);
+            }
+        }
+
+        JSONArray newCachedResponses = new JSONArray();
+        for (int i = Math.max(0, otherResponses.size() - (MAX_CACHED_RESPONSES - 1)); i < otherResponses.size(); i++) {
+            newCachedResponses.put(otherResponses.get(i));
+        }
+
+        try {
+            if (!hasCacheControlDirective(cacheControl, "no-store")) {
+                long ttlMillis = hasCacheControlDirective(cacheControl, "no-cache") ? 0 : getMaxAgeMillis(cacheControl);
+                JSONObject cachedResponse = new JSONObject();
+                cachedResponse.put(URL_KEY, url);
+                cachedResponse.put(BODY_KEY, body);
+                if (eTag != null) {
+                    cachedResponse.put(ETAG_KEY, eTag);
+                }
+                cachedResponse.put(EXPIRES_AT_KEY, System.currentTimeMillis() + ttlMillis);
+                newCachedResponses.put(cachedResponse);
+            }
+
+            JSONObject updateCheckCache = new JSONObject();
+            updateCheckCache.put(BINARY_VERSION_KEY, mBinaryVersion);
+            updateCheckCache.put(RESPONSES_KEY, newCachedResponses);
+            mCacheStore.saveUpdateCheckCache(updateCheckCache);
+        } catch (JSONException e) {
+            throw new CodePushUnknownException("Unable to save update check response.", e);
+        }
+    }
+
+    // Returns the cached responses of the installed binary. A cache saved by another binary, or
+    // in the single response format of earlier versions, counts as empty.
+    private JSONArray getCachedResponses() {
+        JSONObject updateCheckCache = mCacheStore.getUpdateCheckCache();
+        if (updateCheckCache == null || !mBinaryVersion.equals(updateCheckCache.optString(BINARY_VERSION_KEY, null))) {
+            return new JSONArray();
+        }
+
+        JSONArray cachedResponses = updateCheckCache.optJSONArray(RESPONSES_KEY);
+        return cachedResponses == null ? new JSONArray() : cachedResponses;
+    }
+
+    private long getMaxAgeMillis(String cacheControl) {
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim();
+                if (directive.toLowerCase(Locale.US).startsWith("max-age=")) {
+                    try {
+                        return Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim())) * 1000;
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return mCacheTtlMillis;
+    }
+
+    private static boolean hasCacheControlDirective(String cacheControl, String directive) {
+        if (cacheControl == null) {
+            return false;
+        }
+
+        for (String value : cacheControl.split(",")) {
+            if (value.trim().equalsIgnoreCase(directive)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void appendQueryParameter(StringBuilder url, String name, String value) {
+        if (value == null) {
+            return;
+        }
+
+        try {
+            url.append(URLEncoder.encode(name, "UTF-8")).append('=').append(URLEncoder.encode(value, "UTF-8").replace("+", "%20")).append('&');
+        } catch (UnsupportedEncodingException e) {
+            throw new CodePushUnknownException("Unable to encode update check parameter " + name, e);
+        }
+    }
+}
@@ -1,37 +1,174 @@
 package com.microsoft.codepush.react;
 
-import android.os.Build;
 import io.github.pixee.security.HostValidator;
 import io.github.pixee.security.Urls;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.ByteBuffer;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class CodePushUpdateManager {
 
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    // Free storage left over after an update is downloaded and extracted.
+    private static final long STORAGE_HEADROOM_BYTES = 5 * 1024 * 1024;
+    // Where a content server serves the file manifest of a package by its hash, and the
+    // contents of its files by their SHA-256.
+    private static final String CONTENT_MANIFESTS_PATH = "manifests/";
+    private static final String CONTENT_BLOBS_PATH = "blobs/";
+    // Where an asset pack is extracted in its staging folder before it is added to its package.
+    private static final String ASSET_PACK_CONTENTS_FOLDER_NAME = "contents";
+
     private String mDocumentsDirectory;
+    private int mDownloadSegmentCount = 1;
+    private CodePushHttpTransport mHttpTransport = new HttpURLConnectionTransport();
+    private CodePushRetryPolicy mRetryPolicy = new CodePushRetryPolicy();
+    private final List<String> mDownloadMirrors = new ArrayList<>();
+    private boolean mDeleteStalePackagesOnLowStorage = false;
+    private boolean mStreamingExtractionEnabled = false;
+    private String mContentServerUrl = null;
+    private int mMaxConcurrentBlobFetches = 4;
+    private String mBinaryPath = null;
+    private BinaryContentsHashProvider mBinaryContentsHashProvider = null;
+    private final BandwidthLimiter mBandwidthLimiter = new BandwidthLimiter();
+    // Held while an update is installed and marked as pending, so that installs started by the JS
+    // layer and by CodePushSyncEngine do not interleave.
+    private final Object mInstallLock = new Object();
+    private final Map<String, InFlightDownload> mInFlightDownloads = new HashMap<>();
+    private final DownloadMirrorSelector mMirrorSelector = new DownloadMirrorSelector();
+    private final List<CodePushArchiveCodec> mArchiveCodecs = new ArrayList<>();
+    private int mCustomArchiveCodecCount = 0;
 
     public CodePushUpdateManager(String documentsDirectory) {
         mDocumentsDirectory = documentsDirectory;
+        mArchiveCodecs.add(new ZipArchiveCodec());
+        mArchiveCodecs.add(new ZstdTarArchiveCodec());
+    }
+
+    // Codecs added by the app take precedence over the built-in ones.
+    void addArchiveCodec(CodePushArchiveCodec archiveCodec) {
+        mArchiveCodecs.add(mCustomArchiveCodecCount++, archiveCodec);
+    }
+
+    // Comma-separated names of the archive formats this client can extract, in order of preference.
+    public String getSupportedArchiveFormats() {
+        StringBuilder formats = new StringBuilder();
+        for (CodePushArchiveCodec archiveCodec : mArchiveCodecs) {
+            if (formats.length() > 0) {
+                formats.append(",");
+            }
+
+            formats.append(archiveCodec.getName());
+        }
+
+        return formats.toString();
+    }
+
+    private CodePushArchiveCodec findArchiveCodec(byte[] header) {
+        for (CodePushArchiveCodec archiveCodec : mArchiveCodecs) {
+            if (archiveCodec.canExtract(header)) {
+                return archiveCodec;
+            }
+        }
+
+        return null;
+    }
+
+    void setHttpTransport(CodePushHttpTransport httpTransport) {
+        mHttpTransport = httpTransport;
+    }
+
+    void setDownloadSegmentCount(int downloadSegmentCount) {
+        mDownloadSegmentCount = downloadSegmentCount;
+    }
+
+    void setRetryPolicy(CodePushRetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    void addDownloadMirror(String mirrorUrl) {
+        mDownloadMirrors.add(mirrorUrl);
+    }
+
+    void setDeleteStalePackagesOnLowStorage(boolean deleteStalePackagesOnLowStorage) {
+        mDeleteStalePackagesOnLowStorage = deleteStalePackagesOnLowStorage;
+    }
+
+    void setStreamingExtractionEnabled(boolean streamingExtractionEnabled) {
+        mStreamingExtractionEnabled = streamingExtractionEnabled;
     }
 
-    private String getDownloadFilePath() {
-        return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.DOWNLOAD_FILE_NAME);
+    void setForegroundDownloadBandwidthLimit(long bytesPerSecond) {
+        mBandwidthLimiter.setBytesPerSecond(bytesPerSecond);
     }
 
-    private String getUnzippedFolderPath() {
-        return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.UNZIPPED_FOLDER_NAME);
+    void setContentServerUrl(String contentServerUrl) {
+        mContentServerUrl = contentServerUrl;
+    }
+
+    void setMaxConcurrentBlobFetches(int maxConcurrentBlobFetches) {
+        mMaxConcurrentBlobFetches = maxConcurrentBlobFetches;
+    }
+
+    // The APK and the hash of its bundled resources, which diff updates made against the binary
+    // are merged with.
+    void setBinaryContents(String binaryPath, BinaryContentsHashProvider binaryContentsHashProvider) {
+        mBinaryPath = binaryPath;
+        mBinaryContentsHashProvider = binaryContentsHashProvider;
+    }
+
+    Object getInstallLock() {
+        return mInstallLock;
+    }
+
+    public void setIsAppInForeground(boolean isAppInForeground) {
+        mBandwidthLimiter.setIsAppInForeground(isAppInForeground);
+    }
+
+    // Every package downloads into its own staging folder, so that downloads of different
+    // packages can run at the same time. Downloads of the same package are coalesced.
+    private String getStagingFolderPath(String packageHash) {
+        String stagingRootPath = CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.DOWNLOAD_STAGING_FOLDER_NAME);
+        return CodePushUtils.appendPathComponent(stagingRootPath, packageHash);
+    }
+
+    private String getDownloadFilePath(String packageHash) {
+        return CodePushUtils.appendPathComponent(getStagingFolderPath(packageHash), CodePushConstants.DOWNLOAD_FILE_NAME);
+    }
+
+    private String getDownloadResumeInfoPath(String packageHash) {
+        return CodePushUtils.appendPathComponent(getStagingFolderPath(packageHash), CodePushConstants.DOWNLOAD_RESUME_INFO_FILE_NAME);
+    }
+
+    private void deleteDownloadResumeInfo(String packageHash) {
+        String resumeInfoPath = getDownloadResumeInfoPath(packageHash);
+        if (FileUtils.fileAtPathExists(resumeInfoPath)) {
+            FileUtils.deleteFileAtPathSilently(resumeInfoPath);
+        }
     }
 
     private String getDocumentsDirectory() {
@@ -148,108 +285,363 @@ public class CodePushUpdateManager {
     public void downloadPackage(JSONObject updatePackage, String expectedBundleFileName,
                                 DownloadProgressCallback progressCallback,
                                 String stringPublicKey) throws IOException {
+        savePackage(updatePackage, expectedBundleFileName, progressCallback, stringPublicKey, null);
+    }
+
+    // Saves a package that is already on the device through the same extraction, diff merge and
+    // verification as a downloaded one, reading it in place instead of copying it first.
+    public void importPackage(JSONObject updatePackage, String expectedBundleFileName,
+                              LocalPackageSource packageSource,
+                              String stringPublicKey) throws IOException {
+        savePackage(updatePackage, expectedBundleFileName, null, stringPublicKey, packageSource);
+    }
+
+    // Downloads the package, or imports it if a local source is given.
+    private void savePackage(JSONObject updatePackage, String expectedBundleFileName,
+                             DownloadProgressCallback progressCallback,
+                             String stringPublicKey, LocalPackageSource packageSource) throws IOException {
+        // A second request for a package that is already downloading waits for that download
+        // instead of starting another transfer into the same files.
+        String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        InFlightDownload download;
+        boolean isAlreadyDownloading;
+        synchronized (mInFlightDownloads) {
+            download = mInFlightDownloads.get(newUpdateHash);
+            isAlreadyDownloading = download != null;
+            if (!isAlreadyDownloading) {
+                download = new InFlightDownload();
+                mInFlightDownloads.put(newUpdateHash, download);
+            }
+        }
+
+        if (progressCallback != null) {
+            download.addProgressCallback(progressCallback);
+        }
+
+        if (isAlreadyDownloading) {
+            CodePushUtils.log("Package " + newUpdateHash + " is already being downloaded, waiting for it.");
+            download.await();
+            // The package was saved with the metadata of the first request. Waiting requests
+            // write their own in turn, the same package can be released with a new label.
+            synchronized (download) {
+                writePackageMetadata(updatePackage);
+            }
+
+            return;
+        }
+
+        Throwable error = null;
+        try {
+            if (packageSource != null) {
+                importAndExtractPackage(updatePackage, expectedBundleFileName, packageSource, download, stringPublicKey);
+            } else {
+                downloadAndExtractPackage(updatePackage, expectedBundleFileName, download, stringPublicKey);
+            }
+        } catch (Throwable e) {
+            error = e;
+            if (e instanceof CodePushDownloadCancelledException) {
+                // Nothing of a cancelled download is kept, not even a partial file to resume.
+                CodePushUtils.log("Download of " + newUpdateHash + " was cancelled.");
+                FileUtils.deleteDirectoryAtPath(getStagingFolderPath(newUpdateHash));
+                FileUtils.deleteDirectoryAtPath(getPackageFolderPath(newUpdateHash));
+            }
+
+            throw e;
+        } finally {
+            synchronized (mInFlightDownloads) {
+                mInFlightDownloads.remove(newUpdateHash);
+            }
+
+            download.finish(error);
+        }
+    }
+
+    // Cancels the running download of packageHash, including the requests that are waiting for it.
+    // Returns false if the package is not being downloaded.
+    public boolean cancelDownload(String packageHash) {
+        InFlightDownload download;
+        synchronized (mInFlightDownloads) {
+            download = mInFlightDownloads.get(packageHash);
+        }
+
+        if (download == null) {
+            return false;
+        }
+
+        download.cancel();
+        return true;
+    }
+
+    // Returns true if the package folder already holds a complete and verified copy of the
+    // package, otherwise clears whatever a previous attempt left in it.
+    private boolean prepareNewPackageFolder(JSONObject updatePackage, String stringPublicKey) throws IOException {
         String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
         String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
-        String newUpdateMetadataPath = CodePushUtils.appendPathComponent(newUpdateFolderPath, CodePushConstants.PACKAGE_FILE_NAME);
+        if (isVerifiedPackage(newUpdateFolderPath, newUpdateHash, stringPublicKey != null)) {
+            // The folder already holds a complete and verified copy of this package, only its
+            // metadata is refreshed, since the same package can be released with a new label.
+            CodePushUtils.log("Package " + newUpdateHash + " has already been downloaded and verified.");
+            writePackageMetadata(updatePackage);
+            return true;
+        }
+
         if (FileUtils.fileAtPathExists(newUpdateFolderPath)) {
             // This removes any stale data in newPackageFolderPath that could have been left
             // uncleared due to a crash or error during the download or install process.
             FileUtils.deleteDirectoryAtPath(newUpdateFolderPath);
         }
 
-        String downloadUrlString = updatePackage.optString(CodePushConstants.DOWNLOAD_URL_KEY, null);
-        HttpURLConnection connection = null;
-        BufferedInputStream bin = null;
-        FileOutputStream fos = null;
-        BufferedOutputStream bout = null;
-        File downloadFile = null;
-        boolean isZip = false;
+        return false;
+    }
+
+    // Replaces the metadata of a saved package with updatePackage, keeping the path of the JS
+    // bundle that was found when the package was extracted.
+    private void writePackageMetadata(JSONObject updatePackage) throws IOException {
+        String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        String newUpdateMetadataPath = CodePushUtils.appendPathComponent(getPackageFolderPath(newUpdateHash), CodePushConstants.PACKAGE_FILE_NAME);
+        JSONObject existingMetadata = CodePushUtils.getJsonObjectFromFile(newUpdateMetadataPath);
+        String relativeBundlePath = existingMetadata.optString(CodePushConstants.RELATIVE_BUNDLE_PATH_KEY, null);
+        if (relativeBundlePath != null) {
+            CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.RELATIVE_BUNDLE_PATH_KEY, relativeBundlePath);
+        }
+
+        CodePushUtils.writeJsonToFile(updatePackage, newUpdateMetadataPath);
+    }
 
-        // Download the file while checking if it is a zip and notifying client of progress.
+    private void downloadAndExtractPackage(JSONObject updatePackage, String expectedBundleFileName,
+                                           InFlightDownload download,
+                                           String stringPublicKey) throws IOException {
+        if (prepareNewPackageFolder(updatePackage, stringPublicKey)) {
+            return;
+        }
+
+        if (mContentServerUrl != null && fetchPackageFromManifest(updatePackage, expectedBundleFileName, download, stringPublicKey)) {
+            return;
+        }
+
+        String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
+        String downloadUrlString = updatePackage.optString(CodePushConstants.DOWNLOAD_URL_KEY, null);
+        URL downloadUrl;
         try {
-            URL downloadUrl = Urls.create(downloadUrlString, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
-            connection = (HttpURLConnection) (downloadUrl.openConnection());
+            downloadUrl = Urls.create(downloadUrlString, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
+        } catch (MalformedURLException e) {
+            throw new CodePushMalformedDataException(downloadUrlString, e);
+        }
 
-            if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP &&
-                downloadUrl.toString().startsWith("https")) {
-                try {
-                    ((HttpsURLConnection)connection).setSSLSocketFactory(new TLSSocketFactory());
-                } catch (Exception e) {
-                    throw new CodePushUnknownException("Error set SSLSocketFactory. ", e);
-                }
-            }
+        File stagingFolder = new File(getStagingFolderPath(newUpdateHash));
+        stagingFolder.mkdirs();
+        File downloadFile = new File(stagingFolder, CodePushConstants.DOWNLOAD_FILE_NAME);
 
-            connection.setRequestProperty("Accept-Encoding", "identity");
-            bin = new BufferedInputStream(connection.getInputStream());
+        // A partial download left by a non-streaming attempt is worth resuming instead, and a
+        // segmented download needs the file to write its segments into.
+        boolean isStreaming = mStreamingExtractionEnabled && mDownloadSegmentCount == 1 && !downloadFile.exists();
+        long packageSize = updatePackage.optLong(CodePushConstants.PACKAGE_SIZE_KEY, 0);
+        if (packageSize > 0) {
+            // Fail before any bytes are transferred if the size reported by the update check
+            // cannot fit, the response's Content-Length is checked again once it arrives.
+            // A segmented download preallocates the whole file, so only the bytes recorded for a
+            // resumable download count as already downloaded.
+            DownloadResumeInfo resumeInfo = DownloadResumeInfo.load(getDownloadResumeInfoPath(newUpdateHash));
+            long partialDownloadBytes = resumeInfo != null && downloadFile.exists() ?
+                    Math.min(Math.min(resumeInfo.getReceivedBytes(), downloadFile.length()), packageSize) : 0;
+            ensureStorageAvailable(isStreaming ? packageSize : getRequiredStorageForDownload(packageSize, partialDownloadBytes), newUpdateHash);
+        }
 
-            long totalBytes = connection.getContentLength();
-            long receivedBytes = 0;
+        List<URL> mirrorUrls = mMirrorSelector.rank(getDownloadMirrorUrls(updatePackage, downloadUrl), packageSize, mHttpTransport);
 
-            File downloadFolder = new File(getCodePushPath());
-            downloadFolder.mkdirs();
-            downloadFile = new File(downloadFolder, CodePushConstants.DOWNLOAD_FILE_NAME);
-            fos = new FileOutputStream(downloadFile);
-            bout = new BufferedOutputStream(fos, CodePushConstants.DOWNLOAD_BUFFER_SIZE);
-            byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
-            byte[] header = new byte[4];
+        // Every attempt tries the mirrors in the order of their ranking, and each one picks up the
+        // partial download left behind by the one before. Only once all of them have failed is
+        // the download retried, after a jittered backoff. Errors that a retry cannot fix, such as
+        // 403 or 404, end the download right away.
+        byte[] header = null;
+        int attempt = 1;
+        int mirrorIndex = 0;
+        while (header == null) {
+            URL sourceUrl = mirrorUrls.get(mirrorIndex);
+            try {
+                if (isStreaming) {
+                    header = streamPackageFile(sourceUrl, newUpdateHash, expectedBundleFileName, download);
+                } else {
+                    header = downloadPackageFile(sourceUrl, newUpdateHash, downloadFile, download);
+                }
 
-            int numBytesRead = 0;
-            while ((numBytesRead = bin.read(data, 0, CodePushConstants.DOWNLOAD_BUFFER_SIZE)) >= 0) {
-                if (receivedBytes < 4) {
-                    for (int i = 0; i < numBytesRead; i++) {
-                        int headerOffset = (int) (receivedBytes) + i;
-                        if (headerOffset >= 4) {
-                            break;
-                        }
+                mMirrorSelector.recordSuccess(sourceUrl);
+            } catch (CodePushInsufficientStorageException | CodePushDownloadCancelledException e) {
+                throw e;
+            } catch (IOException e) {
+                mMirrorSelector.recordFailure(sourceUrl);
+                if (!mRetryPolicy.isRetryable(e)) {
+                    throw e;
+                }
 
-                        header[headerOffset] = data[i];
+                if (mirrorIndex + 1 < mirrorUrls.size()) {
+                    mirrorIndex++;
+                    CodePushUtils.log("Download from " + sourceUrl.getHost() + " failed (" + e.getMessage() + "), continuing from mirror " +
+                            mirrorUrls.get(mirrorIndex).getHost() + ".");
+                    continue;
+                }
+
+                if (attempt >= mRetryPolicy.getMaxAttempts()) {
+                    if (attempt > 1) {
+                        CodePushUtils.log("Download of " + newUpdateHash + " failed after " + attempt + " attempts.");
                     }
+
+                    throw e;
                 }
 
-                receivedBytes += numBytesRead;
-                bout.write(data, 0, numBytesRead);
-                progressCallback.call(new DownloadProgress(totalBytes, receivedBytes));
-            }
+                long retryDelayMillis = mRetryPolicy.getRetryDelayMillis(attempt, e);
+                CodePushUtils.log("Download attempt " + attempt + " failed (" + e.getMessage() + "), retrying in " + retryDelayMillis + " ms.");
+                download.sleep(retryDelayMillis);
 
-            if (totalBytes != receivedBytes) {
-                throw new CodePushUnknownException("Received " + receivedBytes + " bytes, expected " + totalBytes);
+                attempt++;
+                mirrorIndex = 0;
             }
+        }
 
-            isZip = ByteBuffer.wrap(header).getInt() == 0x504b0304;
+        CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.DOWNLOAD_ATTEMPTS_KEY, attempt);
+        CodePushArchiveCodec archiveCodec = findArchiveCodec(header);
+        if (isStreaming) {
+            // The contents were placed in the package folder while they were received.
+        } else if (archiveCodec != null) {
+            ensureStorageAvailableForExtraction(downloadFile, newUpdateHash);
+
+            // Extract the downloaded archive straight into the package folder and then delete it
+            extractArchive(archiveCodec, downloadFile, newUpdateFolderPath, download, createPackageEntryWriter(newUpdateFolderPath));
+            FileUtils.deleteFileOrFolderSilently(downloadFile);
+        } else {
+            // File is a jsbundle, move it to a folder with the packageHash as its name
+            FileUtils.moveFile(downloadFile, newUpdateFolderPath, expectedBundleFileName);
+        }
+
+        finishPackage(updatePackage, expectedBundleFileName, archiveCodec != null, false, download, stringPublicKey);
+        FileUtils.deleteDirectoryAtPath(stagingFolder.getAbsolutePath());
+    }
+
+    // Assembles the package from the files of the current package and the blobs the content
+    // server has for the rest. Returns false if the package should be downloaded as a whole
+    // instead, e.g. because the content server does not have its manifest.
+    private boolean fetchPackageFromManifest(JSONObject updatePackage, String expectedBundleFileName,
+                                             InFlightDownload download, String stringPublicKey) throws IOException {
+        String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
+        String contentServerUrl = mContentServerUrl.endsWith("/") ? mContentServerUrl : mContentServerUrl + "/";
+        URL manifestUrl;
+        try {
+            manifestUrl = Urls.create(contentServerUrl + CONTENT_MANIFESTS_PATH + newUpdateHash,
+                    Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
         } catch (MalformedURLException e) {
-            throw new CodePushMalformedDataException(downloadUrlString, e);
+            throw new CodePushMalformedDataException(contentServerUrl, e);
+        }
+
+        try {
+            new ManifestPackageFetcher(mHttpTransport, manifestUrl, contentServerUrl + CONTENT_BLOBS_PATH,
+                    mMaxConcurrentBlobFetches, mBandwidthLimiter, mRetryPolicy)
+                    .fetch(getCurrentPackageFolderPath(), new File(newUpdateFolderPath), download);
+        } catch (CodePushDownloadCancelledException e) {
+            throw e;
+        } catch (IOException e) {
+            if (!updatePackage.has(CodePushConstants.DOWNLOAD_URL_KEY)) {
+                throw e;
+            }
+
+            CodePushUtils.log("Fetching package " + newUpdateHash + " by its manifest failed (" + e.getMessage() + "), downloading it as a whole.");
+            FileUtils.deleteDirectoryAtPath(newUpdateFolderPath);
+            return false;
+        }
+
+        // The manifest decides which files make up the package, so the result is always checked
+        // against the package hash.
+        finishPackage(updatePackage, expectedBundleFileName, true, true, download, stringPublicKey);
+        return true;
+    }
+
+    private void importAndExtractPackage(JSONObject updatePackage, String expectedBundleFileName,
+                                         LocalPackageSource packageSource, InFlightDownload download,
+                                         String stringPublicKey) throws IOException {
+        if (prepareNewPackageFolder(updatePackage, stringPublicKey)) {
+            return;
+        }
+
+        String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
+        File packageFile = packageSource.getFile();
+        CodePushUtils.log("Importing package " + newUpdateHash + " from " + packageSource + ".");
+
+        CodePushArchiveCodec archiveCodec;
+        InputStream packageStream = null;
+        BufferedInputStream bin = null;
+        try {
+            packageStream = packageSource.open();
+            bin = new BufferedInputStream(packageStream, IoBufferPolicy.getBufferSize(IoBufferPolicy.FILE));
+            byte[] header = new byte[CodePushConstants.ARCHIVE_HEADER_SIZE];
+            bin.mark(header.length);
+            readHeader(bin, header);
+            bin.reset();
+
+            archiveCodec = findArchiveCodec(header);
+            if (archiveCodec != null) {
+                if (packageFile != null) {
+                    ensureStorageAvailableForExtraction(packageFile, newUpdateHash);
+                }
+
+                // The archive is extracted as it is read, without copying it into the staging folder.
+                extractArchive(archiveCodec, bin, newUpdateFolderPath, download, createPackageEntryWriter(newUpdateFolderPath));
+            } else {
+                if (packageFile != null) {
+                    ensureStorageAvailable(packageFile.length(), newUpdateHash);
+                }
+
+                File newUpdateFolder = new File(newUpdateFolderPath);
+                newUpdateFolder.mkdirs();
+                FileUtils.writeStreamToFile(new CancellableInputStream(bin, download), new File(newUpdateFolder, expectedBundleFileName));
+            }
         } finally {
             try {
-                if (bout != null) bout.close();
-                if (fos != null) fos.close();
                 if (bin != null) bin.close();
-                if (connection != null) connection.disconnect();
+                if (packageStream != null) packageStream.close();
             } catch (IOException e) {
                 throw new CodePushUnknownException("Error closing IO resources.", e);
             }
         }
 
-        if (isZip) {
-            // Unzip the downloaded file and then delete the zip
-            String unzippedFolderPath = getUnzippedFolderPath();
-            FileUtils.unzipFile(downloadFile, unzippedFolderPath);
-            FileUtils.deleteFileOrFolderSilently(downloadFile);
+        finishPackage(updatePackage, expectedBundleFileName, archiveCodec != null, false, download, stringPublicKey);
+    }
+
+    // Completes a package whose contents have been placed in its folder: merges a diff update
+    // with the current package, verifies it and saves its metadata.
+    private void finishPackage(JSONObject updatePackage, String expectedBundleFileName, boolean isArchive,
+                               boolean isFolderHashRequired, InFlightDownload download, String stringPublicKey) throws IOException {
+        String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
+        String newUpdateMetadataPath = CodePushUtils.appendPathComponent(newUpdateFolderPath, CodePushConstants.PACKAGE_FILE_NAME);
+        boolean isFolderHashVerified = false;
+        boolean isSignatureVerified = false;
 
+        if (isArchive) {
             // Merge contents with current update based on the manifest
-            String diffManifestFilePath = CodePushUtils.appendPathComponent(unzippedFolderPath,
+            String diffManifestFilePath = CodePushUtils.appendPathComponent(newUpdateFolderPath,
                     CodePushConstants.DIFF_MANIFEST_FILE_NAME);
             boolean isDiffUpdate = FileUtils.fileAtPathExists(diffManifestFilePath);
             if (isDiffUpdate) {
                 String currentPackageFolderPath = getCurrentPackageFolderPath();
+                String binaryBaseFolderPath = CodePushUtils.appendPathComponent(getStagingFolderPath(newUpdateHash), CodePushConstants.BINARY_BASE_FOLDER_NAME);
+                boolean isDiffAgainstBinary = CodePushUpdateUtils.extractBinaryBaseFiles(diffManifestFilePath, mBinaryPath,
+                        mBinaryContentsHashProvider, binaryBaseFolderPath, newUpdateFolderPath);
+                if (isDiffAgainstBinary) {
+                    currentPackageFolderPath = binaryBaseFolderPath;
+                }
+
                 CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(diffManifestFilePath, currentPackageFolderPath, newUpdateFolderPath);
+                if (isDiffAgainstBinary) {
+                    FileUtils.deleteDirectoryAtPath(binaryBaseFolderPath);
+                }
+
                 File diffManifestFile = new File(diffManifestFilePath);
                 diffManifestFile.delete();
             }
 
-            FileUtils.copyDirectoryContents(unzippedFolderPath, newUpdateFolderPath);
-            FileUtils.deleteFileAtPathSilently(unzippedFolderPath);
-
-            // For zip updates, we need to find the relative path to the jsBundle and save it in the
+            // For archive updates, we need to find the relative path to the jsBundle and save it in the
             // metadata so that we can find and run it easily the next time.
             String relativeBundlePath = CodePushUpdateUtils.findJSBundleInUpdateContents(newUpdateFolderPath, expectedBundleFileName);
 
@@ -261,12 +653,15 @@ public class CodePushUpdateManager {
                     metadataFileFromOldUpdate.delete();
                 }
 
+                FileUtils.deleteFileAtPathSilently(getVerifiedMarkerPath(newUpdateFolderPath));
+
                 if (isDiffUpdate) {
                     CodePushUtils.log("Applying diff update.");
                 } else {
                     CodePushUtils.log("Applying full update.");
                 }
 
+                download.throwIfCancelled();
                 boolean isSignatureVerificationEnabled = (stringPublicKey != null);
 
                 String signaturePath = CodePushUpdateUtils.getSignatureFilePath(newUpdateFolderPath);
@@ -276,6 +671,8 @@ public class CodePushUpdateManager {
                     if (isSignatureAppearedInBundle) {
                         CodePushUpdateUtils.verifyFolderHash(newUpdateFolderPath, newUpdateHash);
                         CodePushUpdateUtils.verifyUpdateSignature(newUpdateFolderPath, newUpdateHash, stringPublicKey);
+                        isFolderHashVerified = true;
+                        isSignatureVerified = true;
                     } else {
                         throw new CodePushInvalidUpdateException(
                                 "Error! Public key was provided but there is no JWT signature within app bundle to verify. " +
@@ -291,22 +688,752 @@ public class CodePushUpdateManager {
                                 "Please ensure that public key is properly configured within your application."
                         );
                         CodePushUpdateUtils.verifyFolderHash(newUpdateFolderPath, newUpdateHash);
+                        isFolderHashVerified = true;
                     } else {
-                        if (isDiffUpdate) {
+                        if (isDiffUpdate || isFolderHashRequired) {
                             CodePushUpdateUtils.verifyFolderHash(newUpdateFolderPath, newUpdateHash);
+                            isFolderHashVerified = true;
                         }
                     }
                 }
 
                 CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.RELATIVE_BUNDLE_PATH_KEY, relativeBundlePath);
             }
-        } else {
-            // File is a jsbundle, move it to a folder with the packageHash as its name
-            FileUtils.moveFile(downloadFile, newUpdateFolderPath, expectedBundleFileName);
         }
 
         // Save metadata to the folder.
+        download.throwIfCancelled();
         CodePushUtils.writeJsonToFile(updatePackage, newUpdateMetadataPath);
+
+        if (isFolderHashVerified) {
+            // Written last, so that it only exists for complete packages.
+            JSONObject verifiedMarker = new JSONObject();
+            CodePushUtils.setJSONValueForKey(verifiedMarker, CodePushConstants.PACKAGE_HASH_KEY, newUpdateHash);
+            CodePushUtils.setJSONValueForKey(verifiedMarker, CodePushConstants.IS_SIGNATURE_VERIFIED_KEY, isSignatureVerified);
+            CodePushUtils.writeJsonToFile(verifiedMarker, getVerifiedMarkerPath(newUpdateFolderPath));
+        }
+    }
+
+    private static String getVerifiedMarkerPath(String packageFolderPath) {
+        return CodePushUtils.appendPathComponent(packageFolderPath, CodePushConstants.VERIFIED_MARKER_FILE_NAME);
+    }
+
+    // A package folder holds a complete copy of packageHash if its marker was written after the
+    // folder hash was verified, and the signature as well if one is required now.
+    private boolean isVerifiedPackage(String packageFolderPath, String packageHash, boolean isSignatureRequired) {
+        String verifiedMarkerPath = getVerifiedMarkerPath(packageFolderPath);
+        String metadataPath = CodePushUtils.appendPathComponent(packageFolderPath, CodePushConstants.PACKAGE_FILE_NAME);
+        if (packageHash == null || !FileUtils.fileAtPathExists(verifiedMarkerPath) || !FileUtils.fileAtPathExists(metadataPath)) {
+            return false;
+        }
+
+        try {
+            JSONObject verifiedMarker = CodePushUtils.getJsonObjectFromFile(verifiedMarkerPath);
+            return packageHash.equals(verifiedMarker.optString(CodePushConstants.PACKAGE_HASH_KEY, null)) &&
+                    (!isSignatureRequired || verifiedMarker.optBoolean(CodePushConstants.IS_SIGNATURE_VERIFIED_KEY, false));
+        } catch (IOException | CodePushMalformedDataException e) {
+            return false;
+        }
+    }
+
+    // Extracts the package into its folder while it is received, without writing the archive to
+    // the staging folder and reading it back, and returns the first bytes of its decoded content.
+    // A failed attempt cannot be resumed, so it leaves nothing behind and the next one starts over.
+    private byte[] streamPackageFile(URL sourceUrl, String newUpdateHash, String expectedBundleFileName,
+                                     InFlightDownload download) throws IOException {
+        String sourceUrlString = sourceUrl.toString();
+        String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
+        CodePushHttpResponse response = null;
+        CountingInputStream wireStream = null;
+        long bodyStartTime = 0;
+        BufferedInputStream bin = null;
+        boolean isExtracted = false;
+        try {
+            long startTime = System.nanoTime();
+            response = openDownloadResponse(sourceUrl, 0, null);
+            mMirrorSelector.recordLatency(sourceUrl, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            checkResponseStatus(response, sourceUrlString);
+
+            // Only the extracted contents are stored, which are at least as large as the archive.
+            long totalBytes = getTotalBytes(response, 0);
+            if (totalBytes >= 0) {
+                ensureStorageAvailable(totalBytes, newUpdateHash);
+            }
+
+            bodyStartTime = System.nanoTime();
+            wireStream = new DownloadProgressInputStream(new ThrottledInputStream(new CancellableInputStream(response.getBody(), download), mBandwidthLimiter),
+                    totalBytes, download);
+            int bufferSize = IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD);
+            bin = new BufferedInputStream(decodeContent(wireStream, response.getHeader("Content-Encoding"), bufferSize), bufferSize);
+            byte[] header = new byte[CodePushConstants.ARCHIVE_HEADER_SIZE];
+            bin.mark(header.length);
+            readHeader(bin, header);
+            bin.reset();
+
+            CodePushArchiveCodec archiveCodec = findArchiveCodec(header);
+            if (archiveCodec != null) {
+                extractArchive(archiveCodec, bin, newUpdateFolderPath, download, createPackageEntryWriter(newUpdateFolderPath));
+            } else {
+                File newUpdateFolder = new File(newUpdateFolderPath);
+                newUpdateFolder.mkdirs();
+                FileUtils.writeStreamToFile(bin, new File(newUpdateFolder, expectedBundleFileName));
+            }
+
+            // The extractor stops at the end of the entries, so read the rest of the body, e.g.
+            // the zip central directory, for the length check to cover all of it.
+            byte[] data = new byte[bufferSize];
+            while (bin.read(data, 0, data.length) >= 0) ;
+            long receivedBytes = wireStream.getCount();
+            if (totalBytes >= 0 && receivedBytes < totalBytes) {
+                throw new EOFException("Received " + receivedBytes + " bytes, expected " + totalBytes);
+            } else if (totalBytes >= 0 && totalBytes != receivedBytes) {
+                throw new CodePushUnknownException("Received " + receivedBytes + " bytes, expected " + totalBytes);
+            } else if (totalBytes < 0) {
+                download.call(new DownloadProgress(receivedBytes, receivedBytes));
+            }
+
+            isExtracted = true;
+            return header;
+        } finally {
+            if (wireStream != null) {
+                long durationNanos = System.nanoTime() - bodyStartTime;
+                mMirrorSelector.recordThroughput(sourceUrl, wireStream.getCount(), TimeUnit.NANOSECONDS.toMillis(durationNanos));
+                IoBufferPolicy.recordThroughput(IoBufferPolicy.DOWNLOAD, wireStream.getCount(), durationNanos);
+            }
+
+            try {
+                if (bin != null) bin.close();
+                if (response != null) response.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            } finally {
+                if (!isExtracted) {
+                    FileUtils.deleteDirectoryAtPath(newUpdateFolderPath);
+                }
+            }
+        }
+    }
+
+    // Downloads the package into downloadFile, resuming a previously interrupted download of the
+    // same package when possible, and returns the first bytes of its decoded content.
+    private byte[] downloadPackageFile(URL sourceUrl, String newUpdateHash, File downloadFile,
+                                       InFlightDownload download) throws IOException {
+        String sourceUrlString = sourceUrl.toString();
+        CodePushHttpResponse response = null;
+        CountingInputStream wireStream = null;
+        long bodyStartTime = 0;
+        BufferedInputStream bin = null;
+        FileOutputStream fos = null;
+        BufferedOutputStream bout = null;
+        DownloadResumeInfo resumeInfo = null;
+        boolean isDownloadCompleted = false;
+
+        // Download the file while reading its header and notifying client of progress.
+        try {
+            // Continue a previously interrupted download of the same package if the server
+            // still serves the same representation of it.
+            long resumeOffset = 0;
+            DownloadResumeInfo previousResumeInfo = DownloadResumeInfo.load(getDownloadResumeInfoPath(newUpdateHash));
+            if (previousResumeInfo != null && previousResumeInfo.canResume(sourceUrlString, newUpdateHash) && downloadFile.exists()) {
+                resumeOffset = downloadFile.length();
+            }
+
+            byte[] header = new byte[CodePushConstants.ARCHIVE_HEADER_SIZE];
+            boolean isSegmented = false;
+            if (resumeOffset == 0 && mDownloadSegmentCount > 1) {
+                // A segmented download preallocates the whole file, so it must never be
+                // mistaken for a resumable prefix of a single-stream download.
+                deleteDownloadResumeInfo(newUpdateHash);
+                long startTime = System.nanoTime();
+                isSegmented = new SegmentedDownloader(mHttpTransport, sourceUrl, mDownloadSegmentCount, mBandwidthLimiter).download(downloadFile, download);
+                if (isSegmented) {
+                    long durationNanos = System.nanoTime() - startTime;
+                    mMirrorSelector.recordThroughput(sourceUrl, downloadFile.length(), TimeUnit.NANOSECONDS.toMillis(durationNanos));
+                    IoBufferPolicy.recordThroughput(IoBufferPolicy.DOWNLOAD, downloadFile.length(), durationNanos);
+                }
+            }
+
+            if (isSegmented) {
+                readDownloadHeader(downloadFile, header);
+            } else {
+                long startTime = System.nanoTime();
+                response = openDownloadResponse(sourceUrl, resumeOffset, previousResumeInfo);
+                boolean isResumed = resumeOffset > 0 && response.getStatusCode() == HttpURLConnection.HTTP_PARTIAL;
+                boolean isSameSource = previousResumeInfo != null && previousResumeInfo.isSameSource(sourceUrlString);
+                if (resumeOffset > 0 && (response.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE || (isResumed && isContentEncoded(response)) ||
+                        (isResumed && !isSameSource && getTotalBytes(response, resumeOffset) != previousResumeInfo.getTotalBytes()))) {
+                    // The partial file is not usable against this server's copy of the package, start over.
+                    // This includes an encoded range, whose offsets do not match the decoded file.
+                    response.close();
+                    resumeOffset = 0;
+                    isResumed = false;
+                    response = openDownloadResponse(sourceUrl, resumeOffset, null);
+                }
+
+                mMirrorSelector.recordLatency(sourceUrl, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                checkResponseStatus(response, sourceUrlString);
+                if (!isResumed) {
+                    resumeOffset = 0;
+                }
+
+                long totalBytes = getTotalBytes(response, resumeOffset);
+                if (totalBytes >= 0) {
+                    ensureStorageAvailable(getRequiredStorageForDownload(totalBytes, resumeOffset), newUpdateHash);
+                }
+
+                // Progress and the length check work on the bytes received over the wire, while
+                // the archive header check and the file on disk work on the decoded content.
+                bodyStartTime = System.nanoTime();
+                wireStream = new CountingInputStream(new ThrottledInputStream(new CancellableInputStream(response.getBody(), download), mBandwidthLimiter));
+                int bufferSize = IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD);
+                bin = new BufferedInputStream(decodeContent(wireStream, response.getHeader("Content-Encoding"), bufferSize));
+
+                long receivedBytes = resumeOffset;
+                long writtenBytes = resumeOffset;
+                if (isResumed) {
+                    CodePushUtils.log("Resuming download of " + newUpdateHash + " from byte " + resumeOffset + ".");
+                    readDownloadHeader(downloadFile, header);
+                }
+
+                // The resume info counts bytes of the identity encoding, where the wire and the file
+                // on disk agree. An encoded download is not resumable: its length and validators
+                // belong to the encoded body, and its progress counts encoded bytes.
+                if (isContentEncoded(response)) {
+                    deleteDownloadResumeInfo(newUpdateHash);
+                } else if (isResumed && isSameSource) {
+                    resumeInfo = previousResumeInfo;
+                } else {
+                    resumeInfo = new DownloadResumeInfo(sourceUrlString, newUpdateHash,
+                            response.getHeader("ETag"), response.getHeader("Last-Modified"), totalBytes);
+                }
+
+                if (resumeInfo != null) {
+                    resumeInfo.setReceivedBytes(receivedBytes);
+                    resumeInfo.save(getDownloadResumeInfoPath(newUpdateHash));
+                }
+
+                if (isResumed) {
+                    download.call(new DownloadProgress(totalBytes, receivedBytes));
+                }
+
+                fos = new FileOutputStream(downloadFile, isResumed);
+                bout = new BufferedOutputStream(fos, bufferSize);
+                byte[] data = new byte[bufferSize];
+
+                int numBytesRead = 0;
+                while ((numBytesRead = bin.read(data, 0, bufferSize)) >= 0) {
+                    if (writtenBytes < header.length) {
+                        for (int i = 0; i < numBytesRead; i++) {
+                            int headerOffset = (int) (writtenBytes) + i;
+                            if (headerOffset >= header.length) {
+                                break;
+                            }
+
+                            header[headerOffset] = data[i];
+                        }
+                    }
+
+                    writtenBytes += numBytesRead;
+                    bout.write(data, 0, numBytesRead);
+                    receivedBytes = resumeOffset + wireStream.getCount();
+                    download.call(new DownloadProgress(totalBytes, receivedBytes));
+                }
+
+                // Consume anything the decoder left after the end of the compressed data so that
+                // the length check covers the whole body.
+                while (wireStream.read(data, 0, bufferSize) >= 0) ;
+                receivedBytes = resumeOffset + wireStream.getCount();
+
+                if (totalBytes >= 0 && receivedBytes < totalBytes) {
+                    // The connection dropped mid-body, a retry can resume from here.
+                    throw new EOFException("Received " + receivedBytes + " bytes, expected " + totalBytes);
+                } else if (totalBytes >= 0 && totalBytes != receivedBytes) {
+                    throw new CodePushUnknownException("Received " + receivedBytes + " bytes, expected " + totalBytes);
+                } else if (totalBytes < 0) {
+                    // Without a Content-Length (e.g. a chunked response) progress was reported as
+                    // indeterminate until now, when the size becomes known.
+                    download.call(new DownloadProgress(receivedBytes, receivedBytes));
+                }
+            }
+
+            isDownloadCompleted = true;
+            return header;
+        } finally {
+            if (wireStream != null) {
+                long durationNanos = System.nanoTime() - bodyStartTime;
+                mMirrorSelector.recordThroughput(sourceUrl, wireStream.getCount(), TimeUnit.NANOSECONDS.toMillis(durationNanos));
+                IoBufferPolicy.recordThroughput(IoBufferPolicy.DOWNLOAD, wireStream.getCount(), durationNanos);
+            }
+
+            try {
+                if (bout != null) bout.close();
+                if (fos != null) fos.close();
+                if (bin != null) bin.close();
+                if (response != null) response.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+
+            if (isDownloadCompleted) {
+                deleteDownloadResumeInfo(newUpdateHash);
+            } else if (resumeInfo != null && downloadFile.exists()) {
+                // Remember how far we got so that the next attempt can pick up from here.
+                resumeInfo.setReceivedBytes(downloadFile.length());
+                try {
+                    resumeInfo.save(getDownloadResumeInfoPath(newUpdateHash));
+                } catch (IOException e) {
+                    CodePushUtils.log("Unable to save download resume info.");
+                }
+            }
+        }
+    }
+
+    // The package's own download URL comes first, followed by the mirrors listed in its metadata
+    // and then the configured mirror hosts, which serve the package under the same path.
+    private List<URL> getDownloadMirrorUrls(JSONObject updatePackage, URL downloadUrl) {
+        List<String> mirrorUrlStrings = new ArrayList<>();
+        mirrorUrlStrings.add(downloadUrl.toString());
+
+        JSONArray packageMirrors = updatePackage.optJSONArray(CodePushConstants.DOWNLOAD_MIRRORS_KEY);
+        if (packageMirrors != null) {
+            for (int i = 0; i < packageMirrors.length(); i++) {
+                String mirrorUrlString = packageMirrors.optString(i, null);
+                if (mirrorUrlString != null && !mirrorUrlStrings.contains(mirrorUrlString)) {
+                    mirrorUrlStrings.add(mirrorUrlString);
+                }
+            }
+        }
+
+        for (String mirror : mDownloadMirrors) {
+            String mirrorBase = mirror.endsWith("/") ? mirror.substring(0, mirror.length() - 1) : mirror;
+            String mirrorUrlString = mirrorBase + downloadUrl.getFile();
+            if (!mirrorUrlStrings.contains(mirrorUrlString)) {
+                mirrorUrlStrings.add(mirrorUrlString);
+            }
+        }
+
+        List<URL> mirrorUrls = new ArrayList<>();
+        for (String mirrorUrlString : mirrorUrlStrings) {
+            try {
+                mirrorUrls.add(Urls.create(mirrorUrlString, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS));
+            } catch (MalformedURLException e) {
+                CodePushUtils.log("Ignoring invalid download mirror " + mirrorUrlString);
+            }
+        }
+
+        return mirrorUrls;
+    }
+
+    static CodePushHttpRequest createDownloadRequest(URL downloadUrl) {
+        return new CodePushHttpRequest(downloadUrl).setHeader("Accept-Encoding", "identity");
+    }
+
+    static void checkResponseStatus(CodePushHttpResponse response, String url) throws IOException {
+        if (response.getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            throw new CodePushHttpStatusException(response.getStatusCode(), url, response.getHeader("Retry-After"));
+        }
+    }
+
+    private CodePushHttpResponse openDownloadResponse(URL downloadUrl, long resumeOffset, DownloadResumeInfo resumeInfo) throws IOException {
+        CodePushHttpRequest request = createDownloadRequest(downloadUrl);
+        if (resumeOffset == 0) {
+            // Plain JS bundle updates are text and shrink a lot with compression. Ranges are
+            // only requested on the identity encoding, whose offsets match the bytes on disk.
+            request.setHeader("Accept-Encoding", "gzip, deflate");
+        } else if (resumeInfo != null) {
+            request.setHeader("Range", "bytes=" + resumeOffset + "-");
+            if (resumeInfo.isSameSource(downloadUrl.toString())) {
+                // If the package changed on the server since the partial download, If-Range makes
+                // it answer with the full body instead of a mismatched range.
+                request.setHeader("If-Range", resumeInfo.getValidator());
+            }
+        }
+
+        return mHttpTransport.execute(request);
+    }
+
+    private long getTotalBytes(CodePushHttpResponse response, long resumeOffset) {
+        long contentLength = response.getContentLength();
+        if (resumeOffset == 0) {
+            return contentLength;
+        }
+
+        long completeLength = CodePushUtils.getCompleteLengthFromContentRange(response.getHeader("Content-Range"));
+        if (completeLength >= 0) {
+            return completeLength;
+        }
+
+        return contentLength < 0 ? contentLength : resumeOffset + contentLength;
+    }
+
+    private static boolean isContentEncoded(CodePushHttpResponse response) {
+        String contentEncoding = response.getHeader("Content-Encoding");
+        return contentEncoding != null && !contentEncoding.trim().isEmpty() && !contentEncoding.trim().equalsIgnoreCase("identity");
+    }
+
+    private static InputStream decodeContent(InputStream wireStream, String contentEncoding, int bufferSize) throws IOException {
+        if (contentEncoding == null || contentEncoding.trim().isEmpty() || contentEncoding.trim().equalsIgnoreCase("identity")) {
+            return wireStream;
+        }
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(wireStream, bufferSize);
+        } else if (encoding.equals("deflate")) {
+            // "deflate" is meant to be zlib-wrapped, but some servers send a raw deflate stream.
+            PushbackInputStream pushbackStream = new PushbackInputStream(wireStream, 2);
+            byte[] zlibHeader = new byte[2];
+            int headerLength = 0;
+            int numBytesRead;
+            while (headerLength < zlibHeader.length &&
+                    (numBytesRead = pushbackStream.read(zlibHeader, headerLength, zlibHeader.length - headerLength)) >= 0) {
+                headerLength += numBytesRead;
+            }
+
+            pushbackStream.unread(zlibHeader, 0, headerLength);
+            boolean isZlibWrapped = headerLength == 2 && (zlibHeader[0] & 0x0f) == 8 &&
+                    (((zlibHeader[0] & 0xff) << 8) | (zlibHeader[1] & 0xff)) % 31 == 0;
+            return new InflaterInputStream(pushbackStream, new Inflater(!isZlibWrapped), bufferSize);
+        }
+
+        throw new CodePushUnknownException("Unsupported Content-Encoding: " + contentEncoding);
+    }
+
+    // An estimate made before the archive is on disk: the archive and its extracted contents are
+    // on disk at the same time, and the contents are assumed to be as large as the archive.
+    // Compressed archives, and responses with a Content-Encoding, whose totalBytes are the bytes
+    // sent over the wire, extract to more than that. Their real size is checked by
+    // ensureStorageAvailableForExtraction once the archive is downloaded, before it is extracted.
+    private static long getRequiredStorageForDownload(long totalBytes, long downloadedBytes) {
+        return totalBytes - downloadedBytes + totalBytes;
+    }
+
+    // Checks the downloaded archive's extracted size, plus the files a diff update takes over from
+    // the current package, against the free storage before anything is written.
+    private void ensureStorageAvailableForExtraction(File archiveFile, String newUpdateHash) throws IOException {
+        Map<String, Long> entrySizes = FileUtils.readZipEntrySizes(archiveFile);
+        if (entrySizes == null) {
+            // A tar.zst archive records the size of the tar in its frame headers, which bounds the
+            // size of its files. It does not list them, so the files a diff update takes over
+            // from the current package are not counted.
+            long contentSize = ZstdInputStream.readContentSize(archiveFile);
+            if (contentSize >= 0) {
+                ensureStorageAvailable(contentSize, newUpdateHash);
+            }
+
+            return;
+        }
+
+        long requiredBytes = 0;
+        for (long entrySize : entrySizes.values()) {
+            requiredBytes += Math.max(0, entrySize);
+        }
+
+        String currentPackageFolderPath = getCurrentPackageFolderPath();
+        if (entrySizes.containsKey(CodePushConstants.DIFF_MANIFEST_FILE_NAME) && currentPackageFolderPath != null) {
+            requiredBytes += CodePushUpdateUtils.getMissingFilesSize(new File(currentPackageFolderPath), "", entrySizes.keySet());
+        }
+
+        ensureStorageAvailable(requiredBytes, newUpdateHash);
+    }
+
+    // Fails fast if requiredBytes more do not fit on the CodePush storage, keeping some headroom so
+    // that the app itself can still write its data. Packages other than the current, previous and
+    // new one are deleted first to make room if the app opted in.
+    private void ensureStorageAvailable(long requiredBytes, String newUpdateHash) throws CodePushInsufficientStorageException {
+        File codePushFolder = new File(getCodePushPath());
+        long neededBytes = requiredBytes + STORAGE_HEADROOM_BYTES;
+        long availableBytes = codePushFolder.getUsableSpace();
+        if (availableBytes < neededBytes && mDeleteStalePackagesOnLowStorage) {
+            deleteStalePackages(newUpdateHash);
+            availableBytes = codePushFolder.getUsableSpace();
+        }
+
+        if (availableBytes < neededBytes) {
+            throw new CodePushInsufficientStorageException(neededBytes, availableBytes);
+        }
+    }
+
+    // Deletes the package folders and partial downloads of packages that are neither the current
+    // or previous package nor being downloaded right now.
+    private void deleteStalePackages(String newUpdateHash) {
+        Set<String> packageHashesInUse = new HashSet<>();
+        packageHashesInUse.add(getCurrentPackageHash());
+        packageHashesInUse.add(getPreviousPackageHash());
+        packageHashesInUse.add(newUpdateHash);
+        synchronized (mInFlightDownloads) {
+            packageHashesInUse.addAll(mInFlightDownloads.keySet());
+        }
+
+        File codePushFolder = new File(getCodePushPath());
+        deleteStalePackageFolders(codePushFolder, packageHashesInUse);
+        deleteStalePackageFolders(new File(codePushFolder, CodePushConstants.DOWNLOAD_STAGING_FOLDER_NAME), packageHashesInUse);
+
+        // Left behind by versions that downloaded every package into the same file.
+        File legacyDownloadFile = new File(codePushFolder, CodePushConstants.DOWNLOAD_FILE_NAME);
+        if (legacyDownloadFile.exists()) {
+            FileUtils.deleteFileOrFolderSilently(legacyDownloadFile);
+        }
+
+        File legacyResumeInfoFile = new File(codePushFolder, CodePushConstants.DOWNLOAD_RESUME_INFO_FILE_NAME);
+        if (legacyResumeInfoFile.exists()) {
+            FileUtils.deleteFileOrFolderSilently(legacyResumeInfoFile);
+        }
+    }
+
+    private static void deleteStalePackageFolders(File folder, Set<String> packageHashesInUse) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String packageHash = file.getName();
+            if (file.isDirectory() && !packageHash.equals(CodePushConstants.DOWNLOAD_STAGING_FOLDER_NAME) &&
+                    !packageHashesInUse.contains(packageHash)) {
+                CodePushUtils.log("Deleting stale package " + packageHash + " to free up storage.");
+                FileUtils.deleteFileOrFolderSilently(file);
+            }
+        }
+    }
+
+    private void extractArchive(CodePushArchiveCodec archiveCodec, File archiveFile, String destinationFolderPath,
+                                InFlightDownload download, ArchiveEntryWriter entryWriter) throws IOException {
+        FileInputStream fin = null;
+        BufferedInputStream bin = null;
+        try {
+            long startTime = System.nanoTime();
+            fin = new FileInputStream(archiveFile);
+            bin = new BufferedInputStream(fin, IoBufferPolicy.getBufferSize(IoBufferPolicy.FILE));
+            extractArchive(archiveCodec, bin, destinationFolderPath, download, entryWriter);
+            IoBufferPolicy.recordThroughput(IoBufferPolicy.FILE, archiveFile.length(), System.nanoTime() - startTime);
+        } finally {
+            try {
+                if (bin != null) bin.close();
+                if (fin != null) fin.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    private static void extractArchive(CodePushArchiveCodec archiveCodec, InputStream archiveStream, String destinationFolderPath,
+                                       InFlightDownload download, ArchiveEntryWriter entryWriter) throws IOException {
+        File destinationFolder = new File(destinationFolderPath);
+        destinationFolder.mkdirs();
+        InputStream cancellableStream = new CancellableInputStream(archiveStream, download);
+        if (archiveCodec instanceof StreamingArchiveCodec) {
+            ((StreamingArchiveCodec) archiveCodec).extract(cancellableStream, destinationFolder, entryWriter);
+        } else {
+            archiveCodec.extract(cancellableStream, destinationFolder);
+        }
+    }
+
+    // Lets a diff update apply its patches against the current package while it is extracted.
+    private ArchiveEntryWriter createPackageEntryWriter(String newUpdateFolderPath) {
+        return new DiffPatchEntryWriter(getCurrentPackageFolderPath(), new File(newUpdateFolderPath));
+    }
+
+    private void readDownloadHeader(File downloadFile, byte[] header) throws IOException {
+        FileInputStream fin = null;
+        try {
+            fin = new FileInputStream(downloadFile);
+            readHeader(fin, header);
+        } finally {
+            if (fin != null) fin.close();
+        }
+    }
+
+    // Fills header with the first bytes of the stream, leaving the rest zero if it is shorter.
+    private static void readHeader(InputStream inputStream, byte[] header) throws IOException {
+        int headerOffset = 0;
+        int numBytesRead;
+        while (headerOffset < header.length &&
+                (numBytesRead = inputStream.read(header, headerOffset, header.length - headerOffset)) >= 0) {
+            headerOffset += numBytesRead;
+        }
+    }
+
+    // Returns the asset packs of a package by name, as listed in the codepushassetpacks.json of its
+    // contents, e.g. {"onboarding": {"url": "https://...", "hash": "<SHA-256 of the archive>"}}.
+    // Asset packs are left out of the package archive and fetched once the package is installed.
+    // A pack with a "path" is a single file stored at that path instead of an archive, such as a
+    // segment of a split JS bundle, which also names its "segmentId".
+    public JSONObject getAssetPacks(String packageHash) throws IOException {
+        if (packageHash == null) {
+            return new JSONObject();
+        }
+
+        String assetPacksPath = CodePushUtils.appendPathComponent(getPackageFolderPath(packageHash), CodePushConstants.ASSET_PACKS_FILE_NAME);
+        if (!FileUtils.fileAtPathExists(assetPacksPath)) {
+            return new JSONObject();
+        }
+
+        return CodePushUtils.getJsonObjectFromFile(assetPacksPath);
+    }
+
+    private String getAssetPackMarkerPath(String packageHash, String packName) throws IOException {
+        File markerFolder = new File(getPackageFolderPath(packageHash), CodePushConstants.ASSET_PACKS_READY_FOLDER_NAME);
+        return FileUtils.validateFileName(packName, markerFolder);
+    }
+
+    public boolean isAssetPackReady(String packageHash, String packName) throws IOException {
+        return FileUtils.fileAtPathExists(getAssetPackMarkerPath(packageHash, packName));
+    }
+
+    // Returns the name of the asset pack that holds a segment of the split JS bundle of a package,
+    // or null if the package has no such segment.
+    public String findSegmentAssetPack(String packageHash, int segmentId) throws IOException {
+        JSONObject assetPacks = getAssetPacks(packageHash);
+        Iterator<String> packNames = assetPacks.keys();
+        while (packNames.hasNext()) {
+            String packName = packNames.next();
+            JSONObject assetPack = assetPacks.optJSONObject(packName);
+            if (assetPack != null && assetPack.has("path") && assetPack.optInt("segmentId", -1) == segmentId) {
+                return packName;
+            }
+        }
+
+        return null;
+    }
+
+    public String getAssetPackFilePath(String packageHash, String packName) throws IOException {
+        JSONObject assetPack = getAssetPacks(packageHash).optJSONObject(packName);
+        String relativeFilePath = assetPack == null ? null : assetPack.optString("path", null);
+        if (relativeFilePath == null) {
+            return null;
+        }
+
+        return FileUtils.validateFileName(relativeFilePath, new File(getPackageFolderPath(packageHash)));
+    }
+
+    // Downloads an asset pack of an installed package, checks it against the hash that the
+    // package lists for it and extracts it into the package folder, next to the contents that
+    // came with the package. The package itself was verified before, including the hash. Like a
+    // package, a pack that is already being downloaded is waited for instead of fetched again.
+    public void downloadAssetPack(String packageHash, String packName) throws IOException {
+        String downloadKey = getAssetPackDownloadKey(packageHash, packName);
+        InFlightDownload download;
+        boolean isAlreadyDownloading;
+        synchronized (mInFlightDownloads) {
+            download = mInFlightDownloads.get(downloadKey);
+            isAlreadyDownloading = download != null;
+            if (!isAlreadyDownloading) {
+                download = new InFlightDownload();
+                mInFlightDownloads.put(downloadKey, download);
+            }
+        }
+
+        if (isAlreadyDownloading) {
+            CodePushUtils.log("Asset pack " + packName + " of package " + packageHash + " is already being downloaded, waiting for it.");
+            download.await();
+            return;
+        }
+
+        Throwable error = null;
+        try {
+            downloadAndExtractAssetPack(packageHash, packName, downloadKey, download);
+        } catch (Throwable e) {
+            error = e;
+            if (e instanceof CodePushDownloadCancelledException) {
+                CodePushUtils.log("Download of asset pack " + packName + " of package " + packageHash + " was cancelled.");
+                FileUtils.deleteDirectoryAtPath(getStagingFolderPath(downloadKey));
+            }
+
+            throw e;
+        } finally {
+            synchronized (mInFlightDownloads) {
+                mInFlightDownloads.remove(downloadKey);
+            }
+
+            download.finish(error);
+        }
+    }
+
+    // Asset packs are registered as in-flight downloads and staged under this key, so that a
+    // pack can be cancelled with cancelDownload and a partial download of it is resumed like one
+    // of a package, without touching the staging folder of the package.
+    public static String getAssetPackDownloadKey(String packageHash, String packName) {
+        return packageHash + "-" + packName;
+    }
+
+    private void downloadAndExtractAssetPack(String packageHash, String packName, String downloadKey,
+                                             InFlightDownload download) throws IOException {
+        JSONObject assetPack = getAssetPacks(packageHash).optJSONObject(packName);
+        if (assetPack == null) {
+            throw new CodePushUnknownException("Package " + packageHash + " has no asset pack named " + packName + ".");
+        }
+
+        String urlString = assetPack.optString("url", null);
+        String expectedHash = assetPack.optString("hash", null);
+        String relativeFilePath = assetPack.optString("path", null);
+        URL url;
+        try {
+            url = Urls.create(urlString, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
+        } catch (MalformedURLException e) {
+            throw new CodePushMalformedDataException(urlString, e);
+        }
+
+        File stagingFolder = new File(getStagingFolderPath(downloadKey));
+        stagingFolder.mkdirs();
+        File downloadFile = new File(stagingFolder, CodePushConstants.DOWNLOAD_FILE_NAME);
+        byte[] header = null;
+        int attempt = 1;
+        while (header == null) {
+            try {
+                header = downloadPackageFile(url, downloadKey, downloadFile, download);
+            } catch (CodePushInsufficientStorageException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= mRetryPolicy.getMaxAttempts() || !mRetryPolicy.isRetryable(e)) {
+                    throw e;
+                }
+
+                long retryDelayMillis = mRetryPolicy.getRetryDelayMillis(attempt, e);
+                CodePushUtils.log("Download attempt " + attempt + " of asset pack " + packName + " failed (" + e.getMessage() + "), retrying in " + retryDelayMillis + " ms.");
+                download.sleep(retryDelayMillis);
+                attempt++;
+            }
+        }
+
+        String receivedHash = CodePushUpdateUtils.computeFileHash(downloadFile);
+        CodePushArchiveCodec archiveCodec = findArchiveCodec(header);
+        if (!receivedHash.equals(expectedHash) || (archiveCodec == null && relativeFilePath == null)) {
+            FileUtils.deleteDirectoryAtPath(stagingFolder.getAbsolutePath());
+            throw new CodePushInvalidUpdateException("The asset pack " + packName + " failed the data integrity check.");
+        }
+
+        // The pack is extracted in the staging folder first, so that nothing is added to the
+        // package folder if it is deleted in the meantime, e.g. because the package was rolled back.
+        File contentsFolder = new File(stagingFolder, ASSET_PACK_CONTENTS_FOLDER_NAME);
+        List<String> packFiles = new ArrayList<>();
+        if (relativeFilePath != null) {
+            File file = new File(FileUtils.validateFileName(relativeFilePath, contentsFolder));
+            FileUtils.moveFile(downloadFile, file.getParent(), file.getName());
+        } else {
+            ensureStorageAvailableForExtraction(downloadFile, downloadKey);
+            extractArchive(archiveCodec, downloadFile, contentsFolder.getAbsolutePath(), download, FileUtils.PLAIN_ENTRY_WRITER);
+        }
+
+        CodePushUpdateUtils.addRelativeFilePaths(contentsFolder, "", packFiles);
+        String packageFolderPath = getPackageFolderPath(packageHash);
+        if (!FileUtils.fileAtPathExists(packageFolderPath)) {
+            FileUtils.deleteDirectoryAtPath(stagingFolder.getAbsolutePath());
+            throw new CodePushUnknownException("Package " + packageHash + " was removed while its asset pack " + packName + " was downloaded.");
+        }
+
+        FileUtils.copyDirectoryContents(contentsFolder.getAbsolutePath(), packageFolderPath);
+        FileUtils.deleteDirectoryAtPath(stagingFolder.getAbsolutePath());
+
+        // The marker lists the files of the pack, so that a diff update of the package does not
+        // take them over from it, since the update fetches its own packs.
+        File markerFile = new File(getAssetPackMarkerPath(packageHash, packName));
+        markerFile.getParentFile().mkdirs();
+        JSONObject marker = new JSONObject();
+        CodePushUtils.setJSONValueForKey(marker, "hash", expectedHash);
+        CodePushUtils.setJSONValueForKey(marker, CodePushConstants.ASSET_PACK_FILES_KEY, new JSONArray(packFiles));
+        CodePushUtils.writeJsonToFile(marker, markerFile.getAbsolutePath());
+        CodePushUtils.log("Asset pack " + packName + " of package " + packageHash + " is ready.");
     }
 
     public void installPackage(JSONObject updatePackage, boolean removePendingUpdate) {
@@ -348,21 +1475,23 @@ public class CodePushUpdateManager {
 
     public void downloadAndReplaceCurrentBundle(String remoteBundleUrl, String bundleFileName) throws IOException {
         URL downloadUrl;
-        HttpURLConnection connection = null;
+        CodePushHttpResponse response = null;
         BufferedInputStream bin = null;
         FileOutputStream fos = null;
         BufferedOutputStream bout = null;
         try {
             downloadUrl = Urls.create(remoteBundleUrl, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
-            connection = (HttpURLConnection) (downloadUrl.openConnection());
-            bin = new BufferedInputStream(connection.getInputStream());
+            response = mHttpTransport.execute(new CodePushHttpRequest(downloadUrl));
+            checkResponseStatus(response, remoteBundleUrl);
+            bin = new BufferedInputStream(response.getBody());
             File downloadFile = new File(getCurrentPackageBundlePath(bundleFileName));
             downloadFile.delete();
             fos = new FileOutputStream(downloadFile);
-            bout = new BufferedOutputStream(fos, CodePushConstants.DOWNLOAD_BUFFER_SIZE);
-            byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
+            int bufferSize = IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD);
+            bout = new BufferedOutputStream(fos, bufferSize);
+            byte[] data = new byte[bufferSize];
             int numBytesRead = 0;
-            while ((numBytesRead = bin.read(data, 0, CodePushConstants.DOWNLOAD_BUFFER_SIZE)) >= 0) {
+            while ((numBytesRead = bin.read(data, 0, bufferSize)) >= 0) {
                 bout.write(data, 0, numBytesRead);
             }
         } catch (MalformedURLException e) {
@@ -372,7 +1501,7 @@ public class CodePushUpdateManager {
                 if (bout != null) bout.close();
                 if (fos != null) fos.close();
                 if (bin != null) bin.close();
-                if (connection != null) connection.disconnect();
+                if (response != null) response.close();
             } catch (IOException e) {
                 throw new CodePushUnknownException("Error closing IO resources.", e);
             }
@@ -27,7 +27,14 @@ import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class CodePushUpdateUtils {
 
@@ -39,8 +46,11 @@ public class CodePushUpdateUtils {
         final String __MACOSX = "__MACOSX/";
         final String DS_STORE = ".DS_Store";
         final String CODEPUSH_METADATA = ".codepushrelease";
+        // Written on the device once an asset pack of the package is ready, never part of a release.
+        final String ASSET_PACKS_READY = CodePushConstants.ASSET_PACKS_READY_FOLDER_NAME + "/";
 
         return relativeFilePath.startsWith(__MACOSX)
+                || relativeFilePath.startsWith(ASSET_PACKS_READY)
                 || relativeFilePath.equals(DS_STORE)
                 || relativeFilePath.endsWith("/" + DS_STORE)
                 || relativeFilePath.equals(CODEPUSH_METADATA)
@@ -72,6 +82,10 @@ public class CodePushUpdateUtils {
         }
     }
 
+    static String computeFileHash(File file) throws IOException {
+        return computeHash(new FileInputStream(file));
+    }
+
     private static String computeHash(InputStream dataStream) {
         MessageDigest messageDigest = null;
         DigestInputStream digestInputStream = null;
@@ -100,25 +114,285 @@ public class CodePushUpdateUtils {
         return String.format("%064x", new java.math.BigInteger(1, hash));
     }
 
+    // The diff archive has already been extracted into the new package folder, so only the files
+    // it does not contain and that were not deleted by the update are copied from the current package.
     public static void copyNecessaryFilesFromCurrentPackage(String diffManifestFilePath, String currentPackageFolderPath, String newPackageFolderPath) throws IOException {
         if (currentPackageFolderPath == null || !new File(currentPackageFolderPath).exists()) {
             CodePushUtils.log("Unable to copy files from current package during diff update, because currentPackageFolderPath is invalid.");
             return;
         }
-        FileUtils.copyDirectoryContents(currentPackageFolderPath, newPackageFolderPath);
         JSONObject diffManifest = CodePushUtils.getJsonObjectFromFile(diffManifestFilePath);
+        Set<String> deletedFiles = new HashSet<>();
         try {
-            JSONArray deletedFiles = diffManifest.getJSONArray("deletedFiles");
-            for (int i = 0; i < deletedFiles.length(); i++) {
-                String fileNameToDelete = deletedFiles.getString(i);
-                File fileToDelete = new File(newPackageFolderPath, fileNameToDelete);
-                if (fileToDelete.exists()) {
-                    fileToDelete.delete();
+            JSONArray deletedFilesArray = diffManifest.getJSONArray("deletedFiles");
+            for (int i = 0; i < deletedFilesArray.length(); i++) {
+                deletedFiles.add(deletedFilesArray.getString(i));
+            }
+
+            // Patched files exist once the patches are applied, so they are not copied below.
+            JSONArray patchedFilesArray = diffManifest.optJSONArray("patchedFiles");
+            if (patchedFilesArray != null) {
+                for (int i = 0; i < patchedFilesArray.length(); i++) {
+                    applyPatch(patchedFilesArray.getJSONObject(i), currentPackageFolderPath, newPackageFolderPath);
                 }
             }
         } catch (JSONException e) {
             throw new CodePushUnknownException("Unable to copy files from current package during diff update", e);
         }
+
+        // Asset packs and their ready markers are left out, the update lists and fetches its own.
+        Set<String> skippedFiles = new HashSet<>(deletedFiles);
+        skippedFiles.addAll(getAssetPackFiles(new File(currentPackageFolderPath)));
+        copyMissingFiles(new File(currentPackageFolderPath), new File(newPackageFolderPath), "", skippedFiles);
+    }
+
+    // Returns the paths of the files that the ready asset packs of a package added to its folder,
+    // as listed by their markers, along with the folder of the markers.
+    static Set<String> getAssetPackFiles(File packageFolder) throws IOException {
+        Set<String> assetPackFiles = new HashSet<>();
+        File markerFolder = new File(packageFolder, CodePushConstants.ASSET_PACKS_READY_FOLDER_NAME);
+        File[] markerFiles = markerFolder.listFiles();
+        if (markerFiles == null) {
+            return assetPackFiles;
+        }
+
+        assetPackFiles.add(CodePushConstants.ASSET_PACKS_READY_FOLDER_NAME);
+        for (File markerFile : markerFiles) {
+            JSONArray files = CodePushUtils.getJsonObjectFromFile(markerFile.getAbsolutePath()).optJSONArray(CodePushConstants.ASSET_PACK_FILES_KEY);
+            for (int i = 0; files != null && i < files.length(); i++) {
+                assetPackFiles.add(files.optString(i));
+            }
+        }
+
+        return assetPackFiles;
+    }
+
+    // Adds the path of every file in the folder, relative to the folder that relativePath is in.
+    static void addRelativeFilePaths(File folder, String relativePath, List<String> relativeFilePaths) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String relativeFilePath = relativePath.isEmpty() ? file.getName() : relativePath + "/" + file.getName();
+            if (file.isDirectory()) {
+                addRelativeFilePaths(file, relativeFilePath, relativeFilePaths);
+            } else {
+                relativeFilePaths.add(relativeFilePath);
+            }
+        }
+    }
+
+    // Extracts the files that a diff update made against the binary takes from the APK, so that
+    // the update can be merged with them like with a current package. Such a manifest names the
+    // bundled resources hash of its binary under "binaryHash" and maps package paths to APK
+    // entries under "binaryFiles", e.g. "CodePush/index.android.bundle" to
+    // "assets/index.android.bundle". Returns false if the diff update is against a package, in
+    // which case the binary hash is not read. Each entry is written once: the ones that patches
+    // are made against go to baseFolderPath, the others straight into the new package, and files
+    // that the update replaces or deletes are skipped. Entries are copied out of the APK even when
+    // they are stored uncompressed, because the package folder must hold real files for the folder
+    // hash and the bundle loader.
+    public static boolean extractBinaryBaseFiles(String diffManifestFilePath, String binaryPath, BinaryContentsHashProvider binaryContentsHashProvider,
+                                                 String baseFolderPath, String newPackageFolderPath) throws IOException {
+        JSONObject diffManifest;
+        try {
+            diffManifest = CodePushUtils.getJsonObjectFromFile(diffManifestFilePath);
+        } catch (CodePushMalformedDataException e) {
+            // Left to copyNecessaryFilesFromCurrentPackage, which only reads the manifest when
+            // there is a current package.
+            return false;
+        }
+
+        String binaryHash = diffManifest.optString("binaryHash", null);
+        if (binaryHash == null) {
+            return false;
+        }
+
+        String binaryContentsHash = binaryContentsHashProvider == null ? null : binaryContentsHashProvider.getBinaryContentsHash();
+        if (!binaryHash.equals(binaryContentsHash)) {
+            throw new CodePushInvalidUpdateException("Update is invalid - it is a diff against the binary with the hash " + binaryHash + ", but this binary has the hash " + binaryContentsHash + ".");
+        }
+
+        File baseFolder = new File(baseFolderPath);
+        File newPackageFolder = new File(newPackageFolderPath);
+        FileUtils.deleteDirectoryAtPath(baseFolderPath);
+        baseFolder.mkdirs();
+        ZipFile binary = new ZipFile(binaryPath);
+        try {
+            Set<String> deletedFiles = new HashSet<>();
+            JSONArray deletedFilesArray = diffManifest.getJSONArray("deletedFiles");
+            for (int i = 0; i < deletedFilesArray.length(); i++) {
+                deletedFiles.add(deletedFilesArray.getString(i));
+            }
+
+            Set<String> patchedFiles = new HashSet<>();
+            JSONArray patchedFilesArray = diffManifest.optJSONArray("patchedFiles");
+            for (int i = 0; patchedFilesArray != null && i < patchedFilesArray.length(); i++) {
+                patchedFiles.add(patchedFilesArray.getJSONObject(i).getString("path"));
+            }
+
+            JSONObject binaryFiles = diffManifest.getJSONObject("binaryFiles");
+            Iterator<String> relativeFilePaths = binaryFiles.keys();
+            int extractedFileCount = 0;
+            while (relativeFilePaths.hasNext()) {
+                String relativeFilePath = relativeFilePaths.next();
+                boolean isPatched = patchedFiles.contains(relativeFilePath);
+                File file = new File(FileUtils.validateFileName(relativeFilePath, isPatched ? baseFolder : newPackageFolder));
+                if (deletedFiles.contains(relativeFilePath) || (!isPatched && file.exists())) {
+                    continue;
+                }
+
+                String entryName = binaryFiles.getString(relativeFilePath);
+                ZipEntry entry = binary.getEntry(entryName);
+                if (entry == null) {
+                    throw new CodePushInvalidUpdateException("Update is invalid - " + entryName + " could not be found within the binary.");
+                }
+
+                file.getParentFile().mkdirs();
+                FileUtils.writeStreamToFile(binary.getInputStream(entry), file);
+                extractedFileCount++;
+            }
+
+            CodePushUtils.log("Merging diff update with " + extractedFileCount + " files from the binary.");
+        } catch (JSONException e) {
+            throw new CodePushUnknownException("Unable to copy files from the binary during diff update", e);
+        } finally {
+            try {
+                binary.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+
+        return true;
+    }
+
+    // Rebuilds a file changed by a diff update from its version in the current package and a
+    // binary patch shipped in the update, given as {"path", "patch", "hash"} where hash is the
+    // SHA-256 of the patched file. The patch is removed once applied, as it is not part of the
+    // package contents. Patches applied while the update was extracted are not in the package folder.
+    private static void applyPatch(JSONObject patchedFile, String currentPackageFolderPath, String newPackageFolderPath) throws IOException, JSONException {
+        String relativeFilePath = patchedFile.getString("path");
+        File patchFile = new File(FileUtils.validateFileName(patchedFile.getString("patch"), new File(newPackageFolderPath)));
+        File newFile = new File(FileUtils.validateFileName(relativeFilePath, new File(newPackageFolderPath)));
+        if (!patchFile.exists() && newFile.exists()) {
+            return;
+        }
+
+        if (!patchFile.exists()) {
+            throw new CodePushInvalidUpdateException("Update is invalid - " + relativeFilePath + " cannot be patched, as the current package or the update lacks a file it needs.");
+        }
+
+        FileInputStream patch = null;
+        try {
+            patch = new FileInputStream(patchFile);
+            applyPatch(patchedFile, patch, currentPackageFolderPath, newPackageFolderPath);
+        } finally {
+            try {
+                if (patch != null) patch.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+
+        patchFile.delete();
+    }
+
+    // Applies a patch as it is read from the stream and checks the hash of the patched file.
+    static void applyPatch(JSONObject patchedFile, InputStream patch, String currentPackageFolderPath, String newPackageFolderPath) throws IOException, JSONException {
+        String relativeFilePath = patchedFile.getString("path");
+        String relativePatchPath = patchedFile.getString("patch");
+        String expectedHash = patchedFile.getString("hash");
+        if (relativeFilePath.equals(relativePatchPath)) {
+            throw new CodePushInvalidUpdateException("Update is invalid - the patch for " + relativeFilePath + " cannot replace the file it patches.");
+        }
+
+        File oldFile = new File(FileUtils.validateFileName(relativeFilePath, new File(currentPackageFolderPath)));
+        File newFile = new File(FileUtils.validateFileName(relativeFilePath, new File(newPackageFolderPath)));
+        if (!oldFile.exists()) {
+            throw new CodePushInvalidUpdateException("Update is invalid - " + relativeFilePath + " cannot be patched, as the current package or the update lacks a file it needs.");
+        }
+
+        newFile.getParentFile().mkdirs();
+        String patchedHash = BinaryPatcher.apply(oldFile, patch, newFile, new File(relativePatchPath).getName());
+        if (!patchedHash.equals(expectedHash)) {
+            newFile.delete();
+            throw new CodePushInvalidUpdateException("The update contents failed the data integrity check. The patched " + relativeFilePath + " has the hash " + patchedHash + " instead of " + expectedHash + ".");
+        }
+
+        CodePushUtils.log("Patched " + relativeFilePath + " from the current package.");
+    }
+
+    private static void copyMissingFiles(File sourceFolder, File destinationFolder, String relativePath, Set<String> skippedFiles) throws IOException {
+        if (!destinationFolder.exists()) {
+            destinationFolder.mkdirs();
+        }
+
+        for (File sourceFile : sourceFolder.listFiles()) {
+            String relativeFilePath = relativePath.isEmpty() ? sourceFile.getName() : relativePath + "/" + sourceFile.getName();
+            File destinationFile = new File(destinationFolder, sourceFile.getName());
+            if (skippedFiles.contains(relativeFilePath)) {
+                continue;
+            } else if (sourceFile.isDirectory()) {
+                copyMissingFiles(sourceFile, destinationFile, relativeFilePath, skippedFiles);
+            } else if (!destinationFile.exists()) {
+                FileUtils.copyFile(sourceFile, destinationFile);
+            }
+        }
+    }
+
+    // Returns how many bytes copyNecessaryFilesFromCurrentPackage can copy at most into a package
+    // that will contain newPackagePaths. Files deleted by the update are not known before it is
+    // extracted, so they are counted as well.
+    static long getMissingFilesSize(File sourceFolder, String relativePath, Set<String> newPackagePaths) {
+        File[] sourceFiles = sourceFolder.listFiles();
+        if (sourceFiles == null) {
+            return 0;
+        }
+
+        long size = 0;
+        for (File sourceFile : sourceFiles) {
+            String relativeFilePath = relativePath.isEmpty() ? sourceFile.getName() : relativePath + "/" + sourceFile.getName();
+            if (sourceFile.isDirectory()) {
+                size += getMissingFilesSize(sourceFile, relativeFilePath, newPackagePaths);
+            } else if (!newPackagePaths.contains(relativeFilePath)) {
+                size += sourceFile.length();
+            }
+        }
+
+        return size;
+    }
+
+    // Maps the SHA-256 of each file in the folder that counts towards the package hash to one of
+    // the files with that content.
+    static Map<String, File> getFilesByHash(File folder, String relativePath) {
+        Map<String, File> filesByHash = new HashMap<>();
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return filesByHash;
+        }
+
+        for (File file : files) {
+            String relativeFilePath = relativePath.isEmpty() ? file.getName() : relativePath + "/" + file.getName();
+            if (isHashIgnored(relativeFilePath)) {
+                continue;
+            }
+
+            if (file.isDirectory()) {
+                filesByHash.putAll(getFilesByHash(file, relativeFilePath));
+            } else {
+                try {
+                    filesByHash.put(computeHash(new FileInputStream(file)), file);
+                } catch (FileNotFoundException e) {
+                    // Should not happen.
+                    throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+                }
+            }
+        }
+
+        return filesByHash;
     }
 
     public static String findJSBundleInUpdateContents(String folderPath, String expectedFileName) {
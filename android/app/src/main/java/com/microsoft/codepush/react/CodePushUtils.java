@@ -193,6 +193,25 @@ public class CodePushUtils {
         }
     }
 
+    // Content-Range has the form "bytes <first>-<last>/<complete length>", where the complete
+    // length may be "*" if the server does not know it. Returns -1 when it is not available.
+    public static long getCompleteLengthFromContentRange(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+
+        int slashIndex = contentRange.lastIndexOf('/');
+        if (slashIndex < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(slashIndex + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public static JSONObject getJsonObjectFromFile(String filePath) throws IOException {
         String content = FileUtils.readFileToString(filePath);
         try {
@@ -0,0 +1,68 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+// Applies the binary patches of a diff update against the current package while the update is
+// extracted, so that the patches never take up storage. This needs the diff manifest to come
+// before the patches in the archive. Patches that come first, and patches of diff updates made
+// against the binary, are extracted as files and applied by copyNecessaryFilesFromCurrentPackage.
+class DiffPatchEntryWriter implements ArchiveEntryWriter {
+    private final String mCurrentPackageFolderPath;
+    private final File mDestinationFolder;
+    // Patched file entries of the diff manifest by the path of their patch in the destination folder.
+    private final Map<String, JSONObject> mPatchedFiles = new HashMap<>();
+
+    public DiffPatchEntryWriter(String currentPackageFolderPath, File destinationFolder) {
+        mCurrentPackageFolderPath = currentPackageFolderPath;
+        mDestinationFolder = destinationFolder;
+    }
+
+    @Override
+    public void write(String relativePath, InputStream contents, File file) throws IOException {
+        JSONObject patchedFile = mPatchedFiles.remove(file.getPath());
+        if (patchedFile != null) {
+            try {
+                CodePushUpdateUtils.applyPatch(patchedFile, contents, mCurrentPackageFolderPath, mDestinationFolder.getPath());
+            } catch (JSONException e) {
+                throw new CodePushUnknownException("Unable to apply patch " + relativePath + " during diff update", e);
+            }
+
+            return;
+        }
+
+        FileUtils.writeStreamToFile(contents, file);
+        if (relativePath.equals(CodePushConstants.DIFF_MANIFEST_FILE_NAME)) {
+            readDiffManifest(file);
+        }
+    }
+
+    private void readDiffManifest(File diffManifestFile) throws IOException {
+        if (mCurrentPackageFolderPath == null || !new File(mCurrentPackageFolderPath).exists()) {
+            return;
+        }
+
+        JSONObject diffManifest = CodePushUtils.getJsonObjectFromFile(diffManifestFile.getPath());
+        JSONArray patchedFilesArray = diffManifest.optJSONArray("patchedFiles");
+        if (patchedFilesArray == null || diffManifest.has("binaryHash")) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < patchedFilesArray.length(); i++) {
+                JSONObject patchedFile = patchedFilesArray.getJSONObject(i);
+                String patchPath = FileUtils.validateFileName(patchedFile.getString("patch"), mDestinationFolder);
+                mPatchedFiles.put(patchPath, patchedFile);
+            }
+        } catch (JSONException e) {
+            throw new CodePushUnknownException("Unable to read the patched files of the diff update", e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.microsoft.codepush.react;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a latency and throughput score per mirror host and orders the mirrors of a package by
+// how fast they are expected to deliver it. Before a download starts, every host is probed in
+// parallel with a one-byte range request, so that the latency reflects the current network.
+class DownloadMirrorSelector {
+
+    // Weight of the newest sample in the moving averages.
+    private static final double SMOOTHING_FACTOR = 0.3;
+    private static final long FAILURE_PENALTY_MILLIS = 10 * 1000;
+    private static final long PROBE_TIMEOUT_MILLIS = 5 * 1000;
+
+    private static class HostScore {
+        double latencyMillis = -1;
+        double bytesPerMilli = -1;
+        int consecutiveFailures = 0;
+
+        double estimateMillis(long expectedBytes) {
+            double estimate = latencyMillis;
+            if (bytesPerMilli > 0 && expectedBytes > 0) {
+                estimate += expectedBytes / bytesPerMilli;
+            }
+
+            return estimate + consecutiveFailures * FAILURE_PENALTY_MILLIS;
+        }
+    }
+
+    private final Map<String, HostScore> mScores = new HashMap<>();
+
+    public synchronized void recordLatency(URL url, long latencyMillis) {
+        HostScore score = getScore(url);
+        score.latencyMillis = average(score.latencyMillis, latencyMillis);
+    }
+
+    public synchronized void recordThroughput(URL url, long bytes, long durationMillis) {
+        if (bytes <= 0 || durationMillis <= 0) {
+            return;
+        }
+
+        HostScore score = getScore(url);
+        score.bytesPerMilli = average(score.bytesPerMilli, (double) bytes / durationMillis);
+    }
+
+    public synchronized void recordSuccess(URL url) {
+        getScore(url).consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure(URL url) {
+        getScore(url).consecutiveFailures++;
+    }
+
+    // Returns the mirrors ordered by the expected time to download expectedBytes from them,
+    // fastest first. Mirrors that are equally fast keep their configured order.
+    public List<URL> rank(List<URL> mirrors, long expectedBytes, CodePushHttpTransport httpTransport) {
+        if (mirrors.size() < 2) {
+            return mirrors;
+        }
+
+        probeMirrors(mirrors, httpTransport);
+
+        // Keyed by string, since URL.hashCode resolves the host name.
+        final Map<String, Double> estimates = new HashMap<>();
+        synchronized (this) {
+            for (URL mirror : mirrors) {
+                HostScore score = mScores.get(getHostKey(mirror));
+                estimates.put(mirror.toString(), score == null || score.latencyMillis < 0 ? Double.MAX_VALUE : score.estimateMillis(expectedBytes));
+            }
+        }
+
+        List<URL> rankedMirrors = new ArrayList<>(mirrors);
+        Collections.sort(rankedMirrors, new Comparator<URL>() {
+            @Override
+            public int compare(URL first, URL second) {
+                return Double.compare(estimates.get(first.toString()), estimates.get(second.toString()));
+            }
+        });
+
+        return rankedMirrors;
+    }
+
+    // Races a one-byte request against every mirror host, recording how long each one takes to
+    // answer. Hosts that fail or do not answer in time are penalized.
+    private void probeMirrors(List<URL> mirrors, final CodePushHttpTransport httpTransport) {
+        // Mirrors on the same host share a score, so the host is probed once.
+        Map<String, URL> probedMirrors = new LinkedHashMap<>();
+        for (URL mirror : mirrors) {
+            if (!probedMirrors.containsKey(getHostKey(mirror))) {
+                probedMirrors.put(getHostKey(mirror), mirror);
+            }
+        }
+
+        final CountDownLatch probesDone = new CountDownLatch(probedMirrors.size());
+        final Map<String, Boolean> answered = Collections.synchronizedMap(new HashMap<String, Boolean>());
+        ExecutorService executor = Executors.newFixedThreadPool(probedMirrors.size());
+        try {
+            for (final URL mirror : probedMirrors.values()) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long startTime = System.nanoTime();
+                            CodePushHttpResponse response = httpTransport.execute(
+                                    CodePushUpdateManager.createDownloadRequest(mirror).setHeader("Range", "bytes=0-0"));
+                            try {
+                                int statusCode = response.getStatusCode();
+                                if (statusCode == HttpURLConnection.HTTP_PARTIAL || statusCode == HttpURLConnection.HTTP_OK) {
+                                    recordLatency(mirror, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                                    answered.put(mirror.toString(), true);
+                                }
+                            } finally {
+                                response.close();
+                            }
+                        } catch (Exception e) {
+                            CodePushUtils.log("Probing mirror " + mirror.getHost() + " failed: " + e.getMessage());
+                        } finally {
+                            probesDone.countDown();
+                        }
+                    }
+                });
+            }
+
+            probesDone.await(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (URL mirror : probedMirrors.values()) {
+            if (!answered.containsKey(mirror.toString())) {
+                recordFailure(mirror);
+            }
+        }
+    }
+
+    private HostScore getScore(URL url) {
+        String hostKey = getHostKey(url);
+        HostScore score = mScores.get(hostKey);
+        if (score == null) {
+            score = new HostScore();
+            mScores.put(hostKey, score);
+        }
+
+        return score;
+    }
+
+    private static String getHostKey(URL url) {
+        return url.getProtocol() + "://" + url.getAuthority();
+    }
+
+    private static double average(double current, double sample) {
+        return current < 0 ? sample : current + SMOOTHING_FACTOR * (sample - current);
+    }
+}
@@ -13,17 +13,22 @@ class DownloadProgress {
     }
 
     public WritableMap createWritableMap() {
+        // Doubles hold byte counts exactly up to 2^53, while ints overflow at 2 GB. A total of -1
+        // means that the size of the package is not known yet.
         WritableMap map = new WritableNativeMap();
-        if (mTotalBytes < Integer.MAX_VALUE) {
-            map.putInt("totalBytes", (int) mTotalBytes);
-            map.putInt("receivedBytes", (int) mReceivedBytes);
-        } else {
-            map.putDouble("totalBytes", mTotalBytes);
-            map.putDouble("receivedBytes", mReceivedBytes);
-        }
+        map.putDouble("totalBytes", mTotalBytes);
+        map.putDouble("receivedBytes", mReceivedBytes);
         return map;
     }
 
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+
     public boolean isCompleted() {
         return mTotalBytes == mReceivedBytes;
     }
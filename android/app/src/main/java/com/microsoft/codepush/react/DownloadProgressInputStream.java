@@ -0,0 +1,37 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reports the bytes received so far to a progress callback as they are read, for downloads that
+// are consumed as they arrive instead of being written to a file first.
+class DownloadProgressInputStream extends CountingInputStream {
+    private final long mTotalBytes;
+    private final DownloadProgressCallback mProgressCallback;
+
+    public DownloadProgressInputStream(InputStream in, long totalBytes, DownloadProgressCallback progressCallback) {
+        super(in);
+        mTotalBytes = totalBytes;
+        mProgressCallback = progressCallback;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+        if (result >= 0) {
+            mProgressCallback.call(new DownloadProgress(mTotalBytes, getCount()));
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int result = super.read(buffer, offset, length);
+        if (result > 0) {
+            mProgressCallback.call(new DownloadProgress(mTotalBytes, getCount()));
+        }
+
+        return result;
+    }
+}
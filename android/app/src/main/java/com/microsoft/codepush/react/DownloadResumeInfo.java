@@ -0,0 +1,103 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+// Sidecar metadata stored next to a partially downloaded package so that an interrupted
+// download can be continued with an HTTP range request instead of starting over.
+class DownloadResumeInfo {
+    private static final String DOWNLOAD_URL_KEY = "downloadUrl";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String PACKAGE_HASH_KEY = "packageHash";
+    private static final String RECEIVED_BYTES_KEY = "receivedBytes";
+    private static final String TOTAL_BYTES_KEY = "totalBytes";
+
+    private String mDownloadUrl;
+    private String mPackageHash;
+    private String mETag;
+    private String mLastModified;
+    private long mReceivedBytes;
+    private long mTotalBytes;
+
+    public DownloadResumeInfo(String downloadUrl, String packageHash, String eTag, String lastModified, long totalBytes) {
+        mDownloadUrl = downloadUrl;
+        mPackageHash = packageHash;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mTotalBytes = totalBytes;
+    }
+
+    public static DownloadResumeInfo load(String filePath) {
+        if (!FileUtils.fileAtPathExists(filePath)) {
+            return null;
+        }
+
+        try {
+            JSONObject json = CodePushUtils.getJsonObjectFromFile(filePath);
+            DownloadResumeInfo resumeInfo = new DownloadResumeInfo(
+                    json.optString(DOWNLOAD_URL_KEY, null),
+                    json.optString(PACKAGE_HASH_KEY, null),
+                    json.optString(ETAG_KEY, null),
+                    json.optString(LAST_MODIFIED_KEY, null),
+                    json.optLong(TOTAL_BYTES_KEY, -1));
+            resumeInfo.setReceivedBytes(json.optLong(RECEIVED_BYTES_KEY, 0));
+            return resumeInfo;
+        } catch (IOException | CodePushMalformedDataException e) {
+            // A corrupted sidecar only means we cannot resume, the download restarts from scratch.
+            CodePushUtils.log("Unable to read download resume info, the download will restart from the beginning.");
+            return null;
+        }
+    }
+
+    public void save(String filePath) throws IOException {
+        JSONObject json = new JSONObject();
+        CodePushUtils.setJSONValueForKey(json, DOWNLOAD_URL_KEY, mDownloadUrl);
+        CodePushUtils.setJSONValueForKey(json, PACKAGE_HASH_KEY, mPackageHash);
+        CodePushUtils.setJSONValueForKey(json, ETAG_KEY, mETag);
+        CodePushUtils.setJSONValueForKey(json, LAST_MODIFIED_KEY, mLastModified);
+        CodePushUtils.setJSONValueForKey(json, RECEIVED_BYTES_KEY, mReceivedBytes);
+        CodePushUtils.setJSONValueForKey(json, TOTAL_BYTES_KEY, mTotalBytes);
+        CodePushUtils.writeJsonToFile(json, filePath);
+    }
+
+    public boolean canResume(String downloadUrl, String packageHash) {
+        if (mPackageHash == null || !mPackageHash.equals(packageHash)) {
+            return false;
+        }
+
+        if (isSameSource(downloadUrl)) {
+            return getValidator() != null;
+        }
+
+        // Mirrors serve the same bytes for a package hash, but their validators differ, so a
+        // download moving to another mirror can only be checked against the complete length.
+        return mTotalBytes > 0;
+    }
+
+    public boolean isSameSource(String downloadUrl) {
+        return mDownloadUrl != null && mDownloadUrl.equals(downloadUrl);
+    }
+
+    // If-Range only accepts a strong ETag, so fall back to Last-Modified for weak ones.
+    public String getValidator() {
+        if (mETag != null && !mETag.startsWith("W/")) {
+            return mETag;
+        }
+
+        return mLastModified;
+    }
+
+    public long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public void setReceivedBytes(long receivedBytes) {
+        mReceivedBytes = receivedBytes;
+    }
+}
@@ -2,18 +2,32 @@ package com.microsoft.codepush.react;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 public class FileUtils {
 
-    private static final int WRITE_BUFFER_SIZE = 1024 * 8;
+    private static final int TAR_BLOCK_SIZE = 512;
+    private static final int MAX_TAR_EXTENDED_HEADER_SIZE = 1024 * 1024;
+    private static final int ZIP_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP_END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP_CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP_CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
 
     public static void copyDirectoryContents(String sourceDirectoryPath, String destinationDirectoryPath) throws IOException {
         File sourceDir = new File(sourceDirectoryPath);
@@ -28,28 +42,51 @@ public class FileUtils {
                         CodePushUtils.appendPathComponent(sourceDirectoryPath, sourceFile.getName()),
                         CodePushUtils.appendPathComponent(destinationDirectoryPath, sourceFile.getName()));
             } else {
-                File destFile = new File(destDir, sourceFile.getName());
-                FileInputStream fromFileStream = null;
-                BufferedInputStream fromBufferedStream = null;
-                FileOutputStream destStream = null;
-                byte[] buffer = new byte[WRITE_BUFFER_SIZE];
-                try {
-                    fromFileStream = new FileInputStream(sourceFile);
-                    fromBufferedStream = new BufferedInputStream(fromFileStream);
-                    destStream = new FileOutputStream(destFile);
-                    int bytesRead;
-                    while ((bytesRead = fromBufferedStream.read(buffer)) > 0) {
-                        destStream.write(buffer, 0, bytesRead);
-                    }
-                } finally {
-                    try {
-                        if (fromFileStream != null) fromFileStream.close();
-                        if (fromBufferedStream != null) fromBufferedStream.close();
-                        if (destStream != null) destStream.close();
-                    } catch (IOException e) {
-                        throw new CodePushUnknownException("Error closing IO resources.", e);
-                    }
-                }
+                copyFile(sourceFile, new File(destDir, sourceFile.getName()));
+            }
+        }
+    }
+
+    public static void copyFile(File sourceFile, File destFile) throws IOException {
+        FileInputStream fromFileStream = null;
+        BufferedInputStream fromBufferedStream = null;
+        FileOutputStream destStream = null;
+        byte[] buffer = new byte[IoBufferPolicy.getBufferSize(IoBufferPolicy.FILE)];
+        try {
+            long startTime = System.nanoTime();
+            fromFileStream = new FileInputStream(sourceFile);
+            fromBufferedStream = new BufferedInputStream(fromFileStream);
+            destStream = new FileOutputStream(destFile);
+            int bytesRead;
+            while ((bytesRead = fromBufferedStream.read(buffer)) > 0) {
+                destStream.write(buffer, 0, bytesRead);
+            }
+            IoBufferPolicy.recordThroughput(IoBufferPolicy.FILE, sourceFile.length(), System.nanoTime() - startTime);
+        } finally {
+            try {
+                if (fromFileStream != null) fromFileStream.close();
+                if (fromBufferedStream != null) fromBufferedStream.close();
+                if (destStream != null) destStream.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    public static void writeStreamToFile(InputStream inputStream, File destFile) throws IOException {
+        FileOutputStream destStream = null;
+        byte[] buffer = new byte[IoBufferPolicy.getBufferSize(IoBufferPolicy.FILE)];
+        try {
+            destStream = new FileOutputStream(destFile);
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) > 0) {
+                destStream.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            try {
+                if (destStream != null) destStream.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
             }
         }
     }
@@ -123,7 +160,7 @@ public class FileUtils {
         }
     }
 
-    private static String validateFileName(String fileName, File destinationFolder) throws IOException {
+    static String validateFileName(String fileName, File destinationFolder) throws IOException {
         String destinationFolderCanonicalPath = destinationFolder.getCanonicalPath() + File.separator;
 
         File file = new File(destinationFolderCanonicalPath, fileName);
@@ -136,61 +173,398 @@ public class FileUtils {
         return canonicalPath;
     }
 
-    public static void unzipFile(File zipFile, String destination) throws IOException {
-        FileInputStream fileStream = null;
-        BufferedInputStream bufferedStream = null;
-        ZipInputStream zipStream = null;
+    // Reads the uncompressed size of every entry from the central directory at the end of a zip
+    // archive, without extracting it. Returns null if the file has no readable central directory.
+    static Map<String, Long> readZipEntrySizes(File zipFile) throws IOException {
+        RandomAccessFile file = null;
         try {
-            fileStream = new FileInputStream(zipFile);
-            bufferedStream = new BufferedInputStream(fileStream);
-            zipStream = new ZipInputStream(bufferedStream);
-            ZipEntry entry;
-
-            File destinationFolder = new File(destination);
-            if (destinationFolder.exists()) {
-                deleteFileOrFolderSilently(destinationFolder);
+            file = new RandomAccessFile(zipFile, "r");
+            long endOfCentralDirectoryOffset = findZipEndOfCentralDirectory(file);
+            if (endOfCentralDirectoryOffset < 0) {
+                return null;
             }
 
-            destinationFolder.mkdirs();
+            byte[] record = new byte[ZIP_END_OF_CENTRAL_DIRECTORY_SIZE];
+            file.seek(endOfCentralDirectoryOffset);
+            file.readFully(record);
+            long entryCount = getZipShort(record, 10);
+            long centralDirectoryOffset = getZipInt(record, 16);
+            if (entryCount == 0xFFFF || centralDirectoryOffset == ZIP64_MAGIC) {
+                // The real values are in the Zip64 end of central directory record, which the
+                // locator right before the regular record points to.
+                if (endOfCentralDirectoryOffset < ZIP64_LOCATOR_SIZE) {
+                    return null;
+                }
+
+                byte[] locator = new byte[ZIP64_LOCATOR_SIZE];
+                file.seek(endOfCentralDirectoryOffset - ZIP64_LOCATOR_SIZE);
+                file.readFully(locator);
+                if (getZipInt(locator, 0) != ZIP64_LOCATOR_SIGNATURE) {
+                    return null;
+                }
 
-            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
-            while ((entry = zipStream.getNextEntry()) != null) {
-                String fileName = validateFileName(entry.getName(), destinationFolder);
-                File file = new File(fileName);
-                if (entry.isDirectory()) {
-                    file.mkdirs();
-                } else {
-                    File parent = file.getParentFile();
-                    if (!parent.exists()) {
-                        parent.mkdirs();
-                    }
+                byte[] zip64Record = new byte[56];
+                file.seek(getZipLong(locator, 8));
+                file.readFully(zip64Record);
+                if (getZipInt(zip64Record, 0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    return null;
+                }
 
-                    FileOutputStream fout = new FileOutputStream(file);
-                    try {
-                        int numBytesRead;
-                        while ((numBytesRead = zipStream.read(buffer)) != -1) {
-                            fout.write(buffer, 0, numBytesRead);
+                entryCount = getZipLong(zip64Record, 32);
+                centralDirectoryOffset = getZipLong(zip64Record, 48);
+            }
+
+            Map<String, Long> entrySizes = new HashMap<>();
+            byte[] header = new byte[ZIP_CENTRAL_HEADER_SIZE];
+            file.seek(centralDirectoryOffset);
+            for (long i = 0; i < entryCount; i++) {
+                file.readFully(header);
+                if (getZipInt(header, 0) != ZIP_CENTRAL_HEADER_SIGNATURE) {
+                    return null;
+                }
+
+                long size = getZipInt(header, 24);
+                byte[] name = new byte[getZipShort(header, 28)];
+                byte[] extra = new byte[getZipShort(header, 30)];
+                file.readFully(name);
+                file.readFully(extra);
+                file.skipBytes(getZipShort(header, 32));
+                if (size == ZIP64_MAGIC) {
+                    // The Zip64 extra field starts with the uncompressed size when it overflowed.
+                    for (int offset = 0; offset + 4 <= extra.length; offset += 4 + getZipShort(extra, offset + 2)) {
+                        if (getZipShort(extra, offset) == ZIP64_EXTRA_ID && offset + 12 <= extra.length) {
+                            size = getZipLong(extra, offset + 4);
+                            break;
                         }
-                    } finally {
-                        fout.close();
                     }
                 }
-                long time = entry.getTime();
-                if (time > 0) {
-                    file.setLastModified(time);
+
+                if (size < 0) {
+                    return null;
                 }
+
+                entrySizes.put(new String(name, "UTF-8"), size);
             }
+
+            return entrySizes;
         } finally {
             try {
-                if (zipStream != null) zipStream.close();
-                if (bufferedStream != null) bufferedStream.close();
-                if (fileStream != null) fileStream.close();
+                if (file != null) file.close();
             } catch (IOException e) {
                 throw new CodePushUnknownException("Error closing IO resources.", e);
             }
         }
     }
 
+    private static long findZipEndOfCentralDirectory(RandomAccessFile file) throws IOException {
+        // The record is followed by a comment of at most 64 KB.
+        long length = file.length();
+        int searchLength = (int) Math.min(length, ZIP_END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+        byte[] tail = new byte[searchLength];
+        file.seek(length - searchLength);
+        file.readFully(tail);
+        for (int offset = searchLength - ZIP_END_OF_CENTRAL_DIRECTORY_SIZE; offset >= 0; offset--) {
+            if (getZipInt(tail, offset) == ZIP_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return length - searchLength + offset;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int getZipShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static long getZipInt(byte[] data, int offset) {
+        return (getZipShort(data, offset) | (long) getZipShort(data, offset + 2) << 16);
+    }
+
+    private static long getZipLong(byte[] data, int offset) {
+        return getZipInt(data, offset) | getZipInt(data, offset + 4) << 32;
+    }
+
+    // Writes each extracted file as it is, without transforming it.
+    static final ArchiveEntryWriter PLAIN_ENTRY_WRITER = new ArchiveEntryWriter() {
+        @Override
+        public void write(String relativePath, InputStream contents, File file) throws IOException {
+            writeStreamToFile(contents, file);
+        }
+    };
+
+    static void extractZipEntries(Zip64InputStream zipStream, File destinationFolder) throws IOException {
+        extractZipEntries(zipStream, destinationFolder, PLAIN_ENTRY_WRITER);
+    }
+
+    static void extractZipEntries(Zip64InputStream zipStream, File destinationFolder, ArchiveEntryWriter entryWriter) throws IOException {
+        ZipEntry entry;
+        while ((entry = zipStream.getNextEntry()) != null) {
+            String fileName = validateFileName(entry.getName(), destinationFolder);
+            File file = new File(fileName);
+            if (entry.isDirectory()) {
+                file.mkdirs();
+            } else {
+                File parent = file.getParentFile();
+                if (!parent.exists()) {
+                    parent.mkdirs();
+                }
+
+                // The next entry skips whatever the writer leaves unread.
+                entryWriter.write(entry.getName(), zipStream, file);
+            }
+            long time = entry.getTime();
+            if (time > 0) {
+                file.setLastModified(time);
+            }
+        }
+    }
+
+    // Extracts a ustar/pax/GNU tar stream. Links and special files are skipped, since update
+    // contents are always plain files and a link could point outside of the package folder.
+    static void extractTarEntries(InputStream tarStream, File destinationFolder) throws IOException {
+        extractTarEntries(tarStream, destinationFolder, PLAIN_ENTRY_WRITER);
+    }
+
+    static void extractTarEntries(InputStream tarStream, File destinationFolder, ArchiveEntryWriter entryWriter) throws IOException {
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        byte[] buffer = new byte[IoBufferPolicy.getBufferSize(IoBufferPolicy.FILE)];
+        String longName = null;
+        long paxSize = -1;
+
+        while (readTarBlock(tarStream, header)) {
+            if (isZeroBlock(header)) {
+                // End of archive marker.
+                break;
+            }
+
+            if (getTarHeaderChecksum(header) != parseTarNumber(header, 148, 8)) {
+                throw new IOException("Invalid tar header checksum.");
+            }
+
+            char type = (char) header[156];
+            if (type == 'x' || type == 'L') {
+                // Extended headers describe the entry that follows them.
+                byte[] extendedHeader = readTarEntryData(tarStream, parseTarNumber(header, 124, 12));
+                if (type == 'L') {
+                    longName = trimNulls(new String(extendedHeader, "UTF-8"));
+                } else {
+                    String paxPath = getPaxRecord(extendedHeader, "path");
+                    if (paxPath != null) longName = paxPath;
+                    String paxSizeValue = getPaxRecord(extendedHeader, "size");
+                    if (paxSizeValue != null) paxSize = parsePaxSize(paxSizeValue);
+                }
+
+                continue;
+            }
+
+            long size = paxSize >= 0 ? paxSize : parseTarNumber(header, 124, 12);
+            String name = longName != null ? longName : getTarEntryName(header);
+            longName = null;
+            paxSize = -1;
+
+            if (name.startsWith("./")) {
+                name = name.substring(2);
+            }
+
+            boolean isRegularFile = type == '0' || type == '\0' || type == '7';
+            if (name.isEmpty() || (!isRegularFile && type != '5')) {
+                if (!name.isEmpty()) {
+                    CodePushUtils.log("Skipping unsupported tar entry " + name + " of type " + type);
+                }
+
+                skipTarEntryData(tarStream, size, buffer);
+                continue;
+            }
+
+            File file = new File(validateFileName(name, destinationFolder));
+            if (type == '5') {
+                file.mkdirs();
+                skipTarEntryData(tarStream, size, buffer);
+            } else {
+                File parent = file.getParentFile();
+                if (!parent.exists()) {
+                    parent.mkdirs();
+                }
+
+                BoundedInputStream entryStream = new BoundedInputStream(tarStream, size);
+                entryWriter.write(name, entryStream, file);
+                skipTarBytes(tarStream, entryStream.getRemaining() + getTarPadding(size), buffer);
+            }
+
+            long time = parseTarNumber(header, 136, 12);
+            if (time > 0) {
+                file.setLastModified(time * 1000);
+            }
+        }
+    }
+
+    private static boolean readTarBlock(InputStream tarStream, byte[] block) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            int numBytesRead = tarStream.read(block, offset, block.length - offset);
+            if (numBytesRead < 0) {
+                if (offset == 0) {
+                    // Some writers omit the end of archive marker.
+                    return false;
+                }
+
+                throw new EOFException("Unexpected end of tar archive.");
+            }
+
+            offset += numBytesRead;
+        }
+
+        return true;
+    }
+
+    private static byte[] readTarEntryData(InputStream tarStream, long size) throws IOException {
+        if (size > MAX_TAR_EXTENDED_HEADER_SIZE) {
+            throw new IOException("Tar extended header is too large.");
+        }
+
+        byte[] data = new byte[(int) size];
+        int offset = 0;
+        while (offset < data.length) {
+            int numBytesRead = tarStream.read(data, offset, data.length - offset);
+            if (numBytesRead < 0) {
+                throw new EOFException("Unexpected end of tar archive.");
+            }
+
+            offset += numBytesRead;
+        }
+
+        skipTarBytes(tarStream, getTarPadding(size), new byte[TAR_BLOCK_SIZE]);
+        return data;
+    }
+
+    private static void skipTarEntryData(InputStream tarStream, long size, byte[] buffer) throws IOException {
+        skipTarBytes(tarStream, size + getTarPadding(size), buffer);
+    }
+
+    private static void skipTarBytes(InputStream tarStream, long count, byte[] buffer) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            int numBytesRead = tarStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (numBytesRead < 0) {
+                throw new EOFException("Unexpected end of tar archive.");
+            }
+
+            remaining -= numBytesRead;
+        }
+    }
+
+    private static long getTarPadding(long size) {
+        return (TAR_BLOCK_SIZE - size % TAR_BLOCK_SIZE) % TAR_BLOCK_SIZE;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) return false;
+        }
+
+        return true;
+    }
+
+    private static long getTarHeaderChecksum(byte[] header) {
+        long checksum = 0;
+        for (int i = 0; i < header.length; i++) {
+            // The checksum field itself counts as spaces.
+            checksum += (i >= 148 && i < 156) ? ' ' : header[i] & 0xFF;
+        }
+
+        return checksum;
+    }
+
+    private static String getTarEntryName(byte[] header) throws IOException {
+        String name = trimNulls(new String(header, 0, 100, "UTF-8"));
+        boolean isUstar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r';
+        if (isUstar) {
+            String prefix = trimNulls(new String(header, 345, 155, "UTF-8"));
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+
+        return name;
+    }
+
+    // Numeric fields are NUL or space terminated octal, or big-endian binary when the high bit is set.
+    private static long parseTarNumber(byte[] header, int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = 0;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (header[offset + i] & 0xFF);
+            }
+
+            return value;
+        }
+
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0 || (b == ' ' && value > 0)) {
+                break;
+            } else if (b == ' ') {
+                continue;
+            } else if (b < '0' || b > '7') {
+                throw new IOException("Invalid number in tar header.");
+            }
+
+            value = (value << 3) + (b - '0');
+        }
+
+        return value;
+    }
+
+    // Pax records have the form "<length> <key>=<value>\n", where the length counts bytes.
+    private static String getPaxRecord(byte[] extendedHeader, String key) throws IOException {
+        int position = 0;
+        while (position < extendedHeader.length) {
+            int recordLength = 0;
+            int index = position;
+            while (index < extendedHeader.length && extendedHeader[index] >= '0' && extendedHeader[index] <= '9') {
+                recordLength = recordLength * 10 + (extendedHeader[index++] - '0');
+            }
+
+            int end = position + recordLength;
+            if (index == position || index >= extendedHeader.length || extendedHeader[index] != ' ' ||
+                    end > extendedHeader.length || end <= index + 1 || extendedHeader[end - 1] != '\n') {
+                throw new IOException("Invalid pax extended header.");
+            }
+
+            int equals = index + 1;
+            while (equals < end && extendedHeader[equals] != '=') {
+                equals++;
+            }
+
+            if (equals < end && new String(extendedHeader, index + 1, equals - index - 1, "UTF-8").equals(key)) {
+                return new String(extendedHeader, equals + 1, end - equals - 2, "UTF-8");
+            }
+
+            position = end;
+        }
+
+        return null;
+    }
+
+    private static long parsePaxSize(String value) {
+        try {
+            long size = Long.parseLong(value);
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+
+        throw new CodePushInvalidUpdateException("Invalid size \"" + value + "\" in pax extended header.");
+    }
+
+    private static String trimNulls(String value) {
+        int end = value.indexOf('\0');
+        return end < 0 ? value : value.substring(0, end);
+    }
+
     public static void writeStringToFile(String content, String filePath) throws IOException {
         PrintWriter out = null;
         try {
@@ -0,0 +1,183 @@
+package com.microsoft.codepush.react;
+
+import android.os.Build;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+
+// Default transport. Instead of calling disconnect() after every transfer it closes the fully
+// read response body, which hands the socket back to the platform's keep-alive pool so that
+// subsequent requests to the same host skip the TCP and TLS handshakes.
+class HttpURLConnectionTransport implements CodePushHttpTransport {
+
+    // Unread bodies up to this size are drained so the connection can still be reused,
+    // anything larger is cheaper to abandon.
+    private static final int MAX_DRAIN_BYTES = 1024 * 8;
+
+    @Override
+    public CodePushHttpResponse execute(CodePushHttpRequest request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) (request.getUrl().openConnection());
+
+        if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP &&
+            request.getUrl().toString().startsWith("https")) {
+            try {
+                ((HttpsURLConnection)connection).setSSLSocketFactory(TLSSocketFactory.getInstance());
+            } catch (Exception e) {
+                throw new CodePushUnknownException("Error set SSLSocketFactory. ", e);
+            }
+        }
+
+        connection.setRequestMethod(request.getMethod());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        try {
+            connection.getResponseCode();
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+
+        return new Response(connection);
+    }
+
+    private static class Response implements CodePushHttpResponse {
+        private final HttpURLConnection mConnection;
+        private Body mBody;
+
+        Response(HttpURLConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public int getStatusCode() {
+            try {
+                return mConnection.getResponseCode();
+            } catch (IOException e) {
+                // The response code has already been read in execute().
+                throw new CodePushUnknownException("Unable to read the response status.", e);
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            // HttpURLConnection.getContentLength() is an int and reports -1 for bodies over 2 GB,
+            // while getContentLengthLong() needs API level 24.
+            if (mConnection.getHeaderField("Transfer-Encoding") != null) {
+                return -1;
+            }
+
+            String contentLength = mConnection.getHeaderField("Content-Length");
+            if (contentLength == null) {
+                return -1;
+            }
+
+            try {
+                return Math.max(-1, Long.parseLong(contentLength.trim()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream stream = getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getErrorStream()
+                        : mConnection.getInputStream();
+                mBody = new Body(stream != null ? stream : new ByteArrayInputStream(new byte[0]));
+            }
+
+            return mBody;
+        }
+
+        @Override
+        public void close() {
+            try {
+                Body body = (Body) getBody();
+                if (!body.isExhausted() && (body.isClosed() || !body.drain())) {
+                    // The body was not fully consumed, so the connection cannot be reused.
+                    body.close();
+                    mConnection.disconnect();
+                } else {
+                    body.close();
+                }
+            } catch (IOException e) {
+                mConnection.disconnect();
+            }
+        }
+    }
+
+    // Tracks whether the body was read to the end, which is what allows the connection to be reused.
+    private static class Body extends FilterInputStream {
+        private boolean mIsExhausted = false;
+        private boolean mIsClosed = false;
+
+        Body(InputStream in) {
+            super(in);
+        }
+
+        boolean isClosed() {
+            return mIsClosed;
+        }
+
+        boolean isExhausted() {
+            return mIsExhausted;
+        }
+
+        boolean drain() throws IOException {
+            byte[] buffer = new byte[MAX_DRAIN_BYTES];
+            int drainedBytes = 0;
+            while (drainedBytes < MAX_DRAIN_BYTES) {
+                int numBytesRead = read(buffer, 0, MAX_DRAIN_BYTES - drainedBytes);
+                if (numBytesRead < 0) {
+                    return true;
+                }
+
+                drainedBytes += numBytesRead;
+            }
+
+            return mIsExhausted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result < 0) {
+                mIsExhausted = true;
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = super.read(buffer, offset, length);
+            if (result < 0) {
+                mIsExhausted = true;
+            }
+
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mIsClosed) {
+                mIsClosed = true;
+                super.close();
+            }
+        }
+    }
+}
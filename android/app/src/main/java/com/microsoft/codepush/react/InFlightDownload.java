@@ -0,0 +1,86 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// A running package download that later requests for the same package attach to. It forwards
+// progress to every attached callback, hands its outcome to everyone waiting for it and carries
+// the cancellation request that the download checks between reads.
+class InFlightDownload implements DownloadProgressCallback {
+    private final List<DownloadProgressCallback> mProgressCallbacks = new CopyOnWriteArrayList<>();
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+    private final CountDownLatch mCancelled = new CountDownLatch(1);
+    private volatile DownloadProgress mLatestProgress;
+    private volatile Throwable mError;
+
+    public void addProgressCallback(DownloadProgressCallback progressCallback) {
+        mProgressCallbacks.add(progressCallback);
+        DownloadProgress latestProgress = mLatestProgress;
+        if (latestProgress != null) {
+            // Let a late caller start from the current progress instead of zero.
+            progressCallback.call(latestProgress);
+        }
+    }
+
+    @Override
+    public void call(DownloadProgress downloadProgress) {
+        mLatestProgress = downloadProgress;
+        for (DownloadProgressCallback progressCallback : mProgressCallbacks) {
+            progressCallback.call(downloadProgress);
+        }
+    }
+
+    public void cancel() {
+        mCancelled.countDown();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled.getCount() == 0;
+    }
+
+    public void throwIfCancelled() throws CodePushDownloadCancelledException {
+        if (isCancelled()) {
+            throw new CodePushDownloadCancelledException();
+        }
+    }
+
+    // Sleeps like Thread.sleep(), but ends with an exception as soon as the download is cancelled.
+    public void sleep(long millis) throws IOException {
+        try {
+            if (mCancelled.await(millis, TimeUnit.MILLISECONDS)) {
+                throw new CodePushDownloadCancelledException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry the download.");
+        }
+    }
+
+    public void finish(Throwable error) {
+        mError = error;
+        mFinished.countDown();
+    }
+
+    // Waits for the download to finish and rethrows the error it failed with.
+    public void await() throws IOException {
+        try {
+            mFinished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a running download.");
+        }
+
+        Throwable error = mError;
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.microsoft.codepush.react;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.concurrent.TimeUnit;
+
+// Picks buffer sizes for downloads and for file copies and extraction. A buffer is sized to
+// hold what the previous operations of the same kind transferred in a few milliseconds, so
+// fast links and storage do fewer reads and writes, and is capped by the app's heap budget.
+class IoBufferPolicy {
+
+    static final int DOWNLOAD = 0;
+    static final int FILE = 1;
+
+    private static final int MIN_BUFFER_SIZE = 1024 * 8;
+    private static final int LOW_RAM_MAX_BUFFER_SIZE = 1024 * 64;
+    private static final int SMALL_HEAP_MAX_BUFFER_SIZE = 1024 * 128;
+    private static final int SMALL_HEAP_MEMORY_CLASS_MB = 128;
+    private static final int[] INITIAL_BUFFER_SIZES = { CodePushConstants.DOWNLOAD_BUFFER_SIZE, 1024 * 32 };
+
+    // How long the buffer should take to fill at the measured rate.
+    private static final long TARGET_FILL_MILLIS = 20;
+    // Shorter transfers are dominated by setup costs and do not say much about the rate.
+    private static final long MIN_SAMPLE_BYTES = 1024 * 64;
+    // Weight of the newest sample in the moving average.
+    private static final double SMOOTHING_FACTOR = 0.3;
+
+    private static int sMaxBufferSize = CodePushConstants.DOWNLOAD_BUFFER_SIZE;
+    private static final double[] sBytesPerMilli = { -1, -1 };
+
+    public static synchronized void init(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return;
+        }
+
+        boolean isLowRamDevice = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice();
+        if (isLowRamDevice) {
+            sMaxBufferSize = LOW_RAM_MAX_BUFFER_SIZE;
+        } else if (activityManager.getMemoryClass() < SMALL_HEAP_MEMORY_CLASS_MB) {
+            sMaxBufferSize = SMALL_HEAP_MAX_BUFFER_SIZE;
+        } else {
+            sMaxBufferSize = CodePushConstants.DOWNLOAD_BUFFER_SIZE;
+        }
+    }
+
+    public static int getBufferSize(int operation) {
+        return getBufferSize(operation, 1);
+    }
+
+    // concurrentStreams operations of the same kind running at once share the heap budget
+    // and the measured rate.
+    public static synchronized int getBufferSize(int operation, int concurrentStreams) {
+        int maxBufferSize = Math.max(MIN_BUFFER_SIZE, sMaxBufferSize / Math.max(1, concurrentStreams));
+        if (sBytesPerMilli[operation] < 0) {
+            return Math.min(INITIAL_BUFFER_SIZES[operation], maxBufferSize);
+        }
+
+        long targetSize = (long) (sBytesPerMilli[operation] * TARGET_FILL_MILLIS / Math.max(1, concurrentStreams));
+        int bufferSize = Integer.highestOneBit((int) Math.min(targetSize, maxBufferSize));
+        return Math.max(MIN_BUFFER_SIZE, bufferSize);
+    }
+
+    public static synchronized void recordThroughput(int operation, long bytes, long durationNanos) {
+        if (bytes < MIN_SAMPLE_BYTES || durationNanos <= 0) {
+            return;
+        }
+
+        double sample = bytes / ((double) durationNanos / TimeUnit.MILLISECONDS.toNanos(1));
+        double current = sBytesPerMilli[operation];
+        sBytesPerMilli[operation] = current < 0 ? sample : current + SMOOTHING_FACTOR * (sample - current);
+    }
+}
@@ -0,0 +1,55 @@
+package com.microsoft.codepush.react;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+// An update package that is already on the device, e.g. placed there by a device management
+// agent, given as a file path, a file:// URI or a content:// URI. The package is only read,
+// it is left in place once it has been saved.
+class LocalPackageSource {
+
+    private final Context mContext;
+    private final String mPathOrUri;
+
+    public LocalPackageSource(Context context, String pathOrUri) {
+        mContext = context;
+        mPathOrUri = pathOrUri;
+    }
+
+    public InputStream open() throws IOException {
+        File file = getFile();
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+
+        InputStream inputStream = mContext.getContentResolver().openInputStream(Uri.parse(mPathOrUri));
+        if (inputStream == null) {
+            throw new FileNotFoundException("Unable to open update package " + mPathOrUri + ".");
+        }
+
+        return inputStream;
+    }
+
+    // Returns null if the package is only available as a content:// stream.
+    public File getFile() {
+        if (mPathOrUri.startsWith(ContentResolver.SCHEME_CONTENT + ":")) {
+            return null;
+        } else if (mPathOrUri.startsWith(ContentResolver.SCHEME_FILE + ":")) {
+            return new File(Uri.parse(mPathOrUri).getPath());
+        }
+
+        return new File(mPathOrUri);
+    }
+
+    @Override
+    public String toString() {
+        return mPathOrUri;
+    }
+}
@@ -0,0 +1,272 @@
+package com.microsoft.codepush.react;
+
+import io.github.pixee.security.HostValidator;
+import io.github.pixee.security.Urls;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+// Builds a package from its file manifest, a JSON object that maps the relative path of every
+// file to the SHA-256 of its contents. Files whose contents the current package already has are
+// copied from it, and only the others are fetched by their hash from a content-addressed
+// endpoint, over a bounded number of parallel connections. Instead of the hash alone, a file
+// may map to {"hash": "...", "size": <bytes>}. When the manifest gives the size of every file
+// that is fetched, progress reports the total size from the start.
+class ManifestPackageFetcher {
+
+    private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final CodePushHttpTransport mHttpTransport;
+    private final URL mManifestUrl;
+    private final String mBlobBaseUrl;
+    private final int mMaxConcurrentFetches;
+    private final BandwidthLimiter mBandwidthLimiter;
+    private final CodePushRetryPolicy mRetryPolicy;
+
+    private final Map<String, Long> mBlobSizes = new HashMap<>();
+    private final Object mProgressLock = new Object();
+    private long mTotalBytes = -1;
+    private long mReceivedBytes = 0;
+    private volatile boolean mIsAborted = false;
+
+    public ManifestPackageFetcher(CodePushHttpTransport httpTransport, URL manifestUrl, String blobBaseUrl, int maxConcurrentFetches,
+                                  BandwidthLimiter bandwidthLimiter, CodePushRetryPolicy retryPolicy) {
+        mHttpTransport = httpTransport;
+        mManifestUrl = manifestUrl;
+        mBlobBaseUrl = blobBaseUrl;
+        mMaxConcurrentFetches = maxConcurrentFetches;
+        mBandwidthLimiter = bandwidthLimiter;
+        mRetryPolicy = retryPolicy;
+    }
+
+    public void fetch(String currentPackageFolderPath, File destinationFolder, final InFlightDownload download) throws IOException {
+        Map<String, String> manifest = readManifest();
+        Map<String, File> currentFilesByHash = currentPackageFolderPath == null ? Collections.<String, File>emptyMap() :
+                CodePushUpdateUtils.getFilesByHash(new File(currentPackageFolderPath), "");
+
+        // Files with the same contents are fetched once and copied.
+        final Map<String, List<File>> missingFilesByHash = new LinkedHashMap<>();
+        int reusedFileCount = 0;
+        destinationFolder.mkdirs();
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            download.throwIfCancelled();
+            File file = new File(FileUtils.validateFileName(entry.getKey(), destinationFolder));
+            file.getParentFile().mkdirs();
+
+            File currentFile = currentFilesByHash.get(entry.getValue());
+            if (currentFile != null) {
+                FileUtils.copyFile(currentFile, file);
+                reusedFileCount++;
+            } else {
+                List<File> files = missingFilesByHash.get(entry.getValue());
+                if (files == null) {
+                    files = new ArrayList<>();
+                    missingFilesByHash.put(entry.getValue(), files);
+                }
+
+                files.add(file);
+            }
+        }
+
+        CodePushUtils.log("Reusing " + reusedFileCount + " files of the current package, fetching " + missingFilesByHash.size() + " more.");
+        if (missingFilesByHash.isEmpty()) {
+            return;
+        }
+
+        mTotalBytes = getTotalBytes(missingFilesByHash.keySet());
+        int fetchCount = Math.min(mMaxConcurrentFetches, missingFilesByHash.size());
+        final int bufferSize = IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD, fetchCount);
+        ExecutorService executor = Executors.newFixedThreadPool(fetchCount);
+        try {
+            List<Future<Void>> fetches = new ArrayList<>();
+            for (final Map.Entry<String, List<File>> missingFiles : missingFilesByHash.entrySet()) {
+                fetches.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        fetchBlobWithRetries(missingFiles.getKey(), missingFiles.getValue(), bufferSize, download);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> fetch : fetches) {
+                try {
+                    fetch.get();
+                } catch (ExecutionException e) {
+                    mIsAborted = true;
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+
+                    throw new CodePushUnknownException("Fetching package files failed.", cause);
+                } catch (InterruptedException e) {
+                    mIsAborted = true;
+                    Thread.currentThread().interrupt();
+                    throw new CodePushUnknownException("Fetching package files was interrupted.", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Without the sizes in the manifest, the total is only known once all files have arrived.
+        download.call(new DownloadProgress(mReceivedBytes, mReceivedBytes));
+    }
+
+    private Map<String, String> readManifest() throws IOException {
+        CodePushHttpResponse response = mHttpTransport.execute(CodePushUpdateManager.createDownloadRequest(mManifestUrl));
+        String manifestString;
+        try {
+            CodePushUpdateManager.checkResponseStatus(response, mManifestUrl.toString());
+            manifestString = CodePushUtils.getStringFromInputStream(response.getBody());
+        } finally {
+            response.close();
+        }
+
+        Map<String, String> manifest = new LinkedHashMap<>();
+        try {
+            JSONObject manifestObject = new JSONObject(manifestString);
+            Iterator<String> paths = manifestObject.keys();
+            while (paths.hasNext()) {
+                String path = paths.next();
+                JSONObject fileObject = manifestObject.optJSONObject(path);
+                String hash = fileObject == null ? manifestObject.getString(path) : fileObject.getString("hash");
+                if (!SHA256_PATTERN.matcher(hash).matches()) {
+                    throw new CodePushUnknownException("Invalid hash " + hash + " for " + path + " in package manifest.");
+                }
+
+                manifest.put(path, hash);
+                long size = fileObject == null ? -1 : fileObject.optLong("size", -1);
+                if (size >= 0) {
+                    mBlobSizes.put(hash, size);
+                }
+            }
+        } catch (JSONException e) {
+            throw new CodePushUnknownException("Unable to parse package manifest.", e);
+        }
+
+        return manifest;
+    }
+
+    // Returns -1 if the manifest does not give the size of every blob.
+    private long getTotalBytes(Iterable<String> hashes) {
+        long totalBytes = 0;
+        for (String hash : hashes) {
+            Long size = mBlobSizes.get(hash);
+            if (size == null) {
+                return -1;
+            }
+
+            totalBytes += size;
+        }
+
+        return totalBytes;
+    }
+
+    private void fetchBlobWithRetries(String hash, List<File> files, int bufferSize, InFlightDownload download) throws IOException {
+        int attempt = 1;
+        while (true) {
+            try {
+                fetchBlob(hash, files, bufferSize, download);
+                return;
+            } catch (CodePushDownloadCancelledException e) {
+                throw e;
+            } catch (IOException e) {
+                if (mIsAborted || attempt >= mRetryPolicy.getMaxAttempts() || !mRetryPolicy.isRetryable(e)) {
+                    throw e;
+                }
+
+                download.sleep(mRetryPolicy.getRetryDelayMillis(attempt, e));
+                attempt++;
+            }
+        }
+    }
+
+    // Writes the blob into the first of the files and copies it into the others once its hash
+    // has been checked.
+    private void fetchBlob(String hash, List<File> files, int bufferSize, InFlightDownload download) throws IOException {
+        URL blobUrl = Urls.create(mBlobBaseUrl + hash, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
+        CodePushHttpResponse response = mHttpTransport.execute(CodePushUpdateManager.createDownloadRequest(blobUrl));
+        File file = files.get(0);
+        BufferedInputStream bin = null;
+        FileOutputStream fos = null;
+        long receivedBytes = 0;
+        boolean isFetched = false;
+        try {
+            CodePushUpdateManager.checkResponseStatus(response, blobUrl.toString());
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            bin = new BufferedInputStream(new ThrottledInputStream(new CancellableInputStream(response.getBody(), download), mBandwidthLimiter));
+            fos = new FileOutputStream(file);
+            byte[] data = new byte[bufferSize];
+            int numBytesRead;
+            while (!mIsAborted && (numBytesRead = bin.read(data, 0, data.length)) >= 0) {
+                messageDigest.update(data, 0, numBytesRead);
+                fos.write(data, 0, numBytesRead);
+                receivedBytes += numBytesRead;
+                synchronized (mProgressLock) {
+                    mReceivedBytes += numBytesRead;
+                    download.call(new DownloadProgress(mTotalBytes, mReceivedBytes));
+                }
+            }
+
+            if (mIsAborted) {
+                return;
+            }
+
+            String receivedHash = String.format("%064x", new BigInteger(1, messageDigest.digest()));
+            if (!hash.equals(receivedHash)) {
+                throw new IOException("Received contents with hash " + receivedHash + " for " + blobUrl + ".");
+            }
+
+            isFetched = true;
+        } catch (NoSuchAlgorithmException e) {
+            // Should not happen.
+            throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+        } finally {
+            if (!isFetched) {
+                // A retry starts the blob over, so its bytes must not be counted twice.
+                synchronized (mProgressLock) {
+                    mReceivedBytes -= receivedBytes;
+                }
+            }
+
+            try {
+                if (fos != null) fos.close();
+                if (bin != null) bin.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            } finally {
+                response.close();
+            }
+        }
+
+        for (int i = 1; i < files.size(); i++) {
+            FileUtils.copyFile(file, files.get(i));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.microsoft.codepush.react;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Downloads a package over several parallel connections, each fetching one byte range of the
+// body and writing it at its position in a preallocated file.
+class SegmentedDownloader {
+
+    // Below this size per segment the extra connection setup costs more than it saves.
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private final CodePushHttpTransport mHttpTransport;
+    private final URL mDownloadUrl;
+    private final int mSegmentCount;
+    private final BandwidthLimiter mBandwidthLimiter;
+
+    private final Object mProgressLock = new Object();
+    private long mReceivedBytes = 0;
+    private volatile boolean mIsAborted = false;
+
+    public SegmentedDownloader(CodePushHttpTransport httpTransport, URL downloadUrl, int segmentCount, BandwidthLimiter bandwidthLimiter) {
+        mHttpTransport = httpTransport;
+        mDownloadUrl = downloadUrl;
+        mSegmentCount = segmentCount;
+        mBandwidthLimiter = bandwidthLimiter;
+    }
+
+    // Returns false without touching downloadFile if the server does not support range
+    // requests or the package is too small to split, so that the caller can fall back to a
+    // single-stream download.
+    public boolean download(File downloadFile, final InFlightDownload download) throws IOException {
+        CodePushHttpResponse probeResponse = mHttpTransport.execute(
+                CodePushUpdateManager.createDownloadRequest(mDownloadUrl).setHeader("Range", "bytes=0-0"));
+        long totalBytes;
+        final String validator;
+        try {
+            if (probeResponse.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+                CodePushUtils.log("Server does not support range requests, falling back to a single-stream download.");
+                return false;
+            }
+
+            totalBytes = CodePushUtils.getCompleteLengthFromContentRange(probeResponse.getHeader("Content-Range"));
+            String eTag = probeResponse.getHeader("ETag");
+            validator = eTag != null && !eTag.startsWith("W/") ? eTag : probeResponse.getHeader("Last-Modified");
+        } finally {
+            probeResponse.close();
+        }
+
+        int segmentCount = (int) Math.min(mSegmentCount, totalBytes / MIN_SEGMENT_SIZE);
+        if (segmentCount < 2) {
+            return false;
+        }
+
+        CodePushUtils.log("Downloading " + totalBytes + " bytes in " + segmentCount + " segments.");
+        RandomAccessFile randomAccessFile = null;
+        ExecutorService executor = null;
+        try {
+            randomAccessFile = new RandomAccessFile(downloadFile, "rw");
+            randomAccessFile.setLength(totalBytes);
+            final FileChannel channel = randomAccessFile.getChannel();
+            final long total = totalBytes;
+
+            executor = Executors.newFixedThreadPool(segmentCount);
+            List<Future<Void>> segments = new ArrayList<>();
+            long segmentSize = totalBytes / segmentCount;
+            final int bufferSize = IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD, segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                final long start = i * segmentSize;
+                final long end = (i == segmentCount - 1) ? totalBytes - 1 : start + segmentSize - 1;
+                segments.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        downloadSegment(start, end, validator, channel, total, bufferSize, download);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> segment : segments) {
+                try {
+                    segment.get();
+                } catch (ExecutionException e) {
+                    mIsAborted = true;
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+
+                    throw new CodePushUnknownException("Segmented download failed.", cause);
+                } catch (InterruptedException e) {
+                    mIsAborted = true;
+                    Thread.currentThread().interrupt();
+                    throw new CodePushUnknownException("Segmented download was interrupted.", e);
+                }
+            }
+
+            if (mReceivedBytes != totalBytes) {
+                throw new CodePushUnknownException("Received " + mReceivedBytes + " bytes, expected " + totalBytes);
+            }
+        } finally {
+            if (executor != null) executor.shutdownNow();
+            try {
+                if (randomAccessFile != null) randomAccessFile.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+
+        return true;
+    }
+
+    private void downloadSegment(long start, long end, String validator, FileChannel channel,
+                                 long totalBytes, int bufferSize, InFlightDownload download) throws IOException {
+        CodePushHttpRequest request = CodePushUpdateManager.createDownloadRequest(mDownloadUrl)
+                .setHeader("Range", "bytes=" + start + "-" + end);
+        if (validator != null) {
+            request.setHeader("If-Range", validator);
+        }
+
+        CodePushHttpResponse response = mHttpTransport.execute(request);
+        BufferedInputStream bin = null;
+        try {
+            CodePushUpdateManager.checkResponseStatus(response, mDownloadUrl.toString());
+            if (response.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+                // Either the package changed on the server after the probe or the range was ignored.
+                throw new CodePushUnknownException("Unexpected response " + response.getStatusCode() +
+                        " for segment " + start + "-" + end + ".");
+            }
+
+            bin = new BufferedInputStream(new ThrottledInputStream(new CancellableInputStream(response.getBody(), download), mBandwidthLimiter));
+            byte[] data = new byte[bufferSize];
+            long position = start;
+            int numBytesRead;
+            while (!mIsAborted && (numBytesRead = bin.read(data, 0, data.length)) >= 0) {
+                if (position + numBytesRead > end + 1) {
+                    throw new CodePushUnknownException("Segment " + start + "-" + end + " received more bytes than requested.");
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(data, 0, numBytesRead);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+
+                synchronized (mProgressLock) {
+                    mReceivedBytes += numBytesRead;
+                    download.call(new DownloadProgress(totalBytes, mReceivedBytes));
+                }
+            }
+
+            if (!mIsAborted && position != end + 1) {
+                throw new EOFException("Segment " + start + "-" + end + " ended after " + (position - start) + " bytes.");
+            }
+        } finally {
+            try {
+                if (bin != null) bin.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            } finally {
+                response.close();
+            }
+        }
+    }
+}
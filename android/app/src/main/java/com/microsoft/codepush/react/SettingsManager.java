@@ -7,7 +7,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-public class SettingsManager {
+import java.util.UUID;
+
+public class SettingsManager implements CodePushUpdateCheckClient.CacheStore {
 
     private SharedPreferences mSettings;
 
@@ -15,6 +17,16 @@ public class SettingsManager {
         mSettings = applicationContext.getSharedPreferences(CodePushConstants.CODE_PUSH_PREFERENCES, 0);
     }
 
+    public synchronized String getClientUniqueId() {
+        String clientUniqueId = mSettings.getString(CodePushConstants.CLIENT_UNIQUE_ID_KEY, null);
+        if (clientUniqueId == null) {
+            clientUniqueId = UUID.randomUUID().toString();
+            mSettings.edit().putString(CodePushConstants.CLIENT_UNIQUE_ID_KEY, clientUniqueId).apply();
+        }
+
+        return clientUniqueId;
+    }
+
     public JSONArray getFailedUpdates() {
         String failedUpdatesString = mSettings.getString(CodePushConstants.FAILED_UPDATES_KEY, null);
         if (failedUpdatesString == null) {
@@ -87,6 +99,33 @@ public class SettingsManager {
         mSettings.edit().remove(CodePushConstants.PENDING_UPDATE_KEY).commit();
     }
 
+    @Override
+    public JSONObject getUpdateCheckCache() {
+        String updateCheckCacheString = mSettings.getString(CodePushConstants.UPDATE_CHECK_CACHE_KEY, null);
+        if (updateCheckCacheString == null) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(updateCheckCacheString);
+        } catch (JSONException e) {
+            // Should not happen.
+            CodePushUtils.log("Unable to parse update check cache " + updateCheckCacheString +
+                    " stored in SharedPreferences");
+            return null;
+        }
+    }
+
+    @Override
+    public void saveUpdateCheckCache(JSONObject updateCheckCache) {
+        mSettings.edit().putString(CodePushConstants.UPDATE_CHECK_CACHE_KEY, updateCheckCache.toString()).commit();
+    }
+
+    @Override
+    public void removeUpdateCheckCache() {
+        mSettings.edit().remove(CodePushConstants.UPDATE_CHECK_CACHE_KEY).commit();
+    }
+
     public void saveFailedUpdate(JSONObject failedPackage) {
         try {
             if (isFailedHash(failedPackage.getString(CodePushConstants.PACKAGE_HASH_KEY))) {
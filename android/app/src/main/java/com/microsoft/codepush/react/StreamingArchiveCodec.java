@@ -0,0 +1,11 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+// A codec that hands each file to an ArchiveEntryWriter as it reads it from the archive. The
+// patches of a diff update in an archive of any other codec are applied after extraction.
+interface StreamingArchiveCodec extends CodePushArchiveCodec {
+    void extract(InputStream archiveStream, File destinationFolder, ArchiveEntryWriter entryWriter) throws IOException;
+}
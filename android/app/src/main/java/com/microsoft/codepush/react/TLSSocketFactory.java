@@ -4,20 +4,90 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 public class TLSSocketFactory extends SSLSocketFactory {
 
+    private static final int SESSION_CACHE_SIZE = 32;
+    private static final int SESSION_TIMEOUT_SECONDS = 60 * 60 * 24;
+
+    private static TLSSocketFactory sInstance;
+
+    // Session IDs of recently completed handshakes. A handshake that ends up with an ID that
+    // is already known has resumed a cached session instead of doing a full handshake.
+    private static final Map<ByteBuffer, Boolean> sKnownSessionIds = new LinkedHashMap<ByteBuffer, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+            return size() > SESSION_CACHE_SIZE * 2;
+        }
+    };
+    private static final AtomicLong sFullHandshakeCount = new AtomicLong();
+    private static final AtomicLong sResumedHandshakeCount = new AtomicLong();
+
+    private static final HandshakeCompletedListener sHandshakeListener = new HandshakeCompletedListener() {
+        @Override
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            byte[] sessionId = event.getSession().getId();
+            if (sessionId == null || sessionId.length == 0) {
+                sFullHandshakeCount.incrementAndGet();
+                return;
+            }
+
+            boolean isResumed;
+            synchronized (sKnownSessionIds) {
+                isResumed = sKnownSessionIds.put(ByteBuffer.wrap(sessionId.clone()), Boolean.TRUE) != null;
+            }
+
+            if (isResumed) {
+                sResumedHandshakeCount.incrementAndGet();
+            } else {
+                sFullHandshakeCount.incrementAndGet();
+            }
+        }
+    };
+
     private SSLSocketFactory delegate;
 
+    // Creating and initializing an SSLContext is expensive and every context has its own
+    // session cache, so all connections should share the instance returned from here.
+    public static synchronized TLSSocketFactory getInstance() throws KeyManagementException, NoSuchAlgorithmException {
+        if (sInstance == null) {
+            sInstance = new TLSSocketFactory();
+        }
+
+        return sInstance;
+    }
+
+    public static long getFullHandshakeCount() {
+        return sFullHandshakeCount.get();
+    }
+
+    public static long getResumedHandshakeCount() {
+        return sResumedHandshakeCount.get();
+    }
+
     public TLSSocketFactory() throws KeyManagementException, NoSuchAlgorithmException {
         SSLContext context = SSLContext.getInstance("TLS");
         context.init(null, null, null);
+
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        }
+
         delegate = context.getSocketFactory();
     }
 
@@ -66,6 +136,7 @@ public class TLSSocketFactory extends SSLSocketFactory {
     private Socket enableTLSOnSocket(Socket socket) {
         if (socket != null && (socket instanceof SSLSocket)) {
             ((SSLSocket) socket).setEnabledProtocols(new String[] { "TLSv1.1", "TLSv1.2" });
+            ((SSLSocket) socket).addHandshakeCompletedListener(sHandshakeListener);
         }
         return socket;
     }
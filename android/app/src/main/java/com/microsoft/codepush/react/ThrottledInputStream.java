@@ -0,0 +1,48 @@
+package com.microsoft.codepush.react;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Paces the bytes read from a download through a shared BandwidthLimiter.
+class ThrottledInputStream extends FilterInputStream {
+    private final BandwidthLimiter mLimiter;
+
+    public ThrottledInputStream(InputStream in, BandwidthLimiter limiter) {
+        super(in);
+        mLimiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+        if (result >= 0) {
+            mLimiter.acquire(1);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        // Small reads keep the pace even instead of alternating bursts and long pauses.
+        int result = super.read(buffer, offset, Math.min(length, mLimiter.getMaxReadLength()));
+        if (result > 0) {
+            mLimiter.acquire(result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(n);
+        mLimiter.acquire(result);
+        return result;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
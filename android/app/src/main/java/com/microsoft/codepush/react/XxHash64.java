@@ -0,0 +1,125 @@
+package com.microsoft.codepush.react;
+
+// Streaming XXH64, used to verify the optional content checksum of Zstandard frames.
+class XxHash64 {
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private final long mSeed;
+    private long mV1;
+    private long mV2;
+    private long mV3;
+    private long mV4;
+    private long mTotalLength = 0;
+    private final byte[] mBuffer = new byte[32];
+    private int mBufferSize = 0;
+
+    public XxHash64(long seed) {
+        mSeed = seed;
+        mV1 = seed + PRIME64_1 + PRIME64_2;
+        mV2 = seed + PRIME64_2;
+        mV3 = seed;
+        mV4 = seed - PRIME64_1;
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        mTotalLength += length;
+        int end = offset + length;
+
+        if (mBufferSize > 0) {
+            int toCopy = Math.min(32 - mBufferSize, length);
+            System.arraycopy(data, offset, mBuffer, mBufferSize, toCopy);
+            mBufferSize += toCopy;
+            offset += toCopy;
+            if (mBufferSize < 32) {
+                return;
+            }
+
+            processStripe(mBuffer, 0);
+            mBufferSize = 0;
+        }
+
+        while (offset + 32 <= end) {
+            processStripe(data, offset);
+            offset += 32;
+        }
+
+        if (offset < end) {
+            System.arraycopy(data, offset, mBuffer, 0, end - offset);
+            mBufferSize = end - offset;
+        }
+    }
+
+    public long digest() {
+        long hash;
+        if (mTotalLength >= 32) {
+            hash = Long.rotateLeft(mV1, 1) + Long.rotateLeft(mV2, 7) + Long.rotateLeft(mV3, 12) + Long.rotateLeft(mV4, 18);
+            hash = mergeRound(hash, mV1);
+            hash = mergeRound(hash, mV2);
+            hash = mergeRound(hash, mV3);
+            hash = mergeRound(hash, mV4);
+        } else {
+            hash = mSeed + PRIME64_5;
+        }
+
+        hash += mTotalLength;
+
+        int offset = 0;
+        while (offset + 8 <= mBufferSize) {
+            hash ^= round(0, readLong(mBuffer, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+            offset += 8;
+        }
+
+        if (offset + 4 <= mBufferSize) {
+            hash ^= (readInt(mBuffer, offset) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            offset += 4;
+        }
+
+        while (offset < mBufferSize) {
+            hash ^= (mBuffer[offset] & 0xFF) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+            offset++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void processStripe(byte[] data, int offset) {
+        mV1 = round(mV1, readLong(data, offset));
+        mV2 = round(mV2, readLong(data, offset + 8));
+        mV3 = round(mV3, readLong(data, offset + 16));
+        mV4 = round(mV4, readLong(data, offset + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME64_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME64_1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME64_1 + PRIME64_4;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        return (readInt(data, offset) & 0xFFFFFFFFL) | ((long) readInt(data, offset + 4) << 32);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,284 @@
+package com.microsoft.codepush.react;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+// Reads the entries of a zip archive from a stream like ZipInputStream, but also understands the
+// Zip64 extensions used by archives and entries over 4 GB, which the platform ZipInputStream
+// only supports from Android 7.0 on. Entry sizes are tracked here instead of on the ZipEntry,
+// since older ZipEntry implementations reject sizes that do not fit in 32 bits.
+class Zip64InputStream extends InputStream {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int EXTENDED_TIMESTAMP_EXTRA_ID = 0x5455;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int INPUT_BUFFER_SIZE = 1024 * 8;
+
+    private final PushbackInputStream mIn;
+    private final Inflater mInflater = new Inflater(true);
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mInputBuffer = new byte[INPUT_BUFFER_SIZE];
+    private int mInputLength = 0;
+
+    private ZipEntry mEntry;
+    private boolean mIsEntryFinished;
+    private boolean mHasDataDescriptor;
+    private boolean mIsZip64;
+    private long mExpectedCrc;
+    private long mExpectedSize;
+    private long mExpectedCompressedSize;
+    private long mRemainingStoredBytes;
+    private long mWrittenBytes;
+
+    public Zip64InputStream(InputStream in) {
+        mIn = new PushbackInputStream(in, INPUT_BUFFER_SIZE);
+    }
+
+    // Returns null once the entries are followed by the central directory or the stream ends.
+    public ZipEntry getNextEntry() throws IOException {
+        closeEntry();
+
+        byte[] header = new byte[LOCAL_HEADER_SIZE];
+        int headerLength = readAtMost(header, 0, header.length);
+        if (headerLength == 0) {
+            return null;
+        } else if (headerLength < 4 || getInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+            return null;
+        } else if (headerLength < header.length) {
+            throw new EOFException("Unexpected end of zip header.");
+        }
+
+        int flags = getShort(header, 6);
+        if ((flags & FLAG_ENCRYPTED) != 0) {
+            throw new ZipException("Encrypted zip entries are not supported.");
+        }
+
+        int method = getShort(header, 8);
+        long dosTime = getInt(header, 10) & 0xFFFFFFFFL;
+        long crc = getInt(header, 14) & 0xFFFFFFFFL;
+        long compressedSize = getInt(header, 18) & 0xFFFFFFFFL;
+        long size = getInt(header, 22) & 0xFFFFFFFFL;
+        byte[] name = new byte[getShort(header, 26)];
+        byte[] extra = new byte[getShort(header, 28)];
+        readFully(name, 0, name.length);
+        readFully(extra, 0, extra.length);
+
+        ZipEntry entry = new ZipEntry(new String(name, "UTF-8"));
+        entry.setTime(dosToJavaTime(dosTime));
+        mIsZip64 = false;
+        int offset = 0;
+        while (offset + 4 <= extra.length) {
+            int id = getShort(extra, offset);
+            int dataStart = offset + 4;
+            int dataEnd = dataStart + getShort(extra, offset + 2);
+            if (dataEnd > extra.length) {
+                break;
+            }
+
+            if (id == ZIP64_EXTRA_ID) {
+                // Only the sizes that overflowed the header fields are present, in this order.
+                mIsZip64 = true;
+                int position = dataStart;
+                if (size == ZIP64_MAGIC && position + 8 <= dataEnd) {
+                    size = getLong(extra, position);
+                    position += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC && position + 8 <= dataEnd) {
+                    compressedSize = getLong(extra, position);
+                }
+            } else if (id == EXTENDED_TIMESTAMP_EXTRA_ID && dataEnd - dataStart >= 5 && (extra[dataStart] & 1) != 0) {
+                entry.setTime((getInt(extra, dataStart + 1) & 0xFFFFFFFFL) * 1000);
+            }
+
+            offset = dataEnd;
+        }
+
+        if (size < 0 || compressedSize < 0) {
+            throw new ZipException("Invalid size for zip entry " + entry.getName() + ".");
+        }
+
+        mHasDataDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+        if (method == ZipEntry.STORED) {
+            if (mHasDataDescriptor) {
+                throw new ZipException("Stored zip entries with a data descriptor are not supported.");
+            }
+
+            mRemainingStoredBytes = compressedSize;
+        } else if (method == ZipEntry.DEFLATED) {
+            mInflater.reset();
+            mInputLength = 0;
+        } else {
+            throw new ZipException("Unsupported compression method " + method + " for zip entry " + entry.getName() + ".");
+        }
+
+        entry.setMethod(method);
+        mExpectedCrc = crc;
+        mExpectedSize = size;
+        mExpectedCompressedSize = compressedSize;
+        mCrc.reset();
+        mWrittenBytes = 0;
+        mIsEntryFinished = false;
+        mEntry = entry;
+        return entry;
+    }
+
+    public void closeEntry() throws IOException {
+        if (mEntry == null) {
+            return;
+        }
+
+        byte[] buffer = new byte[INPUT_BUFFER_SIZE];
+        while (read(buffer, 0, buffer.length) >= 0) ;
+        mEntry = null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] data = new byte[1];
+        return read(data, 0, 1) < 0 ? -1 : data[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (mEntry == null || mIsEntryFinished) {
+            return -1;
+        } else if (length == 0) {
+            return 0;
+        }
+
+        int numBytesRead;
+        if (mEntry.getMethod() == ZipEntry.STORED) {
+            if (mRemainingStoredBytes == 0) {
+                finishEntry(mExpectedCompressedSize);
+                return -1;
+            }
+
+            numBytesRead = mIn.read(buffer, offset, (int) Math.min(length, mRemainingStoredBytes));
+            if (numBytesRead < 0) {
+                throw new EOFException("Unexpected end of zip entry " + mEntry.getName() + ".");
+            }
+
+            mRemainingStoredBytes -= numBytesRead;
+        } else {
+            try {
+                while ((numBytesRead = mInflater.inflate(buffer, offset, length)) == 0) {
+                    if (mInflater.finished()) {
+                        // Bytes read past the end of the entry belong to whatever follows it.
+                        int remaining = mInflater.getRemaining();
+                        if (remaining > 0) {
+                            mIn.unread(mInputBuffer, mInputLength - remaining, remaining);
+                        }
+
+                        finishEntry(mInflater.getBytesRead());
+                        return -1;
+                    } else if (mInflater.needsDictionary()) {
+                        throw new ZipException("Invalid deflate data in zip entry " + mEntry.getName() + ".");
+                    } else if (mInflater.needsInput()) {
+                        mInputLength = mIn.read(mInputBuffer, 0, mInputBuffer.length);
+                        if (mInputLength < 0) {
+                            throw new EOFException("Unexpected end of zip entry " + mEntry.getName() + ".");
+                        }
+
+                        mInflater.setInput(mInputBuffer, 0, mInputLength);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data in zip entry " + mEntry.getName() + ": " + e.getMessage());
+            }
+        }
+
+        mCrc.update(buffer, offset, numBytesRead);
+        mWrittenBytes += numBytesRead;
+        return numBytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInflater.end();
+        mIn.close();
+    }
+
+    private void finishEntry(long compressedBytesRead) throws IOException {
+        mIsEntryFinished = true;
+        if (mHasDataDescriptor) {
+            // The descriptor uses 8 byte sizes for Zip64 entries, and its signature is optional.
+            byte[] field = new byte[8];
+            readFully(field, 0, 4);
+            if (getInt(field, 0) == DATA_DESCRIPTOR_SIGNATURE) {
+                readFully(field, 0, 4);
+            }
+
+            mExpectedCrc = getInt(field, 0) & 0xFFFFFFFFL;
+            if (mIsZip64 || mWrittenBytes >= ZIP64_MAGIC || compressedBytesRead >= ZIP64_MAGIC) {
+                readFully(field, 0, 8);
+                mExpectedCompressedSize = getLong(field, 0);
+                readFully(field, 0, 8);
+                mExpectedSize = getLong(field, 0);
+            } else {
+                readFully(field, 0, 4);
+                mExpectedCompressedSize = getInt(field, 0) & 0xFFFFFFFFL;
+                readFully(field, 0, 4);
+                mExpectedSize = getInt(field, 0) & 0xFFFFFFFFL;
+            }
+        }
+
+        if (mWrittenBytes != mExpectedSize || compressedBytesRead != mExpectedCompressedSize) {
+            throw new ZipException("Invalid size for zip entry " + mEntry.getName() + ".");
+        } else if (mCrc.getValue() != mExpectedCrc) {
+            throw new ZipException("Invalid CRC for zip entry " + mEntry.getName() + ".");
+        }
+    }
+
+    private int readAtMost(byte[] buffer, int offset, int length) throws IOException {
+        int totalBytesRead = 0;
+        while (totalBytesRead < length) {
+            int numBytesRead = mIn.read(buffer, offset + totalBytesRead, length - totalBytesRead);
+            if (numBytesRead < 0) {
+                break;
+            }
+
+            totalBytesRead += numBytesRead;
+        }
+
+        return totalBytesRead;
+    }
+
+    private void readFully(byte[] buffer, int offset, int length) throws IOException {
+        if (readAtMost(buffer, offset, length) < length) {
+            throw new EOFException("Unexpected end of zip archive.");
+        }
+    }
+
+    private static long dosToJavaTime(long dosTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set((int) ((dosTime >> 25) & 0x7f) + 1980, (int) ((dosTime >> 21) & 0x0f) - 1, (int) ((dosTime >> 16) & 0x1f),
+                (int) ((dosTime >> 11) & 0x1f), (int) ((dosTime >> 5) & 0x3f), (int) ((dosTime << 1) & 0x3e));
+        return calendar.getTimeInMillis();
+    }
+
+    private static int getShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return getShort(data, offset) | getShort(data, offset + 2) << 16;
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return (getInt(data, offset) & 0xFFFFFFFFL) | ((long) getInt(data, offset + 4) << 32);
+    }
+}
@@ -0,0 +1,30 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+class ZipArchiveCodec implements StreamingArchiveCodec {
+    private static final int ZIP_LOCAL_FILE_HEADER_SIGNATURE = 0x504b0304;
+
+    @Override
+    public String getName() {
+        return "zip";
+    }
+
+    @Override
+    public boolean canExtract(byte[] header) {
+        return ByteBuffer.wrap(header).getInt() == ZIP_LOCAL_FILE_HEADER_SIGNATURE;
+    }
+
+    @Override
+    public void extract(InputStream archiveStream, File destinationFolder) throws IOException {
+        extract(archiveStream, destinationFolder, FileUtils.PLAIN_ENTRY_WRITER);
+    }
+
+    @Override
+    public void extract(InputStream archiveStream, File destinationFolder, ArchiveEntryWriter entryWriter) throws IOException {
+        FileUtils.extractZipEntries(new Zip64InputStream(archiveStream), destinationFolder, entryWriter);
+    }
+}
@@ -0,0 +1,1082 @@
+package com.microsoft.codepush.react;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+// Pure Java decoder for the Zstandard compression format (RFC 8878). Frames are decoded one
+// block at a time into a sliding window, so memory use is bounded by the window size the
+// archive was compressed with rather than by the size of the package. Dictionaries are not
+// supported since update packages are always compressed without one.
+class ZstdInputStream extends InputStream {
+    private static final int MAGIC_NUMBER = 0xFD2FB528;
+    private static final int SKIPPABLE_MAGIC_NUMBER = 0x184D2A50;
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+    // Covers every standard compression level (level 19 uses an 8 MB window), while refusing
+    // "--long" or "--ultra" archives which would need far more memory than a phone should spend.
+    private static final long MAX_WINDOW_SIZE = 32 * 1024 * 1024;
+
+    private static final int BLOCK_TYPE_RAW = 0;
+    private static final int BLOCK_TYPE_RLE = 1;
+    private static final int BLOCK_TYPE_COMPRESSED = 2;
+
+    private static final int LITERALS_TYPE_RAW = 0;
+    private static final int LITERALS_TYPE_RLE = 1;
+    private static final int LITERALS_TYPE_COMPRESSED = 2;
+
+    private static final int TABLE_MODE_PREDEFINED = 0;
+    private static final int TABLE_MODE_RLE = 1;
+    private static final int TABLE_MODE_FSE = 2;
+
+    private static final int MAX_HUFFMAN_BITS = 11;
+    private static final int MAX_HUFFMAN_WEIGHTS_ACCURACY_LOG = 6;
+    private static final int MAX_LITERALS_LENGTH_ACCURACY_LOG = 9;
+    private static final int MAX_MATCH_LENGTH_ACCURACY_LOG = 9;
+    private static final int MAX_OFFSET_ACCURACY_LOG = 8;
+    private static final int MAX_LITERALS_LENGTH_CODE = 35;
+    private static final int MAX_MATCH_LENGTH_CODE = 52;
+    private static final int MAX_OFFSET_CODE = 31;
+
+    private static final int[] LITERALS_LENGTH_BASELINES = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096,
+            8192, 16384, 32768, 65536
+    };
+    private static final int[] LITERALS_LENGTH_EXTRA_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+            13, 14, 15, 16
+    };
+    private static final int[] MATCH_LENGTH_BASELINES = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+            19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34,
+            35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+            4099, 8195, 16387, 32771, 65539
+    };
+    private static final int[] MATCH_LENGTH_EXTRA_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+            12, 13, 14, 15, 16
+    };
+
+    private static final FseTable DEFAULT_LITERALS_LENGTH_TABLE = FseTable.build(new short[]{
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+            2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+            -1, -1, -1, -1
+    }, 36, 6);
+    private static final FseTable DEFAULT_MATCH_LENGTH_TABLE = FseTable.build(new short[]{
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+            -1, -1, -1, -1, -1
+    }, 53, 6);
+    private static final FseTable DEFAULT_OFFSET_TABLE = FseTable.build(new short[]{
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1
+    }, 29, 5);
+
+    private final InputStream mIn;
+    private final byte[] mHeader = new byte[14];
+    private final byte[] mBlock = new byte[MAX_BLOCK_SIZE];
+    private final byte[] mLiterals = new byte[MAX_BLOCK_SIZE];
+    private boolean mIsClosed = false;
+
+    // Decoded output. Everything in [mReadPosition, mWritePosition) is ready to be returned and
+    // the bytes before it are kept as history for back-references.
+    private byte[] mWindow = new byte[0];
+    private int mWritePosition = 0;
+    private int mReadPosition = 0;
+
+    // State of the frame currently being decoded, shared by all of its blocks.
+    private boolean mIsInFrame = false;
+    private boolean mIsLastBlock = false;
+    private int mWindowSize;
+    private int mBlockSizeLimit;
+    private long mFrameContentSize;
+    private long mFrameDecodedSize;
+    private XxHash64 mChecksum;
+    private final int[] mRepeatedOffsets = new int[3];
+    private HuffmanTable mHuffmanTable;
+    private FseTable mLiteralsLengthTable;
+    private FseTable mOffsetTable;
+    private FseTable mMatchLengthTable;
+    private int mLiteralsSize;
+
+    public ZstdInputStream(InputStream in) {
+        mIn = in;
+    }
+
+    // Returns the decompressed size of a Zstandard file, as recorded in the headers of its frames,
+    // without decoding it. Only the frame and block headers are read. Returns -1 if the file is
+    // not a Zstandard file, is truncated, or a frame does not record its content size.
+    static long readContentSize(File file) throws IOException {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            byte[] header = new byte[14];
+            long contentSize = 0;
+            while (in.getFilePointer() < in.length()) {
+                in.readFully(header, 0, 4);
+                int magicNumber = readInt(header, 0);
+                if ((magicNumber & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC_NUMBER) {
+                    in.readFully(header, 0, 4);
+                    in.seek(in.getFilePointer() + (readInt(header, 0) & 0xFFFFFFFFL));
+                    continue;
+                } else if (magicNumber != MAGIC_NUMBER) {
+                    return -1;
+                }
+
+                in.readFully(header, 0, 1);
+                int descriptor = header[0] & 0xFF;
+                int contentSizeFlag = descriptor >>> 6;
+                boolean isSingleSegment = (descriptor & 0x20) != 0;
+                int dictionaryIdFlag = descriptor & 0x03;
+                int dictionaryIdSize = dictionaryIdFlag == 3 ? 4 : dictionaryIdFlag;
+                int contentSizeSize = contentSizeFlag == 0 ? (isSingleSegment ? 1 : 0) : 1 << contentSizeFlag;
+                if (contentSizeSize == 0) {
+                    return -1;
+                }
+
+                in.readFully(header, 0, (isSingleSegment ? 0 : 1) + dictionaryIdSize + contentSizeSize);
+                int position = (isSingleSegment ? 0 : 1) + dictionaryIdSize;
+                long frameContentSize = 0;
+                for (int i = 0; i < contentSizeSize; i++) {
+                    frameContentSize |= (header[position++] & 0xFFL) << (8 * i);
+                }
+
+                contentSize += contentSizeSize == 2 ? frameContentSize + 256 : frameContentSize;
+
+                boolean isLastBlock = false;
+                while (!isLastBlock) {
+                    in.readFully(header, 0, 3);
+                    int blockHeader = (header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16;
+                    isLastBlock = (blockHeader & 1) != 0;
+                    // An RLE block stores its byte once, whatever its decoded size.
+                    in.seek(in.getFilePointer() + (((blockHeader >>> 1) & 3) == BLOCK_TYPE_RLE ? 1 : blockHeader >>> 3));
+                }
+
+                if ((descriptor & 0x04) != 0) {
+                    in.seek(in.getFilePointer() + 4);
+                }
+            }
+
+            return contentSize;
+        } catch (EOFException e) {
+            // Truncated, which extracting the archive reports.
+            return -1;
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int numBytesRead = read(single, 0, 1);
+        return numBytesRead == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (mIsClosed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (length == 0) {
+            return 0;
+        }
+
+        while (mReadPosition == mWritePosition) {
+            if (!decodeNextBlock()) {
+                return -1;
+            }
+        }
+
+        int numBytes = Math.min(length, mWritePosition - mReadPosition);
+        System.arraycopy(mWindow, mReadPosition, buffer, offset, numBytes);
+        mReadPosition += numBytes;
+        return numBytes;
+    }
+
+    @Override
+    public int available() {
+        return mWritePosition - mReadPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mIsClosed) {
+            mIsClosed = true;
+            mIn.close();
+        }
+    }
+
+    // Decodes one block into the window, or finishes the current frame. Returns false once the
+    // underlying stream ends cleanly between frames.
+    private boolean decodeNextBlock() throws IOException {
+        if (!mIsInFrame) {
+            return readFrameHeader();
+        }
+
+        if (mIsLastBlock) {
+            finishFrame();
+            return true;
+        }
+
+        makeRoomForBlock();
+        readFully(mHeader, 0, 3);
+        int blockHeader = (mHeader[0] & 0xFF) | (mHeader[1] & 0xFF) << 8 | (mHeader[2] & 0xFF) << 16;
+        mIsLastBlock = (blockHeader & 1) != 0;
+        int blockType = (blockHeader >>> 1) & 3;
+        int blockSize = blockHeader >>> 3;
+        int blockStart = mWritePosition;
+
+        switch (blockType) {
+            case BLOCK_TYPE_RAW:
+                checkBlockSize(blockSize);
+                readFully(mWindow, mWritePosition, blockSize);
+                mWritePosition += blockSize;
+                break;
+            case BLOCK_TYPE_RLE:
+                checkBlockSize(blockSize);
+                readFully(mHeader, 0, 1);
+                Arrays.fill(mWindow, mWritePosition, mWritePosition + blockSize, mHeader[0]);
+                mWritePosition += blockSize;
+                break;
+            case BLOCK_TYPE_COMPRESSED:
+                checkBlockSize(blockSize);
+                readFully(mBlock, 0, blockSize);
+                decodeCompressedBlock(blockSize);
+                break;
+            default:
+                throw corrupted("reserved block type");
+        }
+
+        mFrameDecodedSize += mWritePosition - blockStart;
+        if (mChecksum != null) {
+            mChecksum.update(mWindow, blockStart, mWritePosition - blockStart);
+        }
+
+        return true;
+    }
+
+    private boolean readFrameHeader() throws IOException {
+        int magicNumber;
+        while (true) {
+            if (!readFullyOrEnd(mHeader, 4)) {
+                return false;
+            }
+
+            magicNumber = readInt(mHeader, 0);
+            if ((magicNumber & SKIPPABLE_MAGIC_MASK) != SKIPPABLE_MAGIC_NUMBER) {
+                break;
+            }
+
+            readFully(mHeader, 0, 4);
+            skipFully(readInt(mHeader, 0) & 0xFFFFFFFFL);
+        }
+
+        if (magicNumber != MAGIC_NUMBER) {
+            throw new IOException("Not a Zstandard stream.");
+        }
+
+        readFully(mHeader, 0, 1);
+        int descriptor = mHeader[0] & 0xFF;
+        int contentSizeFlag = descriptor >>> 6;
+        boolean isSingleSegment = (descriptor & 0x20) != 0;
+        boolean hasChecksum = (descriptor & 0x04) != 0;
+        int dictionaryIdFlag = descriptor & 0x03;
+        if ((descriptor & 0x08) != 0) {
+            throw corrupted("reserved frame header bit set");
+        }
+
+        int dictionaryIdSize = dictionaryIdFlag == 3 ? 4 : dictionaryIdFlag;
+        int contentSizeSize = contentSizeFlag == 0 ? (isSingleSegment ? 1 : 0) : 1 << contentSizeFlag;
+        int headerSize = (isSingleSegment ? 0 : 1) + dictionaryIdSize + contentSizeSize;
+        readFully(mHeader, 0, headerSize);
+
+        int position = 0;
+        long windowSize = 0;
+        if (!isSingleSegment) {
+            int windowDescriptor = mHeader[position++] & 0xFF;
+            long windowBase = 1L << (10 + (windowDescriptor >>> 3));
+            windowSize = windowBase + (windowBase / 8) * (windowDescriptor & 7);
+        }
+
+        long dictionaryId = 0;
+        for (int i = 0; i < dictionaryIdSize; i++) {
+            dictionaryId |= (mHeader[position++] & 0xFFL) << (8 * i);
+        }
+
+        if (dictionaryId != 0) {
+            throw new IOException("Zstandard dictionaries are not supported.");
+        }
+
+        long contentSize = -1;
+        if (contentSizeSize > 0) {
+            contentSize = 0;
+            for (int i = 0; i < contentSizeSize; i++) {
+                contentSize |= (mHeader[position++] & 0xFFL) << (8 * i);
+            }
+
+            if (contentSizeSize == 2) {
+                contentSize += 256;
+            }
+        }
+
+        if (isSingleSegment) {
+            windowSize = contentSize;
+        }
+
+        if (windowSize < 0 || windowSize > MAX_WINDOW_SIZE) {
+            throw new IOException("Zstandard window size " + windowSize + " exceeds the supported maximum of " + MAX_WINDOW_SIZE + " bytes.");
+        }
+
+        mWindowSize = (int) windowSize;
+        mBlockSizeLimit = Math.min(mWindowSize, MAX_BLOCK_SIZE);
+        // History plus room for two blocks, so that the window only slides once per block.
+        int capacity = mWindowSize + 2 * MAX_BLOCK_SIZE;
+        if (mWindow.length < capacity) {
+            mWindow = new byte[capacity];
+        }
+
+        mWritePosition = 0;
+        mReadPosition = 0;
+        mFrameContentSize = contentSize;
+        mFrameDecodedSize = 0;
+        mChecksum = hasChecksum ? new XxHash64(0) : null;
+        mRepeatedOffsets[0] = 1;
+        mRepeatedOffsets[1] = 4;
+        mRepeatedOffsets[2] = 8;
+        mHuffmanTable = null;
+        mLiteralsLengthTable = null;
+        mOffsetTable = null;
+        mMatchLengthTable = null;
+        mIsLastBlock = false;
+        mIsInFrame = true;
+        return true;
+    }
+
+    private void finishFrame() throws IOException {
+        if (mFrameContentSize >= 0 && mFrameContentSize != mFrameDecodedSize) {
+            throw corrupted("frame decoded to " + mFrameDecodedSize + " bytes instead of " + mFrameContentSize);
+        }
+
+        if (mChecksum != null) {
+            readFully(mHeader, 0, 4);
+            if (readInt(mHeader, 0) != (int) mChecksum.digest()) {
+                throw corrupted("content checksum mismatch");
+            }
+        }
+
+        mIsInFrame = false;
+    }
+
+    // Slides the window back to its start when there is no room for another block, keeping only
+    // the history that back-references can still reach.
+    private void makeRoomForBlock() {
+        if (mWritePosition + MAX_BLOCK_SIZE <= mWindow.length) {
+            return;
+        }
+
+        int keep = Math.min(mWritePosition, mWindowSize);
+        System.arraycopy(mWindow, mWritePosition - keep, mWindow, 0, keep);
+        mWritePosition = keep;
+        mReadPosition = keep;
+    }
+
+    private void checkBlockSize(int blockSize) throws IOException {
+        if (blockSize > mBlockSizeLimit) {
+            throw corrupted("block size " + blockSize + " exceeds the limit of " + mBlockSizeLimit);
+        }
+    }
+
+    private void decodeCompressedBlock(int blockSize) throws IOException {
+        int position = decodeLiteralsSection(blockSize);
+        if (position >= blockSize) {
+            throw corrupted("missing sequences section");
+        }
+
+        int header = mBlock[position++] & 0xFF;
+        int sequenceCount;
+        if (header < 128) {
+            sequenceCount = header;
+        } else if (header < 255) {
+            checkAvailable(position, 1, blockSize);
+            sequenceCount = ((header - 128) << 8) + (mBlock[position++] & 0xFF);
+        } else {
+            checkAvailable(position, 2, blockSize);
+            sequenceCount = (mBlock[position] & 0xFF) + ((mBlock[position + 1] & 0xFF) << 8) + 0x7F00;
+            position += 2;
+        }
+
+        int blockStart = mWritePosition;
+        if (sequenceCount == 0) {
+            copyLiterals(0, mLiteralsSize, blockStart);
+            return;
+        }
+
+        checkAvailable(position, 1, blockSize);
+        int modes = mBlock[position++] & 0xFF;
+        if ((modes & 3) != 0) {
+            throw corrupted("reserved sequence compression mode bits set");
+        }
+
+        FseTable[] table = new FseTable[1];
+        position = readSequenceTable(position, blockSize, modes >>> 6, DEFAULT_LITERALS_LENGTH_TABLE,
+                mLiteralsLengthTable, MAX_LITERALS_LENGTH_CODE, MAX_LITERALS_LENGTH_ACCURACY_LOG, table);
+        mLiteralsLengthTable = table[0];
+        position = readSequenceTable(position, blockSize, (modes >>> 4) & 3, DEFAULT_OFFSET_TABLE,
+                mOffsetTable, MAX_OFFSET_CODE, MAX_OFFSET_ACCURACY_LOG, table);
+        mOffsetTable = table[0];
+        position = readSequenceTable(position, blockSize, (modes >>> 2) & 3, DEFAULT_MATCH_LENGTH_TABLE,
+                mMatchLengthTable, MAX_MATCH_LENGTH_CODE, MAX_MATCH_LENGTH_ACCURACY_LOG, table);
+        mMatchLengthTable = table[0];
+
+        FseTable literalsLengthTable = mLiteralsLengthTable;
+        FseTable offsetTable = mOffsetTable;
+        FseTable matchLengthTable = mMatchLengthTable;
+        BackwardBitReader bits = new BackwardBitReader(mBlock, position, blockSize);
+        int literalsLengthState = (int) bits.read(literalsLengthTable.accuracyLog);
+        int offsetState = (int) bits.read(offsetTable.accuracyLog);
+        int matchLengthState = (int) bits.read(matchLengthTable.accuracyLog);
+
+        int blockLimit = blockStart + mBlockSizeLimit;
+        int literalsPosition = 0;
+        int output = blockStart;
+        for (int i = 0; i < sequenceCount; i++) {
+            int offsetCode = offsetTable.symbols[offsetState];
+            int matchLengthCode = matchLengthTable.symbols[matchLengthState];
+            int literalsLengthCode = literalsLengthTable.symbols[literalsLengthState];
+            if (offsetCode > MAX_OFFSET_CODE) {
+                throw corrupted("invalid offset code " + offsetCode);
+            }
+
+            long offsetValue = (1L << offsetCode) + bits.read(offsetCode);
+            int matchLength = MATCH_LENGTH_BASELINES[matchLengthCode] + (int) bits.read(MATCH_LENGTH_EXTRA_BITS[matchLengthCode]);
+            int literalsLength = LITERALS_LENGTH_BASELINES[literalsLengthCode] + (int) bits.read(LITERALS_LENGTH_EXTRA_BITS[literalsLengthCode]);
+
+            long offset;
+            if (offsetValue > 3) {
+                offset = offsetValue - 3;
+                mRepeatedOffsets[2] = mRepeatedOffsets[1];
+                mRepeatedOffsets[1] = mRepeatedOffsets[0];
+                mRepeatedOffsets[0] = (int) Math.min(offset, Integer.MAX_VALUE);
+            } else {
+                // A zero literals length shifts the repeated offset codes by one.
+                int index = (int) offsetValue - 1 + (literalsLength == 0 ? 1 : 0);
+                if (index == 0) {
+                    offset = mRepeatedOffsets[0];
+                } else {
+                    offset = index == 3 ? mRepeatedOffsets[0] - 1 : mRepeatedOffsets[index];
+                    if (index > 1) {
+                        mRepeatedOffsets[2] = mRepeatedOffsets[1];
+                    }
+
+                    mRepeatedOffsets[1] = mRepeatedOffsets[0];
+                    mRepeatedOffsets[0] = (int) offset;
+                }
+            }
+
+            if (literalsPosition + literalsLength > mLiteralsSize) {
+                throw corrupted("sequence reads past the end of the literals");
+            }
+
+            if ((long) output + literalsLength + matchLength > blockLimit) {
+                throw corrupted("block decodes to more than " + mBlockSizeLimit + " bytes");
+            }
+
+            System.arraycopy(mLiterals, literalsPosition, mWindow, output, literalsLength);
+            literalsPosition += literalsLength;
+            output += literalsLength;
+
+            long history = mFrameDecodedSize + (output - blockStart);
+            if (offset <= 0 || offset > history || offset > mWindowSize) {
+                throw corrupted("match offset " + offset + " is out of range");
+            }
+
+            int source = output - (int) offset;
+            if (offset >= matchLength) {
+                System.arraycopy(mWindow, source, mWindow, output, matchLength);
+                output += matchLength;
+            } else {
+                // Overlapping match, the copy has to repeat bytes it has just written.
+                for (int j = 0; j < matchLength; j++) {
+                    mWindow[output++] = mWindow[source++];
+                }
+            }
+
+            if (i < sequenceCount - 1) {
+                literalsLengthState = literalsLengthTable.baselines[literalsLengthState]
+                        + (int) bits.read(literalsLengthTable.numberOfBits[literalsLengthState]);
+                matchLengthState = matchLengthTable.baselines[matchLengthState]
+                        + (int) bits.read(matchLengthTable.numberOfBits[matchLengthState]);
+                offsetState = offsetTable.baselines[offsetState]
+                        + (int) bits.read(offsetTable.numberOfBits[offsetState]);
+            }
+        }
+
+        if (!bits.isFinished()) {
+            throw corrupted("sequences bitstream was not fully consumed");
+        }
+
+        mWritePosition = output;
+        if (output - blockStart + mLiteralsSize - literalsPosition > mBlockSizeLimit) {
+            throw corrupted("block decodes to more than " + mBlockSizeLimit + " bytes");
+        }
+
+        copyLiterals(literalsPosition, mLiteralsSize - literalsPosition, blockStart);
+    }
+
+    private void copyLiterals(int literalsPosition, int length, int blockStart) throws IOException {
+        if (mWritePosition - blockStart + length > mBlockSizeLimit) {
+            throw corrupted("block decodes to more than " + mBlockSizeLimit + " bytes");
+        }
+
+        System.arraycopy(mLiterals, literalsPosition, mWindow, mWritePosition, length);
+        mWritePosition += length;
+    }
+
+    // Decodes the literals section into mLiterals and returns the position of the sequences section.
+    private int decodeLiteralsSection(int blockSize) throws IOException {
+        checkAvailable(0, 1, blockSize);
+        int header = mBlock[0] & 0xFF;
+        int literalsType = header & 3;
+        int sizeFormat = (header >>> 2) & 3;
+
+        if (literalsType == LITERALS_TYPE_RAW || literalsType == LITERALS_TYPE_RLE) {
+            int headerSize;
+            int regeneratedSize;
+            if ((sizeFormat & 1) == 0) {
+                headerSize = 1;
+                regeneratedSize = header >>> 3;
+            } else if (sizeFormat == 1) {
+                headerSize = 2;
+                checkAvailable(0, headerSize, blockSize);
+                regeneratedSize = (header >>> 4) + ((mBlock[1] & 0xFF) << 4);
+            } else {
+                headerSize = 3;
+                checkAvailable(0, headerSize, blockSize);
+                regeneratedSize = (header >>> 4) + ((mBlock[1] & 0xFF) << 4) + ((mBlock[2] & 0xFF) << 12);
+            }
+
+            checkLiteralsSize(regeneratedSize);
+            mLiteralsSize = regeneratedSize;
+            if (literalsType == LITERALS_TYPE_RAW) {
+                checkAvailable(headerSize, regeneratedSize, blockSize);
+                System.arraycopy(mBlock, headerSize, mLiterals, 0, regeneratedSize);
+                return headerSize + regeneratedSize;
+            }
+
+            checkAvailable(headerSize, 1, blockSize);
+            Arrays.fill(mLiterals, 0, regeneratedSize, mBlock[headerSize]);
+            return headerSize + 1;
+        }
+
+        int headerSize = sizeFormat < 2 ? 3 : sizeFormat + 2;
+        checkAvailable(0, headerSize, blockSize);
+        long headerValue = 0;
+        for (int i = 0; i < headerSize; i++) {
+            headerValue |= (mBlock[i] & 0xFFL) << (8 * i);
+        }
+
+        int sizeBits = headerSize == 3 ? 10 : (headerSize == 4 ? 14 : 18);
+        int regeneratedSize = (int) ((headerValue >>> 4) & ((1 << sizeBits) - 1));
+        int compressedSize = (int) ((headerValue >>> (4 + sizeBits)) & ((1 << sizeBits) - 1));
+        boolean isSingleStream = sizeFormat == 0;
+        checkLiteralsSize(regeneratedSize);
+        checkAvailable(headerSize, compressedSize, blockSize);
+
+        int position = headerSize;
+        int end = headerSize + compressedSize;
+        if (literalsType == LITERALS_TYPE_COMPRESSED) {
+            position = readHuffmanTable(position, end);
+        } else if (mHuffmanTable == null) {
+            throw corrupted("treeless literals without a previous Huffman table");
+        }
+
+        mLiteralsSize = regeneratedSize;
+        if (isSingleStream) {
+            decodeHuffmanStream(position, end, 0, regeneratedSize);
+        } else {
+            checkAvailable(position, 6, end);
+            int size1 = (mBlock[position] & 0xFF) | (mBlock[position + 1] & 0xFF) << 8;
+            int size2 = (mBlock[position + 2] & 0xFF) | (mBlock[position + 3] & 0xFF) << 8;
+            int size3 = (mBlock[position + 4] & 0xFF) | (mBlock[position + 5] & 0xFF) << 8;
+            int start1 = position + 6;
+            int start2 = start1 + size1;
+            int start3 = start2 + size2;
+            int start4 = start3 + size3;
+            if (start4 > end) {
+                throw corrupted("invalid Huffman jump table");
+            }
+
+            int segmentSize = (regeneratedSize + 3) / 4;
+            if (3 * segmentSize > regeneratedSize) {
+                throw corrupted("too few literals for four Huffman streams");
+            }
+
+            decodeHuffmanStream(start1, start2, 0, segmentSize);
+            decodeHuffmanStream(start2, start3, segmentSize, segmentSize);
+            decodeHuffmanStream(start3, start4, 2 * segmentSize, segmentSize);
+            decodeHuffmanStream(start4, end, 3 * segmentSize, regeneratedSize - 3 * segmentSize);
+        }
+
+        return end;
+    }
+
+    private void checkLiteralsSize(int size) throws IOException {
+        if (size > mBlockSizeLimit) {
+            throw corrupted("literals size " + size + " exceeds the block size limit");
+        }
+    }
+
+    private void decodeHuffmanStream(int start, int end, int outputPosition, int count) throws IOException {
+        HuffmanTable table = mHuffmanTable;
+        int mask = (1 << table.maxBits) - 1;
+        BackwardBitReader bits = new BackwardBitReader(mBlock, start, end);
+        int state = (int) bits.read(table.maxBits);
+        for (int i = 0; i < count; i++) {
+            mLiterals[outputPosition + i] = table.symbols[state];
+            int numberOfBits = table.numberOfBits[state];
+            state = ((state << numberOfBits) & mask) | (int) bits.read(numberOfBits);
+        }
+
+        // Once the last symbol is decoded the reader has consumed exactly the initial state size past the start.
+        if (bits.getBitOffset() != -table.maxBits) {
+            throw corrupted("Huffman stream was not fully consumed");
+        }
+    }
+
+    private int readHuffmanTable(int position, int end) throws IOException {
+        checkAvailable(position, 1, end);
+        int header = mBlock[position++] & 0xFF;
+        int[] weights = new int[256];
+        int weightCount;
+
+        if (header >= 128) {
+            weightCount = header - 127;
+            int size = (weightCount + 1) / 2;
+            checkAvailable(position, size, end);
+            for (int i = 0; i < weightCount; i++) {
+                int packed = mBlock[position + i / 2] & 0xFF;
+                weights[i] = (i % 2 == 0) ? packed >>> 4 : packed & 0x0F;
+            }
+
+            position += size;
+        } else {
+            checkAvailable(position, header, end);
+            int weightsEnd = position + header;
+            ForwardBitReader headerBits = new ForwardBitReader(mBlock, position, weightsEnd);
+            FseTable table = readFseTable(headerBits, MAX_HUFFMAN_BITS, MAX_HUFFMAN_WEIGHTS_ACCURACY_LOG);
+            BackwardBitReader bits = new BackwardBitReader(mBlock, headerBits.getBytePosition(), weightsEnd);
+
+            // Two interleaved states share the bitstream, decoding stops once it is exhausted.
+            int state1 = (int) bits.read(table.accuracyLog);
+            int state2 = (int) bits.read(table.accuracyLog);
+            weightCount = 0;
+            while (true) {
+                if (weightCount > 253) {
+                    throw corrupted("too many Huffman weights");
+                }
+
+                weights[weightCount++] = table.symbols[state1];
+                state1 = table.baselines[state1] + (int) bits.read(table.numberOfBits[state1]);
+                if (bits.isOverflowed()) {
+                    weights[weightCount++] = table.symbols[state2];
+                    break;
+                }
+
+                weights[weightCount++] = table.symbols[state2];
+                state2 = table.baselines[state2] + (int) bits.read(table.numberOfBits[state2]);
+                if (bits.isOverflowed()) {
+                    weights[weightCount++] = table.symbols[state1];
+                    break;
+                }
+            }
+
+            position = weightsEnd;
+        }
+
+        mHuffmanTable = HuffmanTable.build(weights, weightCount);
+        return position;
+    }
+
+    private int readSequenceTable(int position, int end, int mode, FseTable defaultTable, FseTable previousTable,
+                                  int maxSymbol, int maxAccuracyLog, FseTable[] result) throws IOException {
+        switch (mode) {
+            case TABLE_MODE_PREDEFINED:
+                result[0] = defaultTable;
+                return position;
+            case TABLE_MODE_RLE:
+                checkAvailable(position, 1, end);
+                int symbol = mBlock[position] & 0xFF;
+                if (symbol > maxSymbol) {
+                    throw corrupted("invalid RLE symbol " + symbol);
+                }
+
+                result[0] = FseTable.rle(symbol);
+                return position + 1;
+            case TABLE_MODE_FSE:
+                ForwardBitReader bits = new ForwardBitReader(mBlock, position, end);
+                result[0] = readFseTable(bits, maxSymbol, maxAccuracyLog);
+                return bits.getBytePosition();
+            default:
+                if (previousTable == null) {
+                    throw corrupted("repeated sequence table without a previous table");
+                }
+
+                result[0] = previousTable;
+                return position;
+        }
+    }
+
+    private static FseTable readFseTable(ForwardBitReader bits, int maxSymbol, int maxAccuracyLog) throws IOException {
+        int accuracyLog = (int) bits.read(4) + 5;
+        if (accuracyLog > maxAccuracyLog) {
+            throw corrupted("FSE accuracy log " + accuracyLog + " is too large");
+        }
+
+        short[] probabilities = new short[maxSymbol + 1];
+        int remaining = 1 << accuracyLog;
+        int symbol = 0;
+        while (remaining > 0 && symbol <= maxSymbol) {
+            int numberOfBits = 32 - Integer.numberOfLeadingZeros(remaining + 1);
+            int value = (int) bits.peek(numberOfBits);
+            int lowerMask = (1 << (numberOfBits - 1)) - 1;
+            int threshold = (1 << numberOfBits) - 1 - (remaining + 1);
+            if ((value & lowerMask) < threshold) {
+                value &= lowerMask;
+                numberOfBits--;
+            } else if (value > lowerMask) {
+                value -= threshold;
+            }
+
+            bits.skip(numberOfBits);
+            int probability = value - 1;
+            remaining -= Math.abs(probability);
+            probabilities[symbol++] = (short) probability;
+
+            if (probability == 0) {
+                int repeat = (int) bits.read(2);
+                while (true) {
+                    for (int i = 0; i < repeat && symbol <= maxSymbol; i++) {
+                        probabilities[symbol++] = 0;
+                    }
+
+                    if (repeat != 3) {
+                        break;
+                    }
+
+                    repeat = (int) bits.read(2);
+                }
+            }
+        }
+
+        bits.alignToByte();
+        if (remaining != 0 || bits.isOverflowed()) {
+            throw corrupted("invalid FSE table description");
+        }
+
+        return FseTable.build(probabilities, symbol, accuracyLog);
+    }
+
+    private void readFully(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int numBytesRead = mIn.read(buffer, offset, length);
+            if (numBytesRead < 0) {
+                throw new EOFException("Unexpected end of Zstandard stream.");
+            }
+
+            offset += numBytesRead;
+            length -= numBytesRead;
+        }
+    }
+
+    // Like readFully, but returns false if the stream ends before the first byte.
+    private boolean readFullyOrEnd(byte[] buffer, int length) throws IOException {
+        int numBytesRead = mIn.read(buffer, 0, length);
+        while (numBytesRead == 0) {
+            numBytesRead = mIn.read(buffer, 0, length);
+        }
+
+        if (numBytesRead < 0) {
+            return false;
+        }
+
+        readFully(buffer, numBytesRead, length - numBytesRead);
+        return true;
+    }
+
+    private void skipFully(long length) throws IOException {
+        while (length > 0) {
+            long skipped = mIn.skip(length);
+            if (skipped <= 0) {
+                if (mIn.read() < 0) {
+                    throw new EOFException("Unexpected end of Zstandard stream.");
+                }
+
+                skipped = 1;
+            }
+
+            length -= skipped;
+        }
+    }
+
+    private static void checkAvailable(int position, int length, int end) throws IOException {
+        if (length < 0 || position + length > end) {
+            throw corrupted("block is truncated");
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    private static IOException corrupted(String reason) {
+        return new IOException("Corrupted Zstandard stream: " + reason + ".");
+    }
+
+    // Decoding table for one FSE (tANS) distribution.
+    private static class FseTable {
+        final int accuracyLog;
+        final byte[] symbols;
+        final byte[] numberOfBits;
+        final int[] baselines;
+
+        private FseTable(int accuracyLog) {
+            this.accuracyLog = accuracyLog;
+            int size = 1 << accuracyLog;
+            symbols = new byte[size];
+            numberOfBits = new byte[size];
+            baselines = new int[size];
+        }
+
+        static FseTable rle(int symbol) {
+            FseTable table = new FseTable(0);
+            table.symbols[0] = (byte) symbol;
+            return table;
+        }
+
+        static FseTable build(short[] probabilities, int symbolCount, int accuracyLog) {
+            FseTable table = new FseTable(accuracyLog);
+            int size = 1 << accuracyLog;
+            int[] nextState = new int[symbolCount];
+
+            // "Less than 1" probabilities take a single cell each at the end of the table.
+            int highThreshold = size - 1;
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                if (probabilities[symbol] == -1) {
+                    table.symbols[highThreshold--] = (byte) symbol;
+                    nextState[symbol] = 1;
+                } else {
+                    nextState[symbol] = probabilities[symbol];
+                }
+            }
+
+            int mask = size - 1;
+            int step = (size >>> 1) + (size >>> 3) + 3;
+            int position = 0;
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                for (int i = 0; i < probabilities[symbol]; i++) {
+                    table.symbols[position] = (byte) symbol;
+                    do {
+                        position = (position + step) & mask;
+                    } while (position > highThreshold);
+                }
+            }
+
+            for (int state = 0; state < size; state++) {
+                int symbol = table.symbols[state] & 0xFF;
+                int next = nextState[symbol]++;
+                int bits = accuracyLog - (31 - Integer.numberOfLeadingZeros(next));
+                table.numberOfBits[state] = (byte) bits;
+                table.baselines[state] = (next << bits) - size;
+            }
+
+            return table;
+        }
+    }
+
+    // Lookup table for canonical Huffman codes, indexed by the next maxBits bits of a stream.
+    private static class HuffmanTable {
+        final int maxBits;
+        final byte[] symbols;
+        final byte[] numberOfBits;
+
+        private HuffmanTable(int maxBits) {
+            this.maxBits = maxBits;
+            symbols = new byte[1 << maxBits];
+            numberOfBits = new byte[1 << maxBits];
+        }
+
+        static HuffmanTable build(int[] weights, int weightCount) throws IOException {
+            int weightSum = 0;
+            for (int i = 0; i < weightCount; i++) {
+                if (weights[i] > MAX_HUFFMAN_BITS) {
+                    throw corrupted("invalid Huffman weight " + weights[i]);
+                }
+
+                if (weights[i] > 0) {
+                    weightSum += 1 << (weights[i] - 1);
+                }
+            }
+
+            if (weightSum == 0) {
+                throw corrupted("empty Huffman table");
+            }
+
+            // The weight of the last symbol is implied by rounding the sum up to a power of two.
+            int maxBits = 32 - Integer.numberOfLeadingZeros(weightSum);
+            int leftover = (1 << maxBits) - weightSum;
+            if (maxBits > MAX_HUFFMAN_BITS || Integer.bitCount(leftover) != 1) {
+                throw corrupted("invalid Huffman weights");
+            }
+
+            int symbolCount = weightCount + 1;
+            weights[weightCount] = 32 - Integer.numberOfLeadingZeros(leftover);
+
+            int[] rankCount = new int[maxBits + 1];
+            int[] symbolBits = new int[symbolCount];
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                if (weights[symbol] > 0) {
+                    symbolBits[symbol] = maxBits + 1 - weights[symbol];
+                    rankCount[symbolBits[symbol]]++;
+                }
+            }
+
+            // Longer codes come first, and within a code length symbols are in increasing order.
+            int[] rankStart = new int[maxBits + 1];
+            for (int bits = maxBits; bits > 1; bits--) {
+                rankStart[bits - 1] = rankStart[bits] + rankCount[bits] * (1 << (maxBits - bits));
+            }
+
+            HuffmanTable table = new HuffmanTable(maxBits);
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int bits = symbolBits[symbol];
+                if (bits > 0) {
+                    int length = 1 << (maxBits - bits);
+                    int start = rankStart[bits];
+                    Arrays.fill(table.symbols, start, start + length, (byte) symbol);
+                    Arrays.fill(table.numberOfBits, start, start + length, (byte) bits);
+                    rankStart[bits] += length;
+                }
+            }
+
+            return table;
+        }
+    }
+
+    // Reads little-endian bit fields from the start of a byte range, used for table descriptions.
+    private static class ForwardBitReader {
+        private final byte[] mData;
+        private final int mStart;
+        private final int mEnd;
+        private long mBitOffset = 0;
+
+        ForwardBitReader(byte[] data, int start, int end) {
+            mData = data;
+            mStart = start;
+            mEnd = end;
+        }
+
+        long peek(int numberOfBits) {
+            return readBits(mData, mStart, mEnd, mBitOffset, numberOfBits);
+        }
+
+        long read(int numberOfBits) {
+            long value = peek(numberOfBits);
+            mBitOffset += numberOfBits;
+            return value;
+        }
+
+        void skip(int numberOfBits) {
+            mBitOffset += numberOfBits;
+        }
+
+        void alignToByte() {
+            mBitOffset = (mBitOffset + 7) & ~7L;
+        }
+
+        boolean isOverflowed() {
+            return mBitOffset > (long) (mEnd - mStart) * 8;
+        }
+
+        int getBytePosition() {
+            return mStart + (int) ((mBitOffset + 7) >>> 3);
+        }
+    }
+
+    // Reads a bitstream backwards from its end, which starts after the highest set bit of the last
+    // byte. Reading past the start yields zero bits, as the format requires.
+    private static class BackwardBitReader {
+        private final byte[] mData;
+        private final int mStart;
+        private final int mEnd;
+        private long mBitOffset;
+
+        BackwardBitReader(byte[] data, int start, int end) throws IOException {
+            if (end <= start || data[end - 1] == 0) {
+                throw corrupted("invalid bitstream padding");
+            }
+
+            mData = data;
+            mStart = start;
+            mEnd = end;
+            int highestBit = 31 - Integer.numberOfLeadingZeros(data[end - 1] & 0xFF);
+            mBitOffset = (long) (end - start - 1) * 8 + highestBit;
+        }
+
+        long read(int numberOfBits) {
+            if (numberOfBits == 0) {
+                return 0;
+            }
+
+            mBitOffset -= numberOfBits;
+            if (mBitOffset >= 0) {
+                return readBits(mData, mStart, mEnd, mBitOffset, numberOfBits);
+            }
+
+            int available = numberOfBits + (int) mBitOffset;
+            long value = available > 0 ? readBits(mData, mStart, mEnd, 0, available) : 0;
+            return value << -mBitOffset;
+        }
+
+        long getBitOffset() {
+            return mBitOffset;
+        }
+
+        boolean isOverflowed() {
+            return mBitOffset < 0;
+        }
+
+        boolean isFinished() {
+            return mBitOffset == 0;
+        }
+    }
+
+    private static long readBits(byte[] data, int start, int end, long bitOffset, int numberOfBits) {
+        int index = start + (int) (bitOffset >>> 3);
+        int shift = (int) (bitOffset & 7);
+        int byteCount = (shift + numberOfBits + 7) >>> 3;
+        long value = 0;
+        for (int i = 0; i < byteCount && index + i < end; i++) {
+            value |= (data[index + i] & 0xFFL) << (8 * i);
+        }
+
+        return (value >>> shift) & ((1L << numberOfBits) - 1);
+    }
+}
@@ -0,0 +1,32 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// A tar archive compressed with Zstandard, which packs many small files much tighter than zip
+// (the whole archive shares one compression window) and decompresses faster than deflate.
+class ZstdTarArchiveCodec implements StreamingArchiveCodec {
+    private static final int ZSTD_MAGIC_NUMBER = 0x28b52ffd;
+
+    @Override
+    public String getName() {
+        return "tar.zst";
+    }
+
+    @Override
+    public boolean canExtract(byte[] header) {
+        return ByteBuffer.wrap(header).getInt() == ZSTD_MAGIC_NUMBER;
+    }
+
+    @Override
+    public void extract(InputStream archiveStream, File destinationFolder) throws IOException {
+        extract(archiveStream, destinationFolder, FileUtils.PLAIN_ENTRY_WRITER);
+    }
+
+    @Override
+    public void extract(InputStream archiveStream, File destinationFolder, ArchiveEntryWriter entryWriter) throws IOException {
+        FileUtils.extractTarEntries(new ZstdInputStream(archiveStream), destinationFolder, entryWriter);
+    }
+}
@@ -0,0 +1,144 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BandwidthLimiterTest {
+
+    @Test
+    public void doesNotThrottleWithoutLimitOrInBackground() throws IOException {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setIsAppInForeground(true);
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxReadLength());
+
+        limiter.setBytesPerSecond(1000);
+        limiter.setIsAppInForeground(false);
+        long start = System.nanoTime();
+        limiter.acquire(100 * 1000 * 1000);
+        assertTrue(elapsedMillis(start) < 500);
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxReadLength());
+    }
+
+    @Test
+    public void letsBurstThroughAndPacesTheRest() throws IOException {
+        BandwidthLimiter limiter = createLimiter(100 * 1000);
+        // A quarter of a second's worth, but never less than 8 KB.
+        assertEquals(25 * 1000, limiter.getMaxReadLength());
+
+        long start = System.nanoTime();
+        limiter.acquire(25 * 1000);
+        assertTrue(elapsedMillis(start) < 100);
+
+        limiter.acquire(50 * 1000);
+        long elapsedMillis = elapsedMillis(start);
+        assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 400 && elapsedMillis < 2000);
+    }
+
+    @Test
+    public void sharesLimitBetweenStreams() throws Exception {
+        final BandwidthLimiter limiter = createLimiter(100 * 1000);
+        limiter.acquire(limiter.getMaxReadLength());
+        Thread[] readers = new Thread[2];
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        InputStream stream = new ThrottledInputStream(new ByteArrayInputStream(new byte[30 * 1000]), limiter);
+                        TestUtils.readFully(stream);
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        // 60 KB at 100 KB/s once the burst is used up.
+        long elapsedMillis = elapsedMillis(start);
+        assertNull(error.get());
+        assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 500 && elapsedMillis < 3000);
+    }
+
+    @Test
+    public void stopsWaitingWhenAppGoesToBackground() throws Exception {
+        final BandwidthLimiter limiter = createLimiter(10 * 1000);
+        Thread reader = startAcquiring(limiter, 10 * 1000 * 1000, null);
+        Thread.sleep(100);
+        assertTrue(reader.isAlive());
+
+        limiter.setIsAppInForeground(false);
+        reader.join(2000);
+        assertFalse(reader.isAlive());
+    }
+
+    @Test
+    public void stopsWaitingWhenLimitIsLifted() throws Exception {
+        final BandwidthLimiter limiter = createLimiter(10 * 1000);
+        Thread reader = startAcquiring(limiter, 10 * 1000 * 1000, null);
+        Thread.sleep(100);
+        assertTrue(reader.isAlive());
+
+        limiter.setBytesPerSecond(0);
+        reader.join(2000);
+        assertFalse(reader.isAlive());
+    }
+
+    @Test
+    public void throwsWhenInterruptedWhileWaiting() throws Exception {
+        final BandwidthLimiter limiter = createLimiter(10 * 1000);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = startAcquiring(limiter, 10 * 1000 * 1000, error);
+        Thread.sleep(100);
+
+        reader.interrupt();
+        reader.join(2000);
+        assertFalse(reader.isAlive());
+        assertTrue(String.valueOf(error.get()), error.get() instanceof InterruptedIOException);
+    }
+
+    private static BandwidthLimiter createLimiter(long bytesPerSecond) {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setBytesPerSecond(bytesPerSecond);
+        limiter.setIsAppInForeground(true);
+        return limiter;
+    }
+
+    private static Thread startAcquiring(final BandwidthLimiter limiter, final long bytes, final AtomicReference<Throwable> error) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(bytes);
+                } catch (Throwable e) {
+                    if (error != null) {
+                        error.set(e);
+                    }
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,196 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryBaseFilesTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BINARY_HASH = "binary";
+    private static final String BUNDLE = "CodePush/index.android.bundle";
+    private static final String PATCH = "CodePush/index.android.bundle.bsdiff";
+    private static final byte[] LOGO = "logo".getBytes(UTF_8);
+    private static final byte[] REMOVED = "removed".getBytes(UTF_8);
+    private static final byte[] REPLACED = "replaced".getBytes(UTF_8);
+    private static final byte[] REPLACEMENT = "replacement".getBytes(UTF_8);
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mBinary;
+    private File mBaseFolder;
+    private File mNewPackageFolder;
+    private File mDiffManifest;
+    private int mHashReadCount = 0;
+
+    private final BinaryContentsHashProvider mHashProvider = new BinaryContentsHashProvider() {
+        @Override
+        public String getBinaryContentsHash() {
+            mHashReadCount++;
+            return BINARY_HASH;
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        File oldBundle = BinaryPatcherTest.writeOldBundle(mTemporaryFolder.newFile("old.bundle"));
+        mBinary = mTemporaryFolder.newFile("app.apk");
+        ZipOutputStream apk = new ZipOutputStream(new FileOutputStream(mBinary));
+        try {
+            // Like aapt, the bundle is stored uncompressed and resources are deflated.
+            addStoredEntry(apk, "assets/index.android.bundle", TestUtils.readFile(oldBundle));
+            addEntry(apk, "res/drawable/logo.png", LOGO);
+            addEntry(apk, "assets/removed.txt", REMOVED);
+            addEntry(apk, "assets/replaced.txt", REPLACED);
+        } finally {
+            apk.close();
+        }
+
+        mBaseFolder = new File(mTemporaryFolder.getRoot(), "base");
+        mNewPackageFolder = mTemporaryFolder.newFolder("new");
+        mDiffManifest = new File(mNewPackageFolder, CodePushConstants.DIFF_MANIFEST_FILE_NAME);
+    }
+
+    @Test
+    public void mergesDiffWithBinaryFiles() throws Exception {
+        TestUtils.writeFile(new File(mNewPackageFolder, "CodePush/replaced.txt"), REPLACEMENT);
+        TestUtils.writeFile(new File(mNewPackageFolder, PATCH), TestUtils.readResource("index.android.bundle.bsdiff43"));
+        writeDiffManifest(createDiffManifest(BINARY_HASH));
+
+        assertTrue(extractBinaryBaseFiles());
+        assertEquals(1, mHashReadCount);
+
+        // Only the file that is patched goes to the base folder, the others are in place already.
+        assertTrue(new File(mBaseFolder, BUNDLE).exists());
+        assertFalse(new File(mBaseFolder, "CodePush/logo.png").exists());
+        assertArrayEquals(LOGO, TestUtils.readFile(new File(mNewPackageFolder, "CodePush/logo.png")));
+        assertArrayEquals(REPLACEMENT, TestUtils.readFile(new File(mNewPackageFolder, "CodePush/replaced.txt")));
+        assertFalse(new File(mNewPackageFolder, "CodePush/removed.txt").exists());
+
+        CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(mDiffManifest.getPath(), mBaseFolder.getPath(), mNewPackageFolder.getPath());
+        assertEquals(BinaryPatcherTest.NEW_BUNDLE_SHA256, TestUtils.sha256(new File(mNewPackageFolder, BUNDLE)));
+        assertFalse(new File(mNewPackageFolder, PATCH).exists());
+        assertFalse(new File(mNewPackageFolder, "CodePush/removed.txt").exists());
+    }
+
+    @Test
+    public void rejectsDiffAgainstOtherBinary() throws Exception {
+        writeDiffManifest(createDiffManifest("other"));
+        try {
+            extractBinaryBaseFiles();
+            fail("Expected the diff to be rejected.");
+        } catch (CodePushInvalidUpdateException e) {
+            assertTrue(e.getMessage().contains("other"));
+        }
+
+        assertFalse(new File(mNewPackageFolder, "CodePush/logo.png").exists());
+    }
+
+    @Test
+    public void rejectsMissingBinaryEntry() throws Exception {
+        JSONObject diffManifest = createDiffManifest(BINARY_HASH);
+        diffManifest.getJSONObject("binaryFiles").put("CodePush/missing.png", "res/drawable/missing.png");
+        writeDiffManifest(diffManifest);
+        try {
+            extractBinaryBaseFiles();
+            fail("Expected the diff to be rejected.");
+        } catch (CodePushInvalidUpdateException e) {
+            assertTrue(e.getMessage().contains("res/drawable/missing.png"));
+        }
+    }
+
+    @Test
+    public void leavesDiffAgainstPackageAlone() throws Exception {
+        JSONObject diffManifest = createDiffManifest(BINARY_HASH);
+        diffManifest.remove("binaryHash");
+        writeDiffManifest(diffManifest);
+
+        assertFalse(extractBinaryBaseFiles());
+        assertEquals(0, mHashReadCount);
+        assertFalse(mBaseFolder.exists());
+        assertFalse(new File(mNewPackageFolder, "CodePush/logo.png").exists());
+    }
+
+    @Test
+    public void leavesMalformedManifestToMerge() throws Exception {
+        TestUtils.writeFile(mDiffManifest, "{".getBytes(UTF_8));
+
+        assertFalse(extractBinaryBaseFiles());
+        assertEquals(0, mHashReadCount);
+    }
+
+    @Test
+    public void skipsMergeWithoutCurrentPackage() throws Exception {
+        // As before binary diffs, a diff against a package is left as it is when there is no
+        // current package, without reading its manifest or applying its patches.
+        TestUtils.writeFile(new File(mNewPackageFolder, PATCH), TestUtils.readResource("index.android.bundle.bsdiff43"));
+        TestUtils.writeFile(mDiffManifest, "{".getBytes(UTF_8));
+
+        CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(mDiffManifest.getPath(), null, mNewPackageFolder.getPath());
+        assertTrue(new File(mNewPackageFolder, PATCH).exists());
+        assertFalse(new File(mNewPackageFolder, BUNDLE).exists());
+    }
+
+    private boolean extractBinaryBaseFiles() throws IOException {
+        return CodePushUpdateUtils.extractBinaryBaseFiles(mDiffManifest.getPath(), mBinary.getPath(), mHashProvider,
+                mBaseFolder.getPath(), mNewPackageFolder.getPath());
+    }
+
+    private JSONObject createDiffManifest(String binaryHash) throws Exception {
+        JSONObject patchedFile = new JSONObject()
+                .put("path", BUNDLE)
+                .put("patch", PATCH)
+                .put("hash", BinaryPatcherTest.NEW_BUNDLE_SHA256);
+        JSONObject binaryFiles = new JSONObject()
+                .put(BUNDLE, "assets/index.android.bundle")
+                .put("CodePush/logo.png", "res/drawable/logo.png")
+                .put("CodePush/removed.txt", "assets/removed.txt")
+                .put("CodePush/replaced.txt", "assets/replaced.txt");
+        return new JSONObject()
+                .put("binaryHash", binaryHash)
+                .put("binaryFiles", binaryFiles)
+                .put("deletedFiles", new JSONArray().put("CodePush/removed.txt"))
+                .put("patchedFiles", new JSONArray().put(patchedFile));
+    }
+
+    private void writeDiffManifest(JSONObject diffManifest) throws IOException {
+        TestUtils.writeFile(mDiffManifest, diffManifest.toString().getBytes(UTF_8));
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static void addStoredEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
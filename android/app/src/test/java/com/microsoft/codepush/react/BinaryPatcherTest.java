@@ -0,0 +1,112 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+// index.android.bundle.bsdiff40 was written by jbsdiff 1.0 in the BSDIFF40 format of bsdiff 4.x,
+// and index.android.bundle.bsdiff43 holds the same patch in the ENDSLEY/BSDIFF43 format. The old
+// file is the bundle compressed in frames.zst.
+public class BinaryPatcherTest {
+
+    static final String NEW_BUNDLE_SHA256 = "0c7a8f59f0348c5d7f3ac40d783b87f6f9781708951ed7f9c6a76a5c5104ddec";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mOldFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mOldFile = writeOldBundle(mTemporaryFolder.newFile("old.bundle"));
+    }
+
+    @Test
+    public void appliesBsdiff40Patch() throws IOException {
+        File newFile = mTemporaryFolder.newFile();
+        String hash = apply("index.android.bundle.bsdiff40", newFile);
+        assertEquals(NEW_BUNDLE_SHA256, hash);
+        assertEquals(NEW_BUNDLE_SHA256, TestUtils.sha256(newFile));
+    }
+
+    @Test
+    public void appliesBsdiff43Patch() throws IOException {
+        File newFile = mTemporaryFolder.newFile();
+        String hash = apply("index.android.bundle.bsdiff43", newFile);
+        assertEquals(NEW_BUNDLE_SHA256, hash);
+        assertEquals(NEW_BUNDLE_SHA256, TestUtils.sha256(newFile));
+    }
+
+    @Test
+    public void appliesPatchFile() throws IOException {
+        File patchFile = mTemporaryFolder.newFile();
+        FileOutputStream out = new FileOutputStream(patchFile);
+        out.write(TestUtils.readResource("index.android.bundle.bsdiff40"));
+        out.close();
+
+        File newFile = mTemporaryFolder.newFile();
+        assertEquals(NEW_BUNDLE_SHA256, BinaryPatcher.apply(mOldFile, patchFile, newFile));
+    }
+
+    @Test
+    public void rejectsTruncatedPatches() throws IOException {
+        for (String name : new String[]{ "index.android.bundle.bsdiff40", "index.android.bundle.bsdiff43" }) {
+            byte[] patch = TestUtils.readResource(name);
+            for (int length : new int[]{ 4, 12, 30, patch.length / 2, patch.length - 1 }) {
+                try {
+                    BinaryPatcher.apply(mOldFile, new ByteArrayInputStream(Arrays.copyOf(patch, length)), mTemporaryFolder.newFile(), name);
+                    fail("Expected " + name + " truncated to " + length + " bytes to fail.");
+                } catch (CodePushInvalidUpdateException e) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptPatches() throws IOException {
+        for (String name : new String[]{ "index.android.bundle.bsdiff40", "index.android.bundle.bsdiff43" }) {
+            byte[] patch = TestUtils.readResource(name);
+            for (int position = 40; position < patch.length; position += 97) {
+                byte[] corrupt = patch.clone();
+                corrupt[position] ^= 0x21;
+                try {
+                    BinaryPatcher.apply(mOldFile, new ByteArrayInputStream(corrupt), mTemporaryFolder.newFile(), name);
+                    fail("Expected a corrupt byte at " + position + " of " + name + " to fail.");
+                } catch (IOException | CodePushInvalidUpdateException e) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    @Test(expected = CodePushInvalidUpdateException.class)
+    public void rejectsOtherFormats() throws IOException {
+        BinaryPatcher.apply(mOldFile, new ByteArrayInputStream(TestUtils.readResource("frames.zst")), mTemporaryFolder.newFile(), "frames.zst");
+    }
+
+    private String apply(String patchName, File newFile) throws IOException {
+        return BinaryPatcher.apply(mOldFile, new ByteArrayInputStream(TestUtils.readResource(patchName)), newFile, patchName);
+    }
+
+    static File writeOldBundle(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(TestUtils.readFully(new ZstdInputStream(new ByteArrayInputStream(TestUtils.readResource("frames.zst")))));
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+}
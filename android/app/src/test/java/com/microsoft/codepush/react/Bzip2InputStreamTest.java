@@ -0,0 +1,85 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+// mixed.bin.bz2 was compressed by bzip2 1.0.8 with -1, which splits its 260165 bytes of text and
+// long byte runs into three blocks. empty.bz2 is what bzip2 writes for empty input.
+public class Bzip2InputStreamTest {
+
+    private static final String MIXED_SHA256 = "1ccebf60f6dc74d8b23c327d8fa8eb226408b4c0fda164b0408c671347e833c5";
+
+    @Test
+    public void decodesMultipleBlocks() throws IOException {
+        byte[] data = decode(TestUtils.readResource("mixed.bin.bz2"));
+        assertEquals(260165, data.length);
+        assertEquals(MIXED_SHA256, TestUtils.sha256(data));
+    }
+
+    @Test
+    public void decodesEmptyStream() throws IOException {
+        assertEquals(0, decode(TestUtils.readResource("empty.bz2")).length);
+    }
+
+    @Test
+    public void stopsAtEndOfStream() throws IOException {
+        byte[] stream = TestUtils.readResource("mixed.bin.bz2");
+        byte[] data = Arrays.copyOf(stream, stream.length + 3);
+        data[stream.length] = 'e';
+        data[stream.length + 1] = 'n';
+        data[stream.length + 2] = 'd';
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        TestUtils.readFully(new Bzip2InputStream(in));
+        assertEquals("end", new String(TestUtils.readFully(in), "US-ASCII"));
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        byte[] data = TestUtils.readResource("mixed.bin.bz2");
+        for (int length : new int[]{ 2, 20, data.length / 2, data.length - 1 }) {
+            try {
+                decode(Arrays.copyOf(data, length));
+                fail("Expected truncated input of " + length + " bytes to fail.");
+            } catch (EOFException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptBlocks() throws IOException {
+        byte[] data = TestUtils.readResource("mixed.bin.bz2");
+        for (int position = 40; position < data.length - 10; position += 499) {
+            byte[] corrupt = data.clone();
+            corrupt[position] ^= 0x10;
+            try {
+                decode(corrupt);
+                fail("Expected a corrupt byte at " + position + " to fail.");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFormats() throws IOException {
+        decode(TestUtils.readResource("frames.zst"));
+    }
+
+    private static byte[] decode(byte[] data) throws IOException {
+        InputStream stream = new Bzip2InputStream(new ByteArrayInputStream(data));
+        try {
+            return TestUtils.readFully(stream);
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CodePushAssetPackTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PACKAGE_HASH = "package";
+    private static final byte[] IMAGE = "image".getBytes(UTF_8);
+    private static final byte[] FONT = "font".getBytes(UTF_8);
+    private static final byte[] SEGMENT = "segment".getBytes(UTF_8);
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private CodePushUpdateManager mUpdateManager;
+    private File mPackageFolder;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new TestHttpServer();
+        String documentsDirectory = mTemporaryFolder.newFolder("documents").getAbsolutePath();
+        mUpdateManager = new CodePushUpdateManager(documentsDirectory);
+        mPackageFolder = new File(mUpdateManager.getPackageFolderPath(PACKAGE_HASH));
+        mPackageFolder.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void extractsArchivePackIntoPackageFolder() throws Exception {
+        byte[] archive = createArchive();
+        mServer.serve("/onboarding.zip", archive);
+        writeAssetPacks(new JSONObject().put("onboarding", createAssetPack("/onboarding.zip", TestUtils.sha256(archive))));
+
+        assertFalse(mUpdateManager.isAssetPackReady(PACKAGE_HASH, "onboarding"));
+        mUpdateManager.downloadAssetPack(PACKAGE_HASH, "onboarding");
+
+        assertTrue(mUpdateManager.isAssetPackReady(PACKAGE_HASH, "onboarding"));
+        assertArrayEquals(IMAGE, TestUtils.readFile(new File(mPackageFolder, "assets/onboarding/image.png")));
+        assertArrayEquals(FONT, TestUtils.readFile(new File(mPackageFolder, "assets/onboarding/font.ttf")));
+
+        JSONObject marker = readMarker("onboarding");
+        assertEquals(TestUtils.sha256(archive), marker.getString("hash"));
+        assertEquals(setOf("assets/onboarding/image.png", "assets/onboarding/font.ttf"), toSet(marker.getJSONArray(CodePushConstants.ASSET_PACK_FILES_KEY)));
+        assertStagingFolderRemoved("onboarding");
+    }
+
+    @Test
+    public void storesSingleFilePackAtItsPath() throws Exception {
+        mServer.serve("/segment", SEGMENT);
+        writeAssetPacks(new JSONObject().put("segment1", createSegmentPack("/segment", TestUtils.sha256(SEGMENT), "segments/1.bundle", 1)));
+
+        assertEquals("segment1", mUpdateManager.findSegmentAssetPack(PACKAGE_HASH, 1));
+        mUpdateManager.downloadAssetPack(PACKAGE_HASH, "segment1");
+
+        File segmentFile = new File(mPackageFolder, "segments/1.bundle");
+        assertEquals(segmentFile.getAbsolutePath(), mUpdateManager.getAssetPackFilePath(PACKAGE_HASH, "segment1"));
+        assertArrayEquals(SEGMENT, TestUtils.readFile(segmentFile));
+        assertEquals(setOf("segments/1.bundle"), toSet(readMarker("segment1").getJSONArray(CodePushConstants.ASSET_PACK_FILES_KEY)));
+        assertStagingFolderRemoved("segment1");
+    }
+
+    @Test
+    public void rejectsSegmentWithWrongHash() throws Exception {
+        mServer.serve("/segment", "tampered".getBytes(UTF_8));
+        writeAssetPacks(new JSONObject().put("segment1", createSegmentPack("/segment", TestUtils.sha256(SEGMENT), "segments/1.bundle", 1)));
+
+        try {
+            mUpdateManager.downloadAssetPack(PACKAGE_HASH, "segment1");
+            fail("Expected the integrity check to fail.");
+        } catch (CodePushInvalidUpdateException e) {
+            assertTrue(e.getMessage().contains("failed the data integrity check"));
+        }
+
+        assertFalse(mUpdateManager.isAssetPackReady(PACKAGE_HASH, "segment1"));
+        assertFalse(new File(mPackageFolder, "segments/1.bundle").exists());
+        assertStagingFolderRemoved("segment1");
+    }
+
+    @Test
+    public void rejectsSegmentPathOutsidePackage() throws Exception {
+        mServer.serve("/segment", SEGMENT);
+        writeAssetPacks(new JSONObject().put("segment1", createSegmentPack("/segment", TestUtils.sha256(SEGMENT), "../../1.bundle", 1)));
+
+        try {
+            mUpdateManager.getAssetPackFilePath(PACKAGE_HASH, "segment1");
+            fail("Expected the path to be rejected.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        try {
+            mUpdateManager.downloadAssetPack(PACKAGE_HASH, "segment1");
+            fail("Expected the path to be rejected.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        assertFalse(mUpdateManager.isAssetPackReady(PACKAGE_HASH, "segment1"));
+        File codePushFolder = mPackageFolder.getParentFile();
+        assertFalse(new File(codePushFolder.getParentFile(), "1.bundle").exists());
+        assertFalse(new File(new File(codePushFolder, CodePushConstants.DOWNLOAD_STAGING_FOLDER_NAME), "1.bundle").exists());
+    }
+
+    @Test
+    public void findsOnlySingleFileSegments() throws Exception {
+        writeAssetPacks(new JSONObject()
+                .put("segment1", createSegmentPack("/segment", TestUtils.sha256(SEGMENT), "segments/1.bundle", 1))
+                .put("onboarding", createAssetPack("/onboarding.zip", TestUtils.sha256(IMAGE)).put("segmentId", 2)));
+
+        assertEquals("segment1", mUpdateManager.findSegmentAssetPack(PACKAGE_HASH, 1));
+        // An archive pack cannot hold a segment, whatever it names.
+        assertNull(mUpdateManager.findSegmentAssetPack(PACKAGE_HASH, 2));
+        assertNull(mUpdateManager.findSegmentAssetPack(PACKAGE_HASH, 3));
+        assertNull(mUpdateManager.getAssetPackFilePath(PACKAGE_HASH, "onboarding"));
+        assertNull(mUpdateManager.findSegmentAssetPack("other", 1));
+    }
+
+    @Test
+    public void rejectsPackWithWrongHash() throws Exception {
+        byte[] archive = createArchive();
+        mServer.serve("/onboarding.zip", archive);
+        writeAssetPacks(new JSONObject().put("onboarding", createAssetPack("/onboarding.zip", TestUtils.sha256(SEGMENT))));
+
+        try {
+            mUpdateManager.downloadAssetPack(PACKAGE_HASH, "onboarding");
+            fail("Expected the integrity check to fail.");
+        } catch (CodePushInvalidUpdateException e) {
+            assertTrue(e.getMessage().contains("failed the data integrity check"));
+        }
+
+        assertFalse(mUpdateManager.isAssetPackReady(PACKAGE_HASH, "onboarding"));
+        assertFalse(new File(mPackageFolder, "assets").exists());
+        assertStagingFolderRemoved("onboarding");
+    }
+
+    @Test
+    public void diffUpdateSkipsFilesOfReadyPacks() throws Exception {
+        byte[] archive = createArchive();
+        mServer.serve("/onboarding.zip", archive);
+        writeAssetPacks(new JSONObject().put("onboarding", createAssetPack("/onboarding.zip", TestUtils.sha256(archive))));
+        TestUtils.writeFile(new File(mPackageFolder, "assets/logo.png"), IMAGE);
+        mUpdateManager.downloadAssetPack(PACKAGE_HASH, "onboarding");
+
+        File newPackageFolder = mTemporaryFolder.newFolder("new");
+        File diffManifest = new File(newPackageFolder, CodePushConstants.DIFF_MANIFEST_FILE_NAME);
+        CodePushUtils.writeJsonToFile(new JSONObject().put("deletedFiles", new JSONArray()), diffManifest.getAbsolutePath());
+        CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(diffManifest.getAbsolutePath(), mPackageFolder.getAbsolutePath(), newPackageFolder.getAbsolutePath());
+
+        assertArrayEquals(IMAGE, TestUtils.readFile(new File(newPackageFolder, "assets/logo.png")));
+        assertFalse(new File(newPackageFolder, "assets/onboarding/image.png").exists());
+        assertFalse(new File(newPackageFolder, "assets/onboarding/font.ttf").exists());
+        assertFalse(new File(newPackageFolder, CodePushConstants.ASSET_PACKS_READY_FOLDER_NAME).exists());
+    }
+
+    private JSONObject createAssetPack(String path, String hash) throws Exception {
+        return new JSONObject().put("url", mServer.getUrl(path)).put("hash", hash);
+    }
+
+    private JSONObject createSegmentPack(String path, String hash, String relativeFilePath, int segmentId) throws Exception {
+        return createAssetPack(path, hash).put("path", relativeFilePath).put("segmentId", segmentId);
+    }
+
+    private void writeAssetPacks(JSONObject assetPacks) throws IOException {
+        CodePushUtils.writeJsonToFile(assetPacks, new File(mPackageFolder, CodePushConstants.ASSET_PACKS_FILE_NAME).getAbsolutePath());
+    }
+
+    private JSONObject readMarker(String packName) throws IOException {
+        File markerFolder = new File(mPackageFolder, CodePushConstants.ASSET_PACKS_READY_FOLDER_NAME);
+        return CodePushUtils.getJsonObjectFromFile(new File(markerFolder, packName).getAbsolutePath());
+    }
+
+    private void assertStagingFolderRemoved(String packName) {
+        String downloadKey = CodePushUpdateManager.getAssetPackDownloadKey(PACKAGE_HASH, packName);
+        File stagingRootFolder = new File(mPackageFolder.getParentFile(), CodePushConstants.DOWNLOAD_STAGING_FOLDER_NAME);
+        assertFalse(new File(stagingRootFolder, downloadKey).exists());
+    }
+
+    private static byte[] createArchive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry("assets/onboarding/image.png"));
+        zip.write(IMAGE);
+        zip.putNextEntry(new ZipEntry("assets/onboarding/font.ttf"));
+        zip.write(FONT);
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private static Set<String> toSet(JSONArray array) {
+        Set<String> set = new HashSet<>();
+        for (int i = 0; i < array.length(); i++) {
+            set.add(array.optString(i));
+        }
+
+        return set;
+    }
+
+    private static Set<String> setOf(String... values) {
+        Set<String> set = new HashSet<>();
+        for (String value : values) {
+            set.add(value);
+        }
+
+        return set;
+    }
+}
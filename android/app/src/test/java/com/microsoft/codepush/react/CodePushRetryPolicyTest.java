@@ -0,0 +1,96 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CodePushRetryPolicyTest {
+
+    private static final int SAMPLES = 2000;
+    private static final IOException TIMEOUT = new SocketTimeoutException("timeout");
+
+    @Test
+    public void drawsDelaysBelowDoublingBound() {
+        CodePushRetryPolicy policy = new CodePushRetryPolicy().setBackoff(100, 1000);
+        long[] bounds = {100, 200, 400, 800, 1000, 1000};
+        for (int attempt = 1; attempt <= bounds.length; attempt++) {
+            long bound = bounds[attempt - 1];
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < SAMPLES; i++) {
+                long delay = policy.getRetryDelayMillis(attempt, TIMEOUT);
+                min = Math.min(min, delay);
+                max = Math.max(max, delay);
+            }
+
+            assertTrue("attempt " + attempt + " min " + min, min >= 0);
+            assertTrue("attempt " + attempt + " max " + max, max <= bound);
+            // Full jitter spreads the delays over the whole range, not only near the bound.
+            assertTrue("attempt " + attempt + " min " + min, min < bound / 10);
+            assertTrue("attempt " + attempt + " max " + max, max > bound * 9 / 10);
+        }
+    }
+
+    @Test
+    public void doesNotOverflowForManyAttempts() {
+        CodePushRetryPolicy policy = new CodePushRetryPolicy().setBackoff(1000, 30 * 1000);
+        for (int i = 0; i < SAMPLES; i++) {
+            long delay = policy.getRetryDelayMillis(Integer.MAX_VALUE, TIMEOUT);
+            assertTrue(String.valueOf(delay), delay >= 0 && delay <= 30 * 1000);
+        }
+    }
+
+    @Test
+    public void waitsNotAtAllWithoutBackoff() {
+        CodePushRetryPolicy policy = new CodePushRetryPolicy().setBackoff(0, 0);
+        assertEquals(0, policy.getRetryDelayMillis(3, TIMEOUT));
+    }
+
+    @Test
+    public void followsRetryAfterWithinMaximumBackoff() {
+        CodePushRetryPolicy policy = new CodePushRetryPolicy().setBackoff(100, 5000);
+        assertEquals(2000, policy.getRetryDelayMillis(1, new CodePushHttpStatusException(503, "url", "2")));
+        assertEquals(5000, policy.getRetryDelayMillis(1, new CodePushHttpStatusException(503, "url", "120")));
+        assertTrue(policy.getRetryDelayMillis(1, new CodePushHttpStatusException(503, "url", "Wed, 21 Oct 2026 07:28:00 GMT")) <= 100);
+    }
+
+    @Test
+    public void retriesTransientErrorsByDefault() {
+        CodePushRetryPolicy policy = new CodePushRetryPolicy();
+        assertTrue(policy.isRetryable(new CodePushHttpStatusException(503, "url", null)));
+        assertTrue(policy.isRetryable(new CodePushHttpStatusException(429, "url", null)));
+        assertFalse(policy.isRetryable(new CodePushHttpStatusException(404, "url", null)));
+        assertTrue(policy.isRetryable(TIMEOUT));
+        assertTrue(policy.isRetryable(new UnknownHostException("host")));
+        assertTrue(policy.isRetryable(new EOFException()));
+        assertFalse(policy.isRetryable(new IOException("disk full")));
+    }
+
+    @Test
+    public void retriesConfiguredErrors() {
+        CodePushRetryPolicy policy = new CodePushRetryPolicy()
+                .setRetryableStatusCodes(404)
+                .addRetryableException(InterruptedIOException.class);
+        assertTrue(policy.isRetryable(new CodePushHttpStatusException(404, "url", null)));
+        assertFalse(policy.isRetryable(new CodePushHttpStatusException(503, "url", null)));
+        assertTrue(policy.isRetryable(new InterruptedIOException()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroAttempts() {
+        new CodePushRetryPolicy().setMaxAttempts(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaximumBelowInitialBackoff() {
+        new CodePushRetryPolicy().setBackoff(1000, 500);
+    }
+}
@@ -0,0 +1,175 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CodePushUpdateCheckClientTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    // Keeps the cache in memory instead of in SharedPreferences.
+    private static class MemoryCacheStore implements CodePushUpdateCheckClient.CacheStore {
+        JSONObject mUpdateCheckCache;
+
+        @Override
+        public JSONObject getUpdateCheckCache() {
+            return mUpdateCheckCache;
+        }
+
+        @Override
+        public void saveUpdateCheckCache(JSONObject updateCheckCache) {
+            mUpdateCheckCache = updateCheckCache;
+        }
+
+        @Override
+        public void removeUpdateCheckCache() {
+            mUpdateCheckCache = null;
+        }
+    }
+
+    private TestHttpServer mServer;
+    private MemoryCacheStore mCacheStore;
+    private volatile int mNotModifiedCount;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new TestHttpServer();
+        mCacheStore = new MemoryCacheStore();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void buildsUpdateCheckUrlInAcquisitionSdkOrder() {
+        String url = CodePushUpdateCheckClient.buildUpdateCheckUrl("https://codepush.example.com",
+                "key", "1.0 beta", "hash", "v1", "client");
+
+        assertEquals("https://codepush.example.com/v0.1/public/codepush/update_check" +
+                "?deployment_key=key&app_version=1.0%20beta&package_hash=hash&is_companion=false&label=v1&client_unique_id=client", url);
+    }
+
+    @Test
+    public void leavesOutMissingUpdateCheckParameters() {
+        String url = CodePushUpdateCheckClient.buildUpdateCheckUrl("https://codepush.example.com/",
+                "key", "1.0", null, null, "client");
+
+        assertEquals("https://codepush.example.com/v0.1/public/codepush/update_check" +
+                "?deployment_key=key&app_version=1.0&is_companion=false&client_unique_id=client", url);
+    }
+
+    @Test
+    public void answersFreshResponseFromCache() throws IOException {
+        serveUpdateCheck("/check", "update", "\"1\"", "public, MAX-AGE=60");
+        CodePushUpdateCheckClient client = new CodePushUpdateCheckClient(mCacheStore, "1.0-100");
+
+        assertEquals("update", client.checkForUpdate(mServer.getUrl("/check"), NO_HEADERS).body);
+        assertEquals("update", client.checkForUpdate(mServer.getUrl("/check"), NO_HEADERS).body);
+        assertEquals(1, mServer.getRequestCount("/check"));
+    }
+
+    @Test
+    public void revalidatesStaleResponseWithETag() throws IOException {
+        serveUpdateCheck("/check", "update", "\"1\"", null);
+        CodePushUpdateCheckClient client = new CodePushUpdateCheckClient(mCacheStore, "1.0-100");
+
+        assertEquals("update", client.checkForUpdate(mServer.getUrl("/check"), NO_HEADERS).body);
+        CodePushUpdateCheckClient.Response response = client.checkForUpdate(mServer.getUrl("/check"), NO_HEADERS);
+
+        assertEquals(200, response.statusCode);
+        assertEquals("update", response.body);
+        assertEquals(2, mServer.getRequestCount("/check"));
+        assertEquals(1, mNotModifiedCount);
+    }
+
+    @Test
+    public void keepsResponsesOfSeveralUrls() throws IOException {
+        serveUpdateCheck("/js", "js update", "\"1\"", "max-age=60");
+        serveUpdateCheck("/native", "native update", "\"2\"", "max-age=60");
+        CodePushUpdateCheckClient client = new CodePushUpdateCheckClient(mCacheStore, "1.0-100");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("js update", client.checkForUpdate(mServer.getUrl("/js"), NO_HEADERS).body);
+            assertEquals("native update", client.checkForUpdate(mServer.getUrl("/native"), NO_HEADERS).body);
+        }
+
+        assertEquals(1, mServer.getRequestCount("/js"));
+        assertEquals(1, mServer.getRequestCount("/native"));
+    }
+
+    @Test
+    public void evictsOldestResponse() throws IOException {
+        CodePushUpdateCheckClient client = new CodePushUpdateCheckClient(mCacheStore, "1.0-100");
+        for (int i = 0; i < 5; i++) {
+            serveUpdateCheck("/check" + i, "update " + i, null, "max-age=60");
+            client.checkForUpdate(mServer.getUrl("/check" + i), NO_HEADERS);
+        }
+
+        client.checkForUpdate(mServer.getUrl("/check0"), NO_HEADERS);
+        client.checkForUpdate(mServer.getUrl("/check4"), NO_HEADERS);
+
+        assertEquals(2, mServer.getRequestCount("/check0"));
+        assertEquals(1, mServer.getRequestCount("/check4"));
+    }
+
+    @Test
+    public void dropsResponsesOfAnotherBinary() throws IOException {
+        serveUpdateCheck("/check", "update", "\"1\"", "max-age=60");
+        new CodePushUpdateCheckClient(mCacheStore, "1.0-100").checkForUpdate(mServer.getUrl("/check"), NO_HEADERS);
+
+        new CodePushUpdateCheckClient(mCacheStore, "1.0-200").checkForUpdate(mServer.getUrl("/check"), NO_HEADERS);
+
+        assertEquals(2, mServer.getRequestCount("/check"));
+        assertEquals(0, mNotModifiedCount);
+    }
+
+    @Test
+    public void doesNotKeepNoStoreResponse() throws IOException {
+        serveUpdateCheck("/check", "update", "\"1\"", "no-store");
+        CodePushUpdateCheckClient client = new CodePushUpdateCheckClient(mCacheStore, "1.0-100");
+
+        client.checkForUpdate(mServer.getUrl("/check"), NO_HEADERS);
+
+        assertEquals(0, mCacheStore.getUpdateCheckCache().getJSONArray("responses").length());
+        client.clearCache();
+        assertNull(mCacheStore.getUpdateCheckCache());
+    }
+
+    // Serves the body with the given ETag and Cache-Control headers, and answers 304 to a request
+    // whose If-None-Match holds the ETag.
+    private void serveUpdateCheck(String path, final String body, final String eTag, final String cacheControl) {
+        mServer.serve(path, new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (cacheControl != null) {
+                    exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+                }
+
+                if (eTag != null) {
+                    exchange.getResponseHeaders().set("ETag", eTag);
+                    if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        mNotModifiedCount++;
+                        TestHttpServer.respond(exchange, 304, new byte[0]);
+                        return;
+                    }
+                }
+
+                TestHttpServer.respond(exchange, 200, body.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+}
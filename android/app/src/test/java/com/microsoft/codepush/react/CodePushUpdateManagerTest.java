@@ -0,0 +1,593 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CodePushUpdateManagerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BUNDLE_FILE_NAME = "index.android.bundle";
+    private static final byte[] BUNDLE = createBundle();
+    private static final byte[] IMAGE = "image".getBytes(UTF_8);
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private TestHttpServer mMirror;
+    private CodePushUpdateManager mUpdateManager;
+    private final List<String> mDownloads = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Throwable> mDownloadErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new TestHttpServer();
+        mMirror = new TestHttpServer();
+        mUpdateManager = new CodePushUpdateManager(mTemporaryFolder.newFolder("documents").getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        mMirror.stop();
+    }
+
+    @Test
+    public void coalescedDownloadWritesItsOwnMetadata() throws Exception {
+        final CountDownLatch isFirstHalfSent = new CountDownLatch(1);
+        final CountDownLatch isSecondCallerWaiting = new CountDownLatch(1);
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, BUNDLE.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(BUNDLE, 0, BUNDLE.length / 2);
+                out.flush();
+                isFirstHalfSent.countDown();
+                await(isSecondCallerWaiting);
+                out.write(BUNDLE, BUNDLE.length / 2, BUNDLE.length - BUNDLE.length / 2);
+                out.close();
+            }
+        });
+
+        final AtomicReference<Throwable> firstError = new AtomicReference<>();
+        Thread firstCaller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+                } catch (Throwable e) {
+                    firstError.set(e);
+                }
+            }
+        });
+        firstCaller.start();
+        await(isFirstHalfSent);
+
+        // The second request attaches to the running download, which reports the progress so far.
+        mUpdateManager.downloadPackage(createUpdatePackage("v2"), BUNDLE_FILE_NAME, new DownloadProgressCallback() {
+            @Override
+            public void call(DownloadProgress downloadProgress) {
+                isSecondCallerWaiting.countDown();
+            }
+        }, null);
+        firstCaller.join();
+
+        assertNull(firstError.get());
+        assertEquals(1, mServer.getRequestCount("/package"));
+        JSONObject savedPackage = mUpdateManager.getPackage("bundlehash");
+        assertEquals("v2", savedPackage.getString("label"));
+    }
+
+    @Test
+    public void failsOverToMirrorWithinAttempt() throws Exception {
+        servePackage(mServer, "server", 0, 503);
+        servePackage(mMirror, "mirror", 200, 200);
+        mUpdateManager.addDownloadMirror(mMirror.getUrl(""));
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setMaxAttempts(1));
+
+        JSONObject updatePackage = createUpdatePackage("v1");
+        mUpdateManager.downloadPackage(updatePackage, BUNDLE_FILE_NAME, null, null);
+
+        assertEquals(Arrays.asList("server", "mirror"), mDownloads);
+        assertEquals(1, updatePackage.getInt(CodePushConstants.DOWNLOAD_ATTEMPTS_KEY));
+        assertEquals("v1", mUpdateManager.getPackage("bundlehash").getString("label"));
+    }
+
+    @Test
+    public void retriesOnceEveryMirrorHasFailed() throws Exception {
+        servePackage(mServer, "server", 0, 503);
+        final AtomicInteger mirrorDownloadCount = new AtomicInteger();
+        mMirror.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (isProbe(exchange)) {
+                    sleep(200);
+                    TestHttpServer.respond(exchange, 200, new byte[]{BUNDLE[0]});
+                    return;
+                }
+
+                mDownloads.add("mirror");
+                TestHttpServer.respond(exchange, mirrorDownloadCount.incrementAndGet() == 1 ? 503 : 200, BUNDLE);
+            }
+        });
+        mUpdateManager.addDownloadMirror(mMirror.getUrl(""));
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setMaxAttempts(2).setBackoff(0, 0));
+
+        JSONObject updatePackage = createUpdatePackage("v1");
+        mUpdateManager.downloadPackage(updatePackage, BUNDLE_FILE_NAME, null, null);
+
+        assertEquals(Arrays.asList("server", "mirror", "server", "mirror"), mDownloads);
+        assertEquals(2, updatePackage.getInt(CodePushConstants.DOWNLOAD_ATTEMPTS_KEY));
+    }
+
+    @Test
+    public void stopsOnNonRetryableError() throws Exception {
+        servePackage(mServer, "server", 0, 404);
+        servePackage(mMirror, "mirror", 200, 200);
+        mUpdateManager.addDownloadMirror(mMirror.getUrl(""));
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setBackoff(0, 0));
+
+        try {
+            mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+            fail("Expected the download to fail.");
+        } catch (CodePushHttpStatusException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+
+        assertEquals(Arrays.asList("server"), mDownloads);
+    }
+
+    @Test
+    public void restartsInterruptedCompressedDownload() throws Exception {
+        final byte[] compressedBundle = gzip(BUNDLE);
+        final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<String>());
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                rangeHeaders.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.getResponseHeaders().set("ETag", "\"package\"");
+                exchange.sendResponseHeaders(200, compressedBundle.length);
+                OutputStream out = exchange.getResponseBody();
+                // The first response breaks off halfway.
+                out.write(compressedBundle, 0, rangeHeaders.size() == 1 ? compressedBundle.length / 2 : compressedBundle.length);
+                out.flush();
+            }
+        });
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setBackoff(0, 0).addRetryableException(IOException.class));
+
+        mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+
+        // A range of the decoded file cannot be requested, so the second attempt starts over.
+        assertEquals(Arrays.asList("null", "null"), rangeHeaders);
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle()));
+    }
+
+    @Test
+    public void resumesInterruptedIdentityDownload() throws Exception {
+        final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> acceptEncodings = Collections.synchronizedList(new ArrayList<String>());
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                rangeHeaders.add(String.valueOf(range));
+                acceptEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                exchange.getResponseHeaders().set("ETag", "\"package\"");
+                OutputStream out;
+                if (range == null) {
+                    exchange.sendResponseHeaders(200, BUNDLE.length);
+                    out = exchange.getResponseBody();
+                    out.write(BUNDLE, 0, BUNDLE.length / 2);
+                } else {
+                    int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (BUNDLE.length - 1) + "/" + BUNDLE.length);
+                    exchange.sendResponseHeaders(206, BUNDLE.length - start);
+                    out = exchange.getResponseBody();
+                    out.write(BUNDLE, start, BUNDLE.length - start);
+                }
+
+                out.flush();
+            }
+        });
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setBackoff(0, 0).addRetryableException(IOException.class));
+
+        mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+
+        assertEquals(2, rangeHeaders.size());
+        assertEquals("bytes=" + BUNDLE.length / 2 + "-", rangeHeaders.get(1));
+        assertEquals("identity", acceptEncodings.get(1));
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle()));
+    }
+
+    @Test
+    public void cancelledDownloadLeavesNothingToResume() throws Exception {
+        final CountDownLatch isFirstHalfSent = new CountDownLatch(1);
+        final CountDownLatch isCancelled = new CountDownLatch(1);
+        final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<String>());
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                rangeHeaders.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+                exchange.getResponseHeaders().set("ETag", "\"package\"");
+                exchange.sendResponseHeaders(200, BUNDLE.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(BUNDLE, 0, BUNDLE.length / 2);
+                out.flush();
+                isFirstHalfSent.countDown();
+                if (isCancelled.getCount() == 0) {
+                    out.write(BUNDLE, BUNDLE.length / 2, BUNDLE.length - BUNDLE.length / 2);
+                    out.close();
+                    return;
+                }
+
+                await(isCancelled);
+                try {
+                    out.write(BUNDLE, BUNDLE.length / 2, BUNDLE.length - BUNDLE.length / 2);
+                    out.close();
+                } catch (IOException e) {
+                    // The client stopped reading.
+                }
+            }
+        });
+
+        final CountDownLatch isSecondCallerWaiting = new CountDownLatch(1);
+        Thread firstCaller = startDownload(createUpdatePackage("v1"), null);
+        await(isFirstHalfSent);
+        Thread secondCaller = startDownload(createUpdatePackage("v1"), new DownloadProgressCallback() {
+            @Override
+            public void call(DownloadProgress downloadProgress) {
+                isSecondCallerWaiting.countDown();
+            }
+        });
+        await(isSecondCallerWaiting);
+
+        assertTrue(mUpdateManager.cancelDownload("bundlehash"));
+        isCancelled.countDown();
+        firstCaller.join();
+        secondCaller.join();
+
+        // Both the download and the request waiting for it end as cancelled.
+        assertEquals(2, mDownloadErrors.size());
+        for (Throwable error : mDownloadErrors) {
+            assertTrue(String.valueOf(error), error instanceof CodePushDownloadCancelledException);
+        }
+
+        assertFalse(new File(mUpdateManager.getPackageFolderPath("bundlehash")).exists());
+        assertFalse(getStagingFolder().exists());
+        assertFalse(mUpdateManager.cancelDownload("bundlehash"));
+
+        // The next download starts over instead of resuming the cancelled one.
+        mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+        assertEquals(Arrays.asList("null", "null"), rangeHeaders);
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle()));
+    }
+
+    @Test
+    public void cancelEndsRetryBackoff() throws Exception {
+        mServer.serveStatus("/package", 503);
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setBackoff(60 * 1000, 60 * 1000));
+        Thread caller = startDownload(createUpdatePackage("v1"), null);
+        while (mServer.getRequestCount("/package") == 0) {
+            sleep(10);
+        }
+
+        assertTrue(mUpdateManager.cancelDownload("bundlehash"));
+        caller.join(5000);
+
+        assertFalse(caller.isAlive());
+        assertEquals(1, mDownloadErrors.size());
+        assertTrue(String.valueOf(mDownloadErrors.get(0)), mDownloadErrors.get(0) instanceof CodePushDownloadCancelledException);
+        assertFalse(getStagingFolder().exists());
+    }
+
+    @Test
+    public void downloadsDifferentPackagesSideBySide() throws Exception {
+        final byte[] otherBundle = Arrays.copyOf(BUNDLE, BUNDLE.length / 3);
+        final CountDownLatch areBothStarted = new CountDownLatch(2);
+        // The test servers answer one request at a time, so each package comes from its own.
+        serveAfterLatch(mServer, BUNDLE, areBothStarted);
+        serveAfterLatch(mMirror, otherBundle, areBothStarted);
+
+        Thread firstCaller = startDownload(createUpdatePackage("a", mServer.getUrl("/package")), null);
+        Thread secondCaller = startDownload(createUpdatePackage("b", mMirror.getUrl("/package")), null);
+        await(areBothStarted);
+        // Each download has its own staging folder while both are running.
+        assertTrue(getStagingFolder("a").isDirectory());
+        assertTrue(getStagingFolder("b").isDirectory());
+        firstCaller.join();
+        secondCaller.join();
+
+        assertEquals(Collections.emptyList(), mDownloadErrors);
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle("a")));
+        assertEquals(TestUtils.sha256(otherBundle), TestUtils.sha256(getSavedBundle("b")));
+        assertFalse(getStagingFolder("a").exists());
+        assertFalse(getStagingFolder("b").exists());
+    }
+
+    @Test
+    public void keepsPartialDownloadWhileOtherPackageDownloads() throws Exception {
+        final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<String>());
+        mServer.serve("/a", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                rangeHeaders.add(String.valueOf(range));
+                exchange.getResponseHeaders().set("ETag", "\"a\"");
+                if (range == null) {
+                    // The first response breaks off halfway.
+                    exchange.sendResponseHeaders(200, BUNDLE.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(BUNDLE, 0, BUNDLE.length / 2);
+                    out.flush();
+                    return;
+                }
+
+                int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (BUNDLE.length - 1) + "/" + BUNDLE.length);
+                TestHttpServer.respond(exchange, 206, Arrays.copyOfRange(BUNDLE, start, BUNDLE.length));
+            }
+        });
+        mServer.serve("/b", BUNDLE);
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setMaxAttempts(1));
+
+        try {
+            mUpdateManager.downloadPackage(createUpdatePackage("a", mServer.getUrl("/a")), BUNDLE_FILE_NAME, null, null);
+            fail("Expected the interrupted download to fail.");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        mUpdateManager.downloadPackage(createUpdatePackage("b", mServer.getUrl("/b")), BUNDLE_FILE_NAME, null, null);
+        assertTrue(new File(getStagingFolder("a"), CodePushConstants.DOWNLOAD_FILE_NAME).exists());
+        assertFalse(getStagingFolder("b").exists());
+
+        mUpdateManager.downloadPackage(createUpdatePackage("a", mServer.getUrl("/a")), BUNDLE_FILE_NAME, null, null);
+        assertEquals(Arrays.asList("null", "bytes=" + BUNDLE.length / 2 + "-"), rangeHeaders);
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle("a")));
+    }
+
+    @Test
+    public void extractsStreamedPackageBeforeItEnds() throws Exception {
+        final byte[] archive = createArchive();
+        // The end of central directory record of the zip is held back until the contents are saved.
+        final int heldBackLength = 22;
+        final AtomicReference<String> stateBeforeEnd = new AtomicReference<>();
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, archive.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(archive, 0, archive.length - heldBackLength);
+                out.flush();
+                stateBeforeEnd.set(waitForSavedBundle() + ", download file " + new File(getStagingFolder(), CodePushConstants.DOWNLOAD_FILE_NAME).exists());
+                out.write(archive, archive.length - heldBackLength, heldBackLength);
+                out.close();
+            }
+        });
+        mUpdateManager.setStreamingExtractionEnabled(true);
+
+        mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+
+        // The contents were in place while the rest of the archive was still on its way, and
+        // the archive was never stored.
+        assertEquals("bundle saved, download file false", stateBeforeEnd.get());
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle()));
+        assertArrayEquals(IMAGE, TestUtils.readFile(new File(mUpdateManager.getPackageFolderPath("bundlehash"), "assets/image.png")));
+        assertFalse(getStagingFolder().exists());
+    }
+
+    @Test
+    public void restartsInterruptedStreamedPackage() throws Exception {
+        final byte[] archive = createArchive();
+        final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<String>());
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                rangeHeaders.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+                exchange.getResponseHeaders().set("ETag", "\"package\"");
+                exchange.sendResponseHeaders(200, archive.length);
+                OutputStream out = exchange.getResponseBody();
+                // The first response breaks off halfway.
+                out.write(archive, 0, rangeHeaders.size() == 1 ? archive.length / 2 : archive.length);
+                out.flush();
+            }
+        });
+        mUpdateManager.setStreamingExtractionEnabled(true);
+        mUpdateManager.setRetryPolicy(new CodePushRetryPolicy().setBackoff(0, 0).addRetryableException(IOException.class));
+
+        mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+
+        // Nothing of a streamed download is kept to resume, so the retry starts over.
+        assertEquals(Arrays.asList("null", "null"), rangeHeaders);
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle()));
+        assertArrayEquals(IMAGE, TestUtils.readFile(new File(mUpdateManager.getPackageFolderPath("bundlehash"), "assets/image.png")));
+    }
+
+    @Test
+    public void streamsPlainBundleIntoPackageFolder() throws Exception {
+        mServer.serve("/package", BUNDLE);
+        mUpdateManager.setStreamingExtractionEnabled(true);
+
+        mUpdateManager.downloadPackage(createUpdatePackage("v1"), BUNDLE_FILE_NAME, null, null);
+
+        assertEquals(TestUtils.sha256(BUNDLE), TestUtils.sha256(getSavedBundle()));
+        assertFalse(getStagingFolder().exists());
+    }
+
+    // Waits until the bundle is saved in full, and returns whether it was.
+    private String waitForSavedBundle() {
+        for (int i = 0; i < 500; i++) {
+            if (getSavedBundle().length() == BUNDLE.length) {
+                return "bundle saved";
+            }
+
+            sleep(10);
+        }
+
+        return "bundle not saved";
+    }
+
+    // Sends the first half of the body, and the rest once the latch, which this request also
+    // counts down, is released.
+    private void serveAfterLatch(TestHttpServer server, final byte[] body, final CountDownLatch latch) {
+        server.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body, 0, body.length / 2);
+                out.flush();
+                latch.countDown();
+                await(latch);
+                out.write(body, body.length / 2, body.length - body.length / 2);
+                out.close();
+            }
+        });
+    }
+
+    private Thread startDownload(final JSONObject updatePackage, final DownloadProgressCallback progressCallback) {
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mUpdateManager.downloadPackage(updatePackage, BUNDLE_FILE_NAME, progressCallback, null);
+                } catch (Throwable e) {
+                    mDownloadErrors.add(e);
+                }
+            }
+        });
+        caller.start();
+        return caller;
+    }
+
+    private File getStagingFolder() {
+        return getStagingFolder("bundlehash");
+    }
+
+    private File getStagingFolder(String packageHash) {
+        File codePushFolder = new File(mUpdateManager.getPackageFolderPath(packageHash)).getParentFile();
+        return new File(new File(codePushFolder, CodePushConstants.DOWNLOAD_STAGING_FOLDER_NAME), packageHash);
+    }
+
+    private File getSavedBundle() {
+        return getSavedBundle("bundlehash");
+    }
+
+    private File getSavedBundle(String packageHash) {
+        return new File(mUpdateManager.getPackageFolderPath(packageHash), BUNDLE_FILE_NAME);
+    }
+
+    private static byte[] createArchive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry(BUNDLE_FILE_NAME));
+        zip.write(BUNDLE);
+        zip.putNextEntry(new ZipEntry("assets/image.png"));
+        zip.write(IMAGE);
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    // Answers the one-byte probe of the mirror selector after probeDelayMillis and every
+    // download with statusCode, recording the download under name.
+    private void servePackage(TestHttpServer server, final String name, final long probeDelayMillis, final int statusCode) {
+        server.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (isProbe(exchange)) {
+                    sleep(probeDelayMillis);
+                    TestHttpServer.respond(exchange, 200, new byte[]{BUNDLE[0]});
+                    return;
+                }
+
+                mDownloads.add(name);
+                TestHttpServer.respond(exchange, statusCode, statusCode == 200 ? BUNDLE : new byte[0]);
+            }
+        });
+    }
+
+    private static boolean isProbe(HttpExchange exchange) {
+        return "bytes=0-0".equals(exchange.getRequestHeaders().getFirst("Range"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private JSONObject createUpdatePackage(String label) throws Exception {
+        return new JSONObject()
+                .put(CodePushConstants.PACKAGE_HASH_KEY, "bundlehash")
+                .put(CodePushConstants.DOWNLOAD_URL_KEY, mServer.getUrl("/package"))
+                .put("label", label);
+    }
+
+    private JSONObject createUpdatePackage(String packageHash, String downloadUrl) throws Exception {
+        return new JSONObject()
+                .put(CodePushConstants.PACKAGE_HASH_KEY, packageHash)
+                .put(CodePushConstants.DOWNLOAD_URL_KEY, downloadUrl)
+                .put("label", "v1");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("Timed out.");
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] createBundle() {
+        StringBuilder bundle = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            bundle.append("console.log(").append(i).append(");\n");
+        }
+
+        return bundle.toString().getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiffPatchEntryWriterTest {
+
+    private static final String BUNDLE = "index.android.bundle";
+    private static final String PATCH = "index.android.bundle.bsdiff";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mCurrentPackageFolder;
+    private File mNewPackageFolder;
+
+    @Before
+    public void setUp() throws IOException {
+        mCurrentPackageFolder = mTemporaryFolder.newFolder("current");
+        mNewPackageFolder = mTemporaryFolder.newFolder("new");
+        BinaryPatcherTest.writeOldBundle(new File(mCurrentPackageFolder, BUNDLE));
+    }
+
+    @Test
+    public void appliesPatchesWhileExtracting() throws IOException {
+        byte[] archive = createDiffArchive(true, BinaryPatcherTest.NEW_BUNDLE_SHA256);
+        extract(archive);
+
+        assertEquals(BinaryPatcherTest.NEW_BUNDLE_SHA256, TestUtils.sha256(new File(mNewPackageFolder, BUNDLE)));
+        assertFalse(new File(mNewPackageFolder, PATCH).exists());
+
+        mergeWithCurrentPackage();
+        assertEquals(BinaryPatcherTest.NEW_BUNDLE_SHA256, TestUtils.sha256(new File(mNewPackageFolder, BUNDLE)));
+    }
+
+    @Test
+    public void appliesPatchesBeforeManifestAfterExtracting() throws IOException {
+        byte[] archive = createDiffArchive(false, BinaryPatcherTest.NEW_BUNDLE_SHA256);
+        extract(archive);
+        assertTrue(new File(mNewPackageFolder, PATCH).exists());
+        assertFalse(new File(mNewPackageFolder, BUNDLE).exists());
+
+        mergeWithCurrentPackage();
+        assertEquals(BinaryPatcherTest.NEW_BUNDLE_SHA256, TestUtils.sha256(new File(mNewPackageFolder, BUNDLE)));
+        assertFalse(new File(mNewPackageFolder, PATCH).exists());
+    }
+
+    @Test
+    public void rejectsPatchedFileWithWrongHash() throws IOException {
+        byte[] archive = createDiffArchive(true, "0000000000000000000000000000000000000000000000000000000000000000");
+        try {
+            extract(archive);
+            fail();
+        } catch (CodePushInvalidUpdateException e) {
+            // Expected.
+        }
+
+        assertFalse(new File(mNewPackageFolder, BUNDLE).exists());
+    }
+
+    @Test
+    public void writesFilesWithoutCurrentPackage() throws IOException {
+        byte[] archive = createDiffArchive(true, BinaryPatcherTest.NEW_BUNDLE_SHA256);
+        new ZipArchiveCodec().extract(new ByteArrayInputStream(archive), mNewPackageFolder,
+                new DiffPatchEntryWriter(null, mNewPackageFolder));
+        assertTrue(new File(mNewPackageFolder, PATCH).exists());
+    }
+
+    private void extract(byte[] archive) throws IOException {
+        new ZipArchiveCodec().extract(new ByteArrayInputStream(archive), mNewPackageFolder,
+                new DiffPatchEntryWriter(mCurrentPackageFolder.getPath(), mNewPackageFolder));
+    }
+
+    private void mergeWithCurrentPackage() throws IOException {
+        CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(new File(mNewPackageFolder, CodePushConstants.DIFF_MANIFEST_FILE_NAME).getPath(),
+                mCurrentPackageFolder.getPath(), mNewPackageFolder.getPath());
+    }
+
+    private static byte[] createDiffArchive(boolean isManifestFirst, String expectedHash) throws IOException {
+        JSONObject patchedFile = new JSONObject();
+        JSONObject diffManifest = new JSONObject();
+        try {
+            patchedFile.put("path", BUNDLE);
+            patchedFile.put("patch", PATCH);
+            patchedFile.put("hash", expectedHash);
+            diffManifest.put("deletedFiles", new JSONArray());
+            diffManifest.put("patchedFiles", new JSONArray().put(patchedFile));
+        } catch (org.json.JSONException e) {
+            throw new AssertionError(e);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(output);
+        byte[] manifest = diffManifest.toString().getBytes("UTF-8");
+        if (isManifestFirst) {
+            addEntry(zip, CodePushConstants.DIFF_MANIFEST_FILE_NAME, manifest);
+        }
+
+        addEntry(zip, PATCH, TestUtils.readResource("index.android.bundle.bsdiff43"));
+        if (!isManifestFirst) {
+            addEntry(zip, CodePushConstants.DIFF_MANIFEST_FILE_NAME, manifest);
+        }
+
+        zip.close();
+        return output.toByteArray();
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
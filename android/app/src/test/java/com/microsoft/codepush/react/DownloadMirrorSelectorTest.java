@@ -0,0 +1,114 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DownloadMirrorSelectorTest {
+
+    private static final CodePushHttpTransport FAILING_TRANSPORT = new CodePushHttpTransport() {
+        @Override
+        public CodePushHttpResponse execute(CodePushHttpRequest request) throws IOException {
+            throw new ConnectException("Connection refused");
+        }
+    };
+
+    private TestHttpServer mFastServer;
+    private TestHttpServer mSlowServer;
+    private DownloadMirrorSelector mSelector;
+
+    @Before
+    public void setUp() throws IOException {
+        mFastServer = new TestHttpServer();
+        mFastServer.serve("/package", new byte[]{1});
+        mSlowServer = new TestHttpServer();
+        mSlowServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+
+                TestHttpServer.respond(exchange, 200, new byte[]{1});
+            }
+        });
+        mSelector = new DownloadMirrorSelector();
+    }
+
+    @After
+    public void tearDown() {
+        mFastServer.stop();
+        mSlowServer.stop();
+    }
+
+    @Test
+    public void ranksMirrorsByProbedLatency() throws IOException {
+        URL slowMirror = new URL(mSlowServer.getUrl("/package"));
+        URL fastMirror = new URL(mFastServer.getUrl("/package"));
+
+        List<URL> rankedMirrors = mSelector.rank(Arrays.asList(slowMirror, fastMirror), 0, new HttpURLConnectionTransport());
+        assertEquals(Arrays.asList(fastMirror, slowMirror), rankedMirrors);
+        assertEquals("bytes=0-0", mSlowServer.getLastRangeHeader("/package"));
+        assertEquals("bytes=0-0", mFastServer.getLastRangeHeader("/package"));
+    }
+
+    @Test
+    public void probesEveryMirrorBeforeRanking() throws IOException {
+        URL slowMirror = new URL(mSlowServer.getUrl("/package"));
+        URL fastMirror = new URL(mFastServer.getUrl("/package"));
+        mSelector.rank(Arrays.asList(slowMirror, fastMirror), 0, new HttpURLConnectionTransport());
+        mSelector.rank(Arrays.asList(slowMirror, fastMirror), 0, new HttpURLConnectionTransport());
+
+        assertEquals(2, mSlowServer.getRequestCount("/package"));
+        assertEquals(2, mFastServer.getRequestCount("/package"));
+    }
+
+    @Test
+    public void ranksFailingMirrorsLast() throws IOException {
+        URL missingMirror = new URL(mFastServer.getUrl("/missing"));
+        URL slowMirror = new URL(mSlowServer.getUrl("/package"));
+
+        List<URL> rankedMirrors = mSelector.rank(Arrays.asList(missingMirror, slowMirror), 0, new HttpURLConnectionTransport());
+        assertEquals(Arrays.asList(slowMirror, missingMirror), rankedMirrors);
+    }
+
+    @Test
+    public void ranksByThroughputForLargePackages() throws IOException {
+        URL lowLatencyMirror = new URL("https://low-latency.example.com/package");
+        URL highThroughputMirror = new URL("https://high-throughput.example.com/package");
+        mSelector.recordLatency(lowLatencyMirror, 20);
+        mSelector.recordThroughput(lowLatencyMirror, 1000, 1000);
+        mSelector.recordLatency(highThroughputMirror, 200);
+        mSelector.recordThroughput(highThroughputMirror, 100 * 1000, 1000);
+        List<URL> mirrors = Arrays.asList(lowLatencyMirror, highThroughputMirror);
+
+        // Both probes fail, which penalizes both hosts alike.
+        assertEquals(Arrays.asList(lowLatencyMirror, highThroughputMirror), mSelector.rank(mirrors, 10, FAILING_TRANSPORT));
+        assertEquals(Arrays.asList(highThroughputMirror, lowLatencyMirror), mSelector.rank(mirrors, 1000 * 1000, FAILING_TRANSPORT));
+    }
+
+    @Test
+    public void penalizesFailedDownloads() throws IOException {
+        URL firstMirror = new URL("https://first.example.com/package");
+        URL secondMirror = new URL("https://second.example.com/package");
+        mSelector.recordLatency(firstMirror, 20);
+        mSelector.recordLatency(secondMirror, 200);
+        mSelector.recordFailure(firstMirror);
+
+        assertEquals(Arrays.asList(secondMirror, firstMirror), mSelector.rank(Arrays.asList(firstMirror, secondMirror), 0, FAILING_TRANSPORT));
+        mSelector.recordSuccess(firstMirror);
+        assertEquals(Arrays.asList(firstMirror, secondMirror), mSelector.rank(Arrays.asList(firstMirror, secondMirror), 0, FAILING_TRANSPORT));
+    }
+}
@@ -0,0 +1,100 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// The tar fixtures were written by GNU tar 1.34 and compressed with libzstd. gnu.tar.zst and
+// pax.tar.zst hold the same tree in the two formats, including a path over 100 bytes and a
+// symlink. pax-size-good.tar.zst and pax-size-bad.tar.zst carry a "size" pax record, set with
+// --pax-option, of "6" and "12x".
+public class FileUtilsTest {
+
+    private static final String BUNDLE_SHA256 = "e33b380cc3dda333ead590f84c6df69f7a11d5aaf139cb9ad9ff298777a5bd17";
+    private static final String LOGO_SHA256 = "0f9cdbd65019cec0152cf85b00a14d70b0a1b3ee99e648099c6e0e7088e8b7ac";
+    private static final String LONG_PATH = "assets/nested_directory_00/nested_directory_01/nested_directory_02/nested_directory_03/"
+            + "nested_directory_04/nested_directory_05/nested_directory_06/nested_directory_07/file_with_a_long_name_over_one_hundred_bytes.json";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void extractsGnuTar() throws IOException {
+        assertExtractedTree(extractTar(TestUtils.readResource("gnu.tar.zst")));
+    }
+
+    @Test
+    public void extractsPaxTar() throws IOException {
+        assertExtractedTree(extractTar(TestUtils.readResource("pax.tar.zst")));
+    }
+
+    @Test
+    public void usesPaxSizeRecord() throws IOException {
+        File folder = extractTar(TestUtils.readResource("pax-size-good.tar.zst"));
+        assertEquals("hello\n", new String(TestUtils.readFile(new File(folder, "hello.txt")), "UTF-8"));
+    }
+
+    @Test(expected = CodePushInvalidUpdateException.class)
+    public void rejectsInvalidPaxSizeRecord() throws IOException {
+        extractTar(TestUtils.readResource("pax-size-bad.tar.zst"));
+    }
+
+    @Test
+    public void rejectsPathTraversal() throws IOException {
+        File folder = mTemporaryFolder.newFolder("update");
+        try {
+            FileUtils.extractTarEntries(new ZstdInputStream(new ByteArrayInputStream(TestUtils.readResource("traversal.tar.zst"))), folder);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        assertFalse(new File(folder.getParentFile(), "evil.txt").exists());
+    }
+
+    @Test
+    public void rejectsTruncatedTar() throws IOException {
+        byte[] tar = TestUtils.readFully(new ZstdInputStream(new ByteArrayInputStream(TestUtils.readResource("gnu.tar.zst"))));
+        // Cut inside the first header, and inside the data of the bundle.
+        for (int length : new int[]{ 100, 512 * 8 }) {
+            try {
+                FileUtils.extractTarEntries(new ByteArrayInputStream(Arrays.copyOf(tar, length)), mTemporaryFolder.newFolder());
+                fail("Expected truncated input of " + length + " bytes to fail.");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCorruptHeader() throws IOException {
+        byte[] tar = TestUtils.readFully(new ZstdInputStream(new ByteArrayInputStream(TestUtils.readResource("gnu.tar.zst"))));
+        tar[10] ^= 1;
+        FileUtils.extractTarEntries(new ByteArrayInputStream(tar), mTemporaryFolder.newFolder());
+    }
+
+    private File extractTar(byte[] archive) throws IOException {
+        File folder = mTemporaryFolder.newFolder();
+        new ZstdTarArchiveCodec().extract(new ByteArrayInputStream(archive), folder);
+        return folder;
+    }
+
+    private static void assertExtractedTree(File folder) throws IOException {
+        assertEquals(BUNDLE_SHA256, TestUtils.sha256(new File(folder, "index.android.bundle")));
+        assertEquals(LOGO_SHA256, TestUtils.sha256(new File(folder, "assets/images/logo.png")));
+        assertEquals("{\"deep\": true}\n", new String(TestUtils.readFile(new File(folder, LONG_PATH)), "UTF-8"));
+        // Links are skipped rather than extracted.
+        assertFalse(new File(folder, "assets/link.bundle").exists());
+        assertTrue(new File(folder, "assets/images").isDirectory());
+    }
+}
@@ -0,0 +1,122 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Random;
+
+// Compares the buffer sizes picked by IoBufferPolicy with the fixed sizes used before it, for
+// file copies and for downloads from a local HTTP server. It only runs when the environment
+// variable CODEPUSH_BENCHMARK is set, e.g.
+// CODEPUSH_BENCHMARK=1 ./gradlew testDebugUnitTest --tests '*IoBufferPolicyBenchmark'
+// and prints the best time of several rounds for each setting. The JVM on a desktop only hints
+// at how a phone behaves, so treat the numbers as relative.
+public class IoBufferPolicyBenchmark {
+
+    private static final int FIXED_FILE_BUFFER_SIZE = 1024 * 8;
+    private static final int FIXED_DOWNLOAD_BUFFER_SIZE = 1024 * 256;
+    private static final int FILE_SIZE = 1024 * 1024 * 64;
+    private static final int DOWNLOAD_SIZE = 1024 * 1024 * 32;
+    private static final int ROUNDS = 5;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void compareFixedAndAdaptiveBufferSizes() throws IOException {
+        Assume.assumeTrue(System.getenv("CODEPUSH_BENCHMARK") != null);
+
+        byte[] contents = new byte[FILE_SIZE];
+        new Random(1).nextBytes(contents);
+        File sourceFile = mTemporaryFolder.newFile("source");
+        TestUtils.writeFile(sourceFile, contents);
+        File destinationFile = new File(mTemporaryFolder.getRoot(), "destination");
+
+        long fixedCopyNanos = Long.MAX_VALUE;
+        long adaptiveCopyNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long startTime = System.nanoTime();
+            copy(sourceFile, destinationFile, FIXED_FILE_BUFFER_SIZE);
+            fixedCopyNanos = Math.min(fixedCopyNanos, System.nanoTime() - startTime);
+
+            // FileUtils.copyFile picks its buffer with IoBufferPolicy and records its throughput.
+            startTime = System.nanoTime();
+            FileUtils.copyFile(sourceFile, destinationFile);
+            adaptiveCopyNanos = Math.min(adaptiveCopyNanos, System.nanoTime() - startTime);
+        }
+
+        report("copy", "fixed", FIXED_FILE_BUFFER_SIZE, FILE_SIZE, fixedCopyNanos);
+        report("copy", "adaptive", IoBufferPolicy.getBufferSize(IoBufferPolicy.FILE), FILE_SIZE, adaptiveCopyNanos);
+
+        TestHttpServer server = new TestHttpServer();
+        try {
+            byte[] body = new byte[DOWNLOAD_SIZE];
+            System.arraycopy(contents, 0, body, 0, body.length);
+            server.serve("/package", body);
+            URL url = new URL(server.getUrl("/package"));
+            long fixedDownloadNanos = Long.MAX_VALUE;
+            long adaptiveDownloadNanos = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                fixedDownloadNanos = Math.min(fixedDownloadNanos, download(url, destinationFile, FIXED_DOWNLOAD_BUFFER_SIZE));
+                long durationNanos = download(url, destinationFile, IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD));
+                IoBufferPolicy.recordThroughput(IoBufferPolicy.DOWNLOAD, DOWNLOAD_SIZE, durationNanos);
+                adaptiveDownloadNanos = Math.min(adaptiveDownloadNanos, durationNanos);
+            }
+
+            report("download", "fixed", FIXED_DOWNLOAD_BUFFER_SIZE, DOWNLOAD_SIZE, fixedDownloadNanos);
+            report("download", "adaptive", IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD), DOWNLOAD_SIZE, adaptiveDownloadNanos);
+            // Parallel segments and blob fetches split the heap budget between their streams.
+            System.out.println(String.format("4 parallel downloads hold %d KB of buffers with fixed sizes and %d KB with adaptive ones.",
+                    FIXED_DOWNLOAD_BUFFER_SIZE * 4 / 1024, IoBufferPolicy.getBufferSize(IoBufferPolicy.DOWNLOAD, 4) * 4 / 1024));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void copy(File sourceFile, File destinationFile, int bufferSize) throws IOException {
+        FileInputStream in = new FileInputStream(sourceFile);
+        FileOutputStream out = new FileOutputStream(destinationFile);
+        try {
+            byte[] buffer = new byte[bufferSize];
+            int numBytesRead;
+            while ((numBytesRead = in.read(buffer)) > 0) {
+                out.write(buffer, 0, numBytesRead);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static long download(URL url, File destinationFile, int bufferSize) throws IOException {
+        long startTime = System.nanoTime();
+        CodePushHttpResponse response = new HttpURLConnectionTransport().execute(CodePushUpdateManager.createDownloadRequest(url));
+        FileOutputStream out = new FileOutputStream(destinationFile);
+        try {
+            InputStream in = response.getBody();
+            byte[] buffer = new byte[bufferSize];
+            int numBytesRead;
+            while ((numBytesRead = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, numBytesRead);
+            }
+        } finally {
+            out.close();
+            response.close();
+        }
+
+        return System.nanoTime() - startTime;
+    }
+
+    private static void report(String operation, String setting, int bufferSize, long bytes, long durationNanos) {
+        double megabytesPerSecond = bytes / 1024.0 / 1024.0 / (durationNanos / 1e9);
+        System.out.println(String.format("%-9s %-9s %4d KB buffer %8.1f MB/s", operation, setting, bufferSize / 1024, megabytesPerSecond));
+    }
+}
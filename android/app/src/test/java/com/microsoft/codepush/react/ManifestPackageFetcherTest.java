@@ -0,0 +1,196 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ManifestPackageFetcherTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] UNCHANGED = "unchanged".getBytes(UTF_8);
+    private static final byte[] CHANGED = "changed".getBytes(UTF_8);
+    private static final byte[] ADDED = "added file".getBytes(UTF_8);
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mCurrentPackageFolder;
+    private File mNewPackageFolder;
+    private InFlightDownload mDownload;
+    private final List<DownloadProgress> mProgress = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new TestHttpServer();
+        mCurrentPackageFolder = mTemporaryFolder.newFolder("current");
+        mNewPackageFolder = new File(mTemporaryFolder.getRoot(), "new");
+        TestUtils.writeFile(new File(mCurrentPackageFolder, "assets/unchanged.png"), UNCHANGED);
+        TestUtils.writeFile(new File(mCurrentPackageFolder, "index.android.bundle"), "old bundle".getBytes(UTF_8));
+
+        mDownload = new InFlightDownload();
+        mDownload.addProgressCallback(new DownloadProgressCallback() {
+            @Override
+            public void call(DownloadProgress downloadProgress) {
+                synchronized (mProgress) {
+                    mProgress.add(downloadProgress);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void fetchesOnlyFilesMissingFromCurrentPackage() throws Exception {
+        mServer.serve("/manifests/package", new JSONObject()
+                .put("assets/unchanged.png", TestUtils.sha256(UNCHANGED))
+                .put("assets/moved.png", TestUtils.sha256(UNCHANGED))
+                .put("index.android.bundle", TestUtils.sha256(CHANGED))
+                .put("assets/copy.txt", TestUtils.sha256(CHANGED))
+                .toString().getBytes(UTF_8));
+        serveBlob(CHANGED);
+
+        createFetcher(new CodePushRetryPolicy()).fetch(mCurrentPackageFolder.getAbsolutePath(), mNewPackageFolder, mDownload);
+
+        assertArrayEquals(UNCHANGED, TestUtils.readFile(new File(mNewPackageFolder, "assets/unchanged.png")));
+        assertArrayEquals(UNCHANGED, TestUtils.readFile(new File(mNewPackageFolder, "assets/moved.png")));
+        assertArrayEquals(CHANGED, TestUtils.readFile(new File(mNewPackageFolder, "index.android.bundle")));
+        assertArrayEquals(CHANGED, TestUtils.readFile(new File(mNewPackageFolder, "assets/copy.txt")));
+        assertEquals(1, mServer.getRequestCount("/blobs/" + TestUtils.sha256(CHANGED)));
+        assertEquals(0, mServer.getRequestCount("/blobs/" + TestUtils.sha256(UNCHANGED)));
+    }
+
+    @Test
+    public void rejectsBlobWithWrongHash() throws Exception {
+        mServer.serve("/manifests/package", new JSONObject()
+                .put("index.android.bundle", TestUtils.sha256(CHANGED))
+                .toString().getBytes(UTF_8));
+        mServer.serve("/blobs/" + TestUtils.sha256(CHANGED), ADDED);
+
+        try {
+            createFetcher(new CodePushRetryPolicy()).fetch(mCurrentPackageFolder.getAbsolutePath(), mNewPackageFolder, mDownload);
+            fail("Expected the hash check to fail.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Received contents with hash " + TestUtils.sha256(ADDED)));
+        }
+
+        assertEquals(1, mServer.getRequestCount("/blobs/" + TestUtils.sha256(CHANGED)));
+    }
+
+    @Test
+    public void retriesFailedBlobFetches() throws Exception {
+        mServer.serve("/manifests/package", new JSONObject()
+                .put("index.android.bundle", TestUtils.sha256(CHANGED))
+                .toString().getBytes(UTF_8));
+        final AtomicInteger requestCount = new AtomicInteger();
+        mServer.serve("/blobs/" + TestUtils.sha256(CHANGED), new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestHttpServer.respond(exchange, requestCount.incrementAndGet() < 3 ? 503 : 200, CHANGED);
+            }
+        });
+
+        CodePushRetryPolicy retryPolicy = new CodePushRetryPolicy().setBackoff(0, 0);
+        createFetcher(retryPolicy).fetch(mCurrentPackageFolder.getAbsolutePath(), mNewPackageFolder, mDownload);
+
+        assertArrayEquals(CHANGED, TestUtils.readFile(new File(mNewPackageFolder, "index.android.bundle")));
+        assertEquals(3, requestCount.get());
+        assertEquals(CHANGED.length, getLastProgress().getReceivedBytes());
+    }
+
+    @Test
+    public void stopsRetryingAfterMaxAttempts() throws Exception {
+        mServer.serve("/manifests/package", new JSONObject()
+                .put("index.android.bundle", TestUtils.sha256(CHANGED))
+                .toString().getBytes(UTF_8));
+        mServer.serveStatus("/blobs/" + TestUtils.sha256(CHANGED), 503);
+
+        try {
+            createFetcher(new CodePushRetryPolicy().setMaxAttempts(2).setBackoff(0, 0))
+                    .fetch(mCurrentPackageFolder.getAbsolutePath(), mNewPackageFolder, mDownload);
+            fail("Expected the fetch to fail.");
+        } catch (CodePushHttpStatusException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+
+        assertEquals(2, mServer.getRequestCount("/blobs/" + TestUtils.sha256(CHANGED)));
+    }
+
+    @Test
+    public void reportsTotalBytesFromManifestSizes() throws Exception {
+        mServer.serve("/manifests/package", new JSONObject()
+                .put("assets/unchanged.png", new JSONObject().put("hash", TestUtils.sha256(UNCHANGED)).put("size", UNCHANGED.length))
+                .put("index.android.bundle", new JSONObject().put("hash", TestUtils.sha256(CHANGED)).put("size", CHANGED.length))
+                .put("assets/added.txt", new JSONObject().put("hash", TestUtils.sha256(ADDED)).put("size", ADDED.length))
+                .toString().getBytes(UTF_8));
+        serveBlob(CHANGED);
+        serveBlob(ADDED);
+
+        createFetcher(new CodePushRetryPolicy()).fetch(mCurrentPackageFolder.getAbsolutePath(), mNewPackageFolder, mDownload);
+
+        assertFalse(mProgress.isEmpty());
+        for (DownloadProgress progress : mProgress) {
+            assertEquals(CHANGED.length + ADDED.length, progress.getTotalBytes());
+        }
+
+        assertTrue(getLastProgress().isCompleted());
+        assertArrayEquals(ADDED, TestUtils.readFile(new File(mNewPackageFolder, "assets/added.txt")));
+    }
+
+    @Test
+    public void reportsUnknownTotalWithoutManifestSizes() throws Exception {
+        mServer.serve("/manifests/package", new JSONObject()
+                .put("index.android.bundle", new JSONObject().put("hash", TestUtils.sha256(CHANGED)).put("size", CHANGED.length))
+                .put("assets/added.txt", TestUtils.sha256(ADDED))
+                .toString().getBytes(UTF_8));
+        serveBlob(CHANGED);
+        serveBlob(ADDED);
+
+        createFetcher(new CodePushRetryPolicy()).fetch(mCurrentPackageFolder.getAbsolutePath(), mNewPackageFolder, mDownload);
+
+        for (DownloadProgress progress : mProgress.subList(0, mProgress.size() - 1)) {
+            assertEquals(-1, progress.getTotalBytes());
+        }
+
+        assertEquals(CHANGED.length + ADDED.length, getLastProgress().getTotalBytes());
+        assertTrue(getLastProgress().isCompleted());
+    }
+
+    private ManifestPackageFetcher createFetcher(CodePushRetryPolicy retryPolicy) throws IOException {
+        return new ManifestPackageFetcher(new HttpURLConnectionTransport(), new URL(mServer.getUrl("/manifests/package")),
+                mServer.getUrl("/blobs/"), 2, new BandwidthLimiter(), retryPolicy);
+    }
+
+    private void serveBlob(byte[] contents) throws IOException {
+        mServer.serve("/blobs/" + TestUtils.sha256(contents), contents);
+    }
+
+    private DownloadProgress getLastProgress() {
+        synchronized (mProgress) {
+            return mProgress.get(mProgress.size() - 1);
+        }
+    }
+}
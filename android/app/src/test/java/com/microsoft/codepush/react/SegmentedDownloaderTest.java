@@ -0,0 +1,142 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedDownloaderTest {
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDownloadFile;
+    private InFlightDownload mDownload;
+    private final List<DownloadProgress> mProgress = Collections.synchronizedList(new ArrayList<DownloadProgress>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new TestHttpServer();
+        mDownloadFile = new File(mTemporaryFolder.getRoot(), "download");
+        mDownload = new InFlightDownload();
+        mDownload.addProgressCallback(new DownloadProgressCallback() {
+            @Override
+            public void call(DownloadProgress downloadProgress) {
+                mProgress.add(downloadProgress);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void splitsPackageIntoEqualRangesWithRemainderInLast() throws IOException {
+        byte[] body = createPackage(4 * MEGABYTE + 3);
+        mServer.serveRanges("/package", body);
+
+        assertTrue(createDownloader(4).download(mDownloadFile, mDownload));
+
+        assertArrayEquals(body, TestUtils.readFile(mDownloadFile));
+        List<String> segmentRanges = mServer.getRangeHeaders("/package");
+        assertEquals("bytes=0-0", segmentRanges.remove(0));
+        Collections.sort(segmentRanges);
+        assertEquals(Arrays.asList(
+                "bytes=0-1048575",
+                "bytes=1048576-2097151",
+                "bytes=2097152-3145727",
+                "bytes=3145728-4194306"), segmentRanges);
+        DownloadProgress lastProgress = mProgress.get(mProgress.size() - 1);
+        assertEquals(body.length, lastProgress.getTotalBytes());
+        assertEquals(body.length, lastProgress.getReceivedBytes());
+    }
+
+    @Test
+    public void usesNoMoreSegmentsThanWholeMegabytes() throws IOException {
+        byte[] body = createPackage(2 * MEGABYTE + MEGABYTE / 2);
+        mServer.serveRanges("/package", body);
+
+        assertTrue(createDownloader(8).download(mDownloadFile, mDownload));
+
+        assertArrayEquals(body, TestUtils.readFile(mDownloadFile));
+        // The probe and two segments.
+        assertEquals(3, mServer.getRequestCount("/package"));
+    }
+
+    @Test
+    public void fallsBackForPackageTooSmallToSplit() throws IOException {
+        mServer.serveRanges("/package", createPackage(MEGABYTE + MEGABYTE / 2));
+
+        assertFalse(createDownloader(4).download(mDownloadFile, mDownload));
+
+        assertFalse(mDownloadFile.exists());
+        assertEquals(1, mServer.getRequestCount("/package"));
+    }
+
+    @Test
+    public void fallsBackWithoutRangeSupport() throws IOException {
+        mServer.serve("/package", createPackage(4 * MEGABYTE));
+
+        assertFalse(createDownloader(4).download(mDownloadFile, mDownload));
+
+        assertFalse(mDownloadFile.exists());
+    }
+
+    @Test
+    public void failsWhenSegmentRangeIsIgnored() throws IOException {
+        final byte[] body = createPackage(4 * MEGABYTE);
+        mServer.serve("/package", new TestHttpServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("bytes=0-0".equals(exchange.getRequestHeaders().getFirst("Range"))) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes 0-0/" + body.length);
+                    TestHttpServer.respond(exchange, 206, new byte[]{body[0]});
+                } else {
+                    // As if the package changed after the probe and If-Range did not match.
+                    TestHttpServer.respond(exchange, 200, body);
+                }
+            }
+        });
+
+        try {
+            createDownloader(2).download(mDownloadFile, mDownload);
+            fail("Expected the segmented download to fail.");
+        } catch (CodePushUnknownException e) {
+            // Expected.
+        }
+    }
+
+    private SegmentedDownloader createDownloader(int segmentCount) throws IOException {
+        return new SegmentedDownloader(new HttpURLConnectionTransport(), new URL(mServer.getUrl("/package")),
+                segmentCount, new BandwidthLimiter());
+    }
+
+    private static byte[] createPackage(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,155 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A local HTTP server that stands in for the update, mirror and content servers in tests. Every
+// request is recorded, and paths without a handler answer 404.
+class TestHttpServer {
+
+    interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer mServer;
+    private final Map<String, Handler> mHandlers = Collections.synchronizedMap(new HashMap<String, Handler>());
+    private final List<String> mRequests = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<String, List<String>> mRangeHeaders = new HashMap<>();
+
+    TestHttpServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                mRequests.add(path);
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range != null) {
+                    synchronized (mRangeHeaders) {
+                        if (!mRangeHeaders.containsKey(path)) {
+                            mRangeHeaders.put(path, new ArrayList<String>());
+                        }
+
+                        mRangeHeaders.get(path).add(range);
+                    }
+                }
+
+                try {
+                    Handler handler = mHandlers.get(path);
+                    if (handler == null) {
+                        respond(exchange, 404, new byte[0]);
+                    } else {
+                        handler.handle(exchange);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    String getUrl(String path) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+    }
+
+    void serve(String path, final byte[] body) {
+        serve(path, new Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, body);
+            }
+        });
+    }
+
+    // Serves the body with an ETag, and answers a single "bytes=start-end" or "bytes=start-" range
+    // with 206 Partial Content.
+    void serveRanges(String path, final byte[] body) {
+        serve(path, new Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("ETag", "\"" + body.length + "\"");
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range == null) {
+                    respond(exchange, 200, body);
+                    return;
+                }
+
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                int start = Integer.parseInt(bounds[0]);
+                int end = bounds[1].isEmpty() ? body.length - 1 : Math.min(Integer.parseInt(bounds[1]), body.length - 1);
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+                respond(exchange, 206, Arrays.copyOfRange(body, start, end + 1));
+            }
+        });
+    }
+
+    void serveStatus(String path, final int statusCode) {
+        serve(path, new Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, statusCode, new byte[0]);
+            }
+        });
+    }
+
+    void serve(String path, Handler handler) {
+        mHandlers.put(path, handler);
+    }
+
+    int getRequestCount(String path) {
+        int count = 0;
+        synchronized (mRequests) {
+            for (String request : mRequests) {
+                if (request.equals(path)) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    List<String> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<>(mRequests);
+        }
+    }
+
+    String getLastRangeHeader(String path) {
+        List<String> rangeHeaders = getRangeHeaders(path);
+        return rangeHeaders.isEmpty() ? null : rangeHeaders.get(rangeHeaders.size() - 1);
+    }
+
+    List<String> getRangeHeaders(String path) {
+        synchronized (mRangeHeaders) {
+            List<String> rangeHeaders = mRangeHeaders.get(path);
+            return rangeHeaders == null ? new ArrayList<String>() : new ArrayList<>(rangeHeaders);
+        }
+    }
+
+    void stop() {
+        mServer.stop(0);
+    }
+
+    static void respond(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.microsoft.codepush.react;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+class TestUtils {
+
+    static byte[] readResource(String name) throws IOException {
+        InputStream stream = TestUtils.class.getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Missing test resource " + name);
+        }
+
+        try {
+            return readFully(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int numBytesRead;
+        while ((numBytesRead = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, numBytesRead);
+        }
+
+        return output.toByteArray();
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            return readFully(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    static void writeFile(File file, byte[] contents) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(contents);
+        } finally {
+            stream.close();
+        }
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static String sha256(File file) throws IOException {
+        return sha256(readFile(file));
+    }
+}
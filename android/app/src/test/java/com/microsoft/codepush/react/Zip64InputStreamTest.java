@@ -0,0 +1,134 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+// zip64.zip was written by Python's zipfile with force_zip64, and then had the local header size
+// fields set to 0xFFFFFFFF as the spec requires when a Zip64 extra field carries the sizes.
+// zip64-streamed.zip was written to an unseekable stream, so its sizes follow each entry in a
+// Zip64 data descriptor.
+public class Zip64InputStreamTest {
+
+    private static final String BUNDLE_SHA256 = "ce94d1f7939460923b9e4eed4f3da36f8de83d72d5938b156930aa6256dc3ba6";
+    private static final String LOGO_SHA256 = "0f9cdbd65019cec0152cf85b00a14d70b0a1b3ee99e648099c6e0e7088e8b7ac";
+    // Offset of the uncompressed size in the Zip64 extra field of the first local header.
+    private static final int FIRST_ZIP64_SIZE_OFFSET = 30 + "index.android.bundle".length() + 4;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsSizesFromZip64ExtraField() throws IOException {
+        File folder = extract(TestUtils.readResource("zip64.zip"));
+        assertEquals(BUNDLE_SHA256, TestUtils.sha256(new File(folder, "index.android.bundle")));
+        assertEquals(LOGO_SHA256, TestUtils.sha256(new File(folder, "assets/images/logo.png")));
+    }
+
+    @Test
+    public void readsSizesFromZip64DataDescriptor() throws IOException {
+        File folder = extract(TestUtils.readResource("zip64-streamed.zip"));
+        assertEquals(BUNDLE_SHA256, TestUtils.sha256(new File(folder, "index.android.bundle")));
+        assertEquals(LOGO_SHA256, TestUtils.sha256(new File(folder, "assets/images/logo.png")));
+    }
+
+    @Test
+    public void readsEntriesWrittenByZipOutputStream() throws IOException {
+        byte[] zip = createZip("index.android.bundle", "console.log('hello');");
+        Zip64InputStream stream = new Zip64InputStream(new ByteArrayInputStream(zip));
+        assertEquals("index.android.bundle", stream.getNextEntry().getName());
+        assertEquals("console.log('hello');", new String(TestUtils.readFully(stream), "UTF-8"));
+        assertNull(stream.getNextEntry());
+    }
+
+    @Test(expected = ZipException.class)
+    public void rejectsWrongZip64Size() throws IOException {
+        byte[] zip = TestUtils.readResource("zip64.zip");
+        zip[FIRST_ZIP64_SIZE_OFFSET]++;
+        extract(zip);
+    }
+
+    @Test(expected = ZipException.class)
+    public void rejectsNegativeZip64Size() throws IOException {
+        byte[] zip = TestUtils.readResource("zip64.zip");
+        zip[FIRST_ZIP64_SIZE_OFFSET + 7] = (byte) 0x80;
+        extract(zip);
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        byte[] zip = TestUtils.readResource("zip64-streamed.zip");
+        for (int length : new int[]{ 20, 100, zip.length / 2 }) {
+            try {
+                extract(Arrays.copyOf(zip, length));
+                fail("Expected truncated input of " + length + " bytes to fail.");
+            } catch (EOFException e) {
+                // Expected.
+            } catch (ZipException e) {
+                // Also expected when the cut lands inside the deflate data.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptData() throws IOException {
+        byte[] zip = TestUtils.readResource("zip64.zip");
+        zip[zip.length / 4] ^= 0x5A;
+        try {
+            extract(zip);
+            fail();
+        } catch (ZipException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void rejectsPathTraversal() throws IOException {
+        File folder = mTemporaryFolder.newFolder("update");
+        try {
+            FileUtils.extractZipEntries(new Zip64InputStream(new ByteArrayInputStream(createZip("../evil.txt", "evil"))), folder);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        assertFalse(new File(folder.getParentFile(), "evil.txt").exists());
+    }
+
+    private File extract(byte[] zip) throws IOException {
+        File folder = mTemporaryFolder.newFolder();
+        Zip64InputStream stream = new Zip64InputStream(new ByteArrayInputStream(zip));
+        try {
+            FileUtils.extractZipEntries(stream, folder);
+        } finally {
+            stream.close();
+        }
+
+        return folder;
+    }
+
+    private static byte[] createZip(String name, String contents) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(output);
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(contents.getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+        return output.toByteArray();
+    }
+}
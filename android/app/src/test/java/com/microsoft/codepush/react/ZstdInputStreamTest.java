@@ -0,0 +1,130 @@
+package com.microsoft.codepush.react;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+// The fixtures were compressed with libzstd 1.5.5: pax.tar.zst at level 19 with a content
+// checksum, gnu.tar.zst at level 3, and frames.zst as a level 1 frame, a skippable frame and
+// a level 19 frame with a content checksum.
+public class ZstdInputStreamTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void decodesMultipleBlocksWithChecksum() throws IOException {
+        byte[] tar = decode(TestUtils.readResource("pax.tar.zst"));
+        assertEquals("84cd6d306a17d1d15fb87fb209c8b16c1e1b6905ff05a9bfbe4dcf07bcc9847e", TestUtils.sha256(tar));
+    }
+
+    @Test
+    public void decodesLowLevelFrames() throws IOException {
+        byte[] tar = decode(TestUtils.readResource("gnu.tar.zst"));
+        assertEquals("cbe7ca5a0fda3e2101aa320ff8f84f0e74363bd5ad8a243930b2142633b5e691", TestUtils.sha256(tar));
+    }
+
+    @Test
+    public void decodesConcatenatedAndSkippableFrames() throws IOException {
+        byte[] data = decode(TestUtils.readResource("frames.zst"));
+        assertEquals(60000, data.length);
+        assertEquals("ce94d1f7939460923b9e4eed4f3da36f8de83d72d5938b156930aa6256dc3ba6", TestUtils.sha256(data));
+    }
+
+    @Test
+    public void decodesWithSingleByteReads() throws IOException {
+        InputStream stream = new ZstdInputStream(new ByteArrayInputStream(TestUtils.readResource("frames.zst")));
+        int count = 0;
+        while (stream.read() != -1) {
+            count++;
+        }
+
+        assertEquals(60000, count);
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        byte[] data = TestUtils.readResource("pax.tar.zst");
+        for (int length : new int[]{ 3, 10, data.length / 2, data.length - 1 }) {
+            try {
+                decode(Arrays.copyOf(data, length));
+                fail("Expected truncated input of " + length + " bytes to fail.");
+            } catch (EOFException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptFrames() throws IOException {
+        byte[] data = TestUtils.readResource("pax.tar.zst");
+        // Flip bits all through the compressed blocks; the checksum catches anything the decoder does not.
+        for (int position = 64; position < data.length - 4; position += 997) {
+            byte[] corrupt = data.clone();
+            corrupt[position] ^= 0x5A;
+            try {
+                decode(corrupt);
+                fail("Expected a corrupt byte at " + position + " to fail.");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptChecksum() throws IOException {
+        byte[] data = TestUtils.readResource("pax.tar.zst");
+        data[data.length - 1] ^= 1;
+        try {
+            decode(data);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFormats() throws IOException {
+        decode(TestUtils.readResource("zip64.zip"));
+    }
+
+    @Test
+    public void readsContentSizeFromFrameHeaders() throws IOException {
+        for (String name : new String[]{ "pax.tar.zst", "gnu.tar.zst", "frames.zst" }) {
+            byte[] data = TestUtils.readResource(name);
+            assertEquals(name, decode(data).length, ZstdInputStream.readContentSize(writeTemporaryFile(data)));
+        }
+    }
+
+    @Test
+    public void readsNoContentSizeFromOtherOrTruncatedFiles() throws IOException {
+        byte[] data = TestUtils.readResource("pax.tar.zst");
+        assertEquals(-1, ZstdInputStream.readContentSize(writeTemporaryFile(Arrays.copyOf(data, data.length / 2))));
+        assertEquals(-1, ZstdInputStream.readContentSize(writeTemporaryFile(TestUtils.readResource("zip64.zip"))));
+    }
+
+    private File writeTemporaryFile(byte[] data) throws IOException {
+        File file = mTemporaryFolder.newFile();
+        TestUtils.writeFile(file, data);
+        return file;
+    }
+
+    private static byte[] decode(byte[] data) throws IOException {
+        InputStream stream = new ZstdInputStream(new ByteArrayInputStream(data));
+        try {
+            return TestUtils.readFully(stream);
+        } finally {
+            stream.close();
+        }
+    }
+}
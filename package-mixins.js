@@ -43,6 +43,15 @@ module.exports = (NativeCodePush) => {
         }
       },
 
+      async cancelDownload() {
+        // Cancelling downloads is only supported by the Android native module.
+        if (!NativeCodePush.cancelDownload) {
+          return false;
+        }
+
+        return await NativeCodePush.cancelDownload(this.packageHash);
+      },
+
       isPending: false // A remote package could never be in a pending state
     };
   };
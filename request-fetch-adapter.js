@@ -1,3 +1,4 @@
+const { NativeModules } = require("react-native");
 const packageJson = require("./package.json");
 
 module.exports = {
@@ -15,10 +16,30 @@ module.exports = {
       "X-CodePush-SDK-Version": packageJson.dependencies["code-push"]
     };
 
+    // Lets the server pick an archive format this client can extract; zip is assumed when absent.
+    const supportedArchiveFormats = NativeModules.CodePush && NativeModules.CodePush.codePushSupportedArchiveFormats;
+    if (supportedArchiveFormats) {
+      headers["X-CodePush-Archive-Formats"] = supportedArchiveFormats;
+    }
+
     if (requestBody && typeof requestBody === "object") {
       requestBody = JSON.stringify(requestBody);
     }
 
+    // Update checks go through the native client where available, which caches the last
+    // response and revalidates it with its ETag instead of fetching it again every time.
+    const requestUpdateCheck = NativeModules.CodePush && NativeModules.CodePush.requestUpdateCheck;
+    if (requestUpdateCheck && getHttpMethodName(verb) === "GET" && isUpdateCheckUrl(url)) {
+      try {
+        const { statusCode, body } = await requestUpdateCheck(url, headers);
+        callback(null, { statusCode, body });
+      } catch (err) {
+        callback(err);
+      }
+
+      return;
+    }
+
     try {
       const response = await fetch(url, {
         method: getHttpMethodName(verb),
@@ -35,6 +56,10 @@ module.exports = {
   }
 };
 
+function isUpdateCheckUrl(url) {
+  return url.split("?")[0].endsWith("/update_check");
+}
+
 function getHttpMethodName(verb) {
   // Note: This should stay in sync with the enum definition in
   // https://github.com/microsoft/code-push/blob/master/sdk/script/acquisition-sdk.ts#L6
@@ -1,6 +1,7 @@
 export type DownloadProgressCallback = (progress: DownloadProgress) => void;
 export type SyncStatusChangedCallback = (status: CodePush.SyncStatus) => void;
 export type HandleBinaryVersionMismatchCallback = (update: RemotePackage) => void;
+export type AssetPackStatus = "ready" | "downloading" | "pending" | "failed";
 
 export interface CodePushOptions extends SyncOptions {
     /**
@@ -12,7 +13,8 @@ export interface CodePushOptions extends SyncOptions {
 
 export interface DownloadProgress {
     /**
-     * The total number of bytes expected to be received for this update.
+     * The total number of bytes expected to be received for this update,
+     * or -1 on Android while the size of the update is not known yet.
      */
     totalBytes: number;
 
@@ -23,6 +25,11 @@ export interface DownloadProgress {
 }
 
 export interface LocalPackage extends Package {
+    /**
+     * How many attempts the native download of this update took, including retries after transient network failures. Android only.
+     */
+    downloadAttempts?: number;
+
     /**
      * Installs the update by saving it to the location on disk where the runtime expects to find the latest version of the app.
      *
@@ -94,10 +101,23 @@ export interface RemotePackage extends Package {
      */
     download(downloadProgressCallback?: DownloadProgressCallback): Promise<LocalPackage>;
 
+    /**
+     * Cancels a running download of this update (Android only). The promise returned by `download`
+     * is then rejected with an error whose `code` is "CodePushDownloadCancelled".
+     *
+     * @returns Whether a download of this update was running.
+     */
+    cancelDownload(): Promise<boolean>;
+
     /**
      * The URL at which the package is available for download.
      */
     downloadUrl: string;
+
+    /**
+     * Other URLs that serve the same package, if the server lists any (Android only).
+     */
+    downloadMirrors?: string[];
 }
 
 export interface SyncOptions {
@@ -262,6 +282,12 @@ declare namespace CodePush {
      */
     function checkForUpdate(deploymentKey?: string, handleBinaryVersionMismatchCallback?: HandleBinaryVersionMismatchCallback): Promise<RemotePackage | null>;
 
+    /**
+     * Retrieves the status of each asset pack of the running update by pack name (Android only).
+     * The app binary and updates without asset packs resolve to an empty object.
+     */
+    function getAssetPackStatuses(): Promise<{ [packName: string]: AssetPackStatus }>;
+
     /**
      * Retrieves the metadata for an installed update (e.g. description, mandatory).
      *
@@ -269,11 +295,29 @@ declare namespace CodePush {
      */
     function getUpdateMetadata(updateState?: UpdateState) : Promise<LocalPackage|null>;
 
+    /**
+     * Saves an update package that is already on the device, so that it can be installed without downloading it (Android only).
+     * The package goes through the same extraction, diff merge and verification as a downloaded one.
+     *
+     * @param packageInfo The metadata of the update, which must include at least its packageHash.
+     *
+     * @param pathOrUri The path, file:// URI or content:// URI of the update package.
+     */
+    function importUpdate(packageInfo: Partial<Package> & { packageHash: string }, pathOrUri: string): Promise<LocalPackage>;
+
     /**
      * Notifies the CodePush runtime that an installed update is considered successful.
      */
     function notifyAppReady(): Promise<StatusReport|void>;
 
+    /**
+     * Fetches the given asset packs of the running update before any others (Android only).
+     * Resolves once all of them are ready, and rejects as soon as one of them fails.
+     *
+     * @param packNames The names of the asset packs the app needs next, most urgent first.
+     */
+    function prioritizeAssetPacks(packNames: string[]): Promise<void>;
+
     /**
      * Allow CodePush to restart the app.
      */